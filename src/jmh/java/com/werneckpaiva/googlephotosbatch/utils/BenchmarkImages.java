@@ -0,0 +1,62 @@
+package com.werneckpaiva.googlephotosbatch.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Test JPEGs and synthetic large JPEGs used by the benchmarks.
+ * Image names are either a test resource or "synthetic_<N>mp".
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    static File load(String imageName) throws IOException {
+        if (imageName.startsWith("synthetic_")) {
+            int megapixels = Integer.parseInt(imageName.replaceAll("\\D", ""));
+            return createSynthetic(megapixels);
+        }
+        File imageFile = File.createTempFile("bench", ".jpg");
+        imageFile.deleteOnExit();
+        try (InputStream in = BenchmarkImages.class.getClassLoader().getResourceAsStream(imageName)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + imageName);
+            }
+            Files.copy(in, imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return imageFile;
+    }
+
+    /**
+     * 3:2 image with gradients and noise, so the JPEG encoder has real work to do.
+     */
+    private static File createSynthetic(int megapixels) throws IOException {
+        int height = (int) Math.sqrt(megapixels * 1_000_000 / 1.5);
+        int width = (int) (height * 1.5);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        Random random = new Random(42);
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                image.setRGB(x, y, image.getRGB(x, y) ^ (random.nextInt() & 0x0F0F0F));
+            }
+        }
+        File imageFile = File.createTempFile("bench_" + megapixels + "mp", ".jpg");
+        imageFile.deleteOnExit();
+        ImageIO.write(image, "JPEG", imageFile);
+        return imageFile;
+    }
+}
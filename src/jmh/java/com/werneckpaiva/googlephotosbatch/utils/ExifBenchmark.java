@@ -0,0 +1,57 @@
+package com.werneckpaiva.googlephotosbatch.utils;
+
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EXIF read from the original JPEG and lossless rewrite into a re-encoded JPEG.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExifBenchmark {
+
+    @Param({ "photo_portrait_small.JPG", "photo_portrait_big.JPG", "photo_landscape_big.JPG" })
+    public String image;
+
+    private byte[] imageData;
+
+    private byte[] reencodedData;
+
+    private TiffImageMetadata metadata;
+
+    @Setup
+    public void setup() throws Exception {
+        File imageFile = BenchmarkImages.load(image);
+        imageData = FileUtils.readFileToByteArray(imageFile);
+        reencodedData = ImageUtils.writeJPEG(ImageIO.read(new ByteArrayInputStream(imageData)));
+        metadata = ImageUtils.readExifMetadata(imageData);
+        imageFile.delete();
+    }
+
+    @Benchmark
+    public TiffImageMetadata readExif() throws Exception {
+        return ImageUtils.readExifMetadata(imageData);
+    }
+
+    @Benchmark
+    public byte[] rewriteExif() throws Exception {
+        if (metadata == null) {
+            return reencodedData;
+        }
+        return ImageUtils.writeExifMetadata(metadata, reencodedData);
+    }
+}
@@ -0,0 +1,55 @@
+package com.werneckpaiva.googlephotosbatch.utils;
+
+import com.werneckpaiva.googlephotosbatch.GooglePhotoAlbumManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full resize path: read, decode, scale, encode and EXIF copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ImageResizeBenchmark {
+
+    @Param({ "photo_portrait_small.JPG", "photo_portrait_big.JPG", "photo_landscape_big.JPG",
+            "synthetic_24mp", "synthetic_50mp", "synthetic_100mp" })
+    public String image;
+
+    private File imageFile;
+
+    @Setup
+    public void setup() throws IOException {
+        imageFile = BenchmarkImages.load(image);
+    }
+
+    @TearDown
+    public void tearDown() {
+        imageFile.delete();
+    }
+
+    @Benchmark
+    public long resizeJPGImage() {
+        File resized = ImageUtils.resizeJPGImage(imageFile, GooglePhotoAlbumManager.MAX_FREE_DIMENSION);
+        long size = resized.length();
+        if (!resized.equals(imageFile)) {
+            resized.delete();
+        }
+        return size;
+    }
+}
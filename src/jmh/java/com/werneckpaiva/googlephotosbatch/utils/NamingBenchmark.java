@@ -0,0 +1,55 @@
+package com.werneckpaiva.googlephotosbatch.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file naming and filtering, called once for every file of the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NamingBenchmark {
+
+    private static final String BASE_FOLDER = "/fotos/";
+
+    private final File[] files = {
+            new File("/fotos/Diversas/2018/Casa_Natal/IMG_20180101_120000.jpg"),
+            new File("/fotos/Viagens/2023/Hawaii_Big_Island/DSC_0001.JPEG"),
+            new File("/fotos/Viagens/2023/Hawaii_Big_Island/VID_20230101_101010.mp4"),
+            new File("/fotos/Familia/Aniversario_da_Vovo/P1010001.MOV") };
+
+    private final File[] folders = {
+            new File("/fotos/Diversas/2018/Casa_Natal/"),
+            new File("/fotos/Viagens/2023/Hawaii_Big_Island"),
+            new File("/fotos/Familia/Aniversario_da_Vovo/") };
+
+    @Benchmark
+    public void file2MediaName(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(AlbumUtils.file2MediaName(file));
+        }
+    }
+
+    @Benchmark
+    public void file2AlbumName(Blackhole blackhole) {
+        for (File folder : folders) {
+            blackhole.consume(AlbumUtils.file2AlbumName(BASE_FOLDER, folder));
+        }
+    }
+
+    @Benchmark
+    public void isJPEG(Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(ImageUtils.isJPEG(file));
+        }
+    }
+}
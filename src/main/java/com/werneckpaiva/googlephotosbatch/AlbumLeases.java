@@ -0,0 +1,215 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Lease files giving one worker at a time the right to create or write to an album.
+ * A lease is a file created exclusively in a directory shared by the workers, holding the owner
+ * name. Held leases are touched periodically; a lease not touched for longer than its TTL belongs
+ * to a dead worker and is taken over.
+ */
+public class AlbumLeases implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlbumLeases.class);
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private static final int MAX_NAME_LENGTH = 100;
+
+    private static final String TAKEOVER_LOCK = "takeover.lock";
+
+    private static final Map<Path, ReentrantLock> takeoverLocks = new ConcurrentHashMap<>();
+
+    private final Path leaseDir;
+
+    private final Duration ttl;
+
+    private final String owner;
+
+    private final Set<Path> heldLeases = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService renewer;
+
+    public AlbumLeases(Path leaseDir, Duration ttl) throws IOException {
+        this.leaseDir = Files.createDirectories(leaseDir);
+        this.ttl = ttl;
+        this.owner = hostName() + ":" + ProcessHandle.current().pid() + ":"
+                + UUID.randomUUID().toString().substring(0, 8);
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "album-lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long renewMillis = Math.max(1, ttl.toMillis() / 3);
+        renewer.scheduleAtFixedRate(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Lease of the album, or null while another live worker holds it.
+     */
+    public Lease tryAcquire(String albumName) throws IOException {
+        Path leaseFile = leaseFile(albumName);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.write(leaseFile, owner.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+                heldLeases.add(leaseFile);
+                return new Lease(albumName, leaseFile);
+            } catch (FileAlreadyExistsException e) {
+                if (!breakStaleLease(leaseFile)) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    Path leaseFile(String albumName) {
+        CRC32 crc = new CRC32();
+        crc.update(albumName.getBytes(StandardCharsets.UTF_8));
+        String name = albumName.replaceAll("[^\\w.-]+", "_");
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH);
+        }
+        return leaseDir.resolve(String.format("%s-%08x.lease", name, crc.getValue()));
+    }
+
+    private boolean isStale(Path leaseFile) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(leaseFile);
+        return System.currentTimeMillis() - modified.toMillis() > ttl.toMillis();
+    }
+
+    /**
+     * Removes the lease if it expired, true when it's gone and can be created again.
+     * Takeovers are serialized through a lock file, so a lease is only removed by a worker that saw
+     * it expired while no other worker could replace it: nothing else writes an existing lease
+     * but its owner, renewing it.
+     */
+    private boolean breakStaleLease(Path leaseFile) throws IOException {
+        Path lockFile = leaseDir.resolve(TAKEOVER_LOCK);
+        // A JVM can't hold two locks on the same file, workers of this process are serialized apart
+        ReentrantLock processLock = takeoverLocks.computeIfAbsent(lockFile.toAbsolutePath().normalize(),
+                path -> new ReentrantLock());
+        processLock.lock();
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.lock();
+            if (!isStale(leaseFile)) {
+                return false;
+            }
+            String previousOwner = Files.readString(leaseFile, StandardCharsets.UTF_8);
+            Files.delete(leaseFile);
+            logger.warn("Taking over expired lease {} of {}", leaseFile.getFileName(), previousOwner);
+            return true;
+        } catch (NoSuchFileException e) {
+            // Released meanwhile
+            return true;
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private void renew() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Path leaseFile : heldLeases) {
+            try {
+                // A lease that expired while this worker was stalled may belong to another worker now
+                if (!owner.equals(Files.readString(leaseFile, StandardCharsets.UTF_8))) {
+                    heldLeases.remove(leaseFile);
+                    logger.warn("Lease {} was taken over by another worker", leaseFile.getFileName());
+                    continue;
+                }
+                Files.setLastModifiedTime(leaseFile, now);
+            } catch (NoSuchFileException e) {
+                heldLeases.remove(leaseFile);
+                logger.warn("Lease {} was lost", leaseFile.getFileName());
+            } catch (IOException e) {
+                logger.warn("Couldn't renew lease {}: {}", leaseFile.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private void release(Path leaseFile) {
+        heldLeases.remove(leaseFile);
+        try {
+            // A lease that expired while this worker was stalled may belong to another worker now
+            if (owner.equals(Files.readString(leaseFile, StandardCharsets.UTF_8))) {
+                Files.delete(leaseFile);
+            } else {
+                logger.warn("Lease {} was taken over by another worker", leaseFile.getFileName());
+            }
+        } catch (NoSuchFileException e) {
+            logger.warn("Lease {} was lost", leaseFile.getFileName());
+        } catch (IOException e) {
+            logger.warn("Couldn't release lease {}: {}", leaseFile.getFileName(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        for (Path leaseFile : heldLeases) {
+            release(leaseFile);
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final String albumName;
+
+        private final Path leaseFile;
+
+        private Lease(String albumName, Path leaseFile) {
+            this.albumName = albumName;
+            this.leaseFile = leaseFile;
+        }
+
+        public String getAlbumName() {
+            return albumName;
+        }
+
+        /**
+         * False once a renewal found the lease taken over by another worker.
+         */
+        public boolean isHeld() {
+            return heldLeases.contains(leaseFile);
+        }
+
+        @Override
+        public void close() {
+            release(leaseFile);
+        }
+    }
+}
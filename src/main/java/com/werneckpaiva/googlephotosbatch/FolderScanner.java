@@ -0,0 +1,82 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * Walks folders looking for medias, one album per folder holding any.
+ * Subfolders are listed in parallel; the result keeps the order of a sequential walk
+ * (a folder before its subfolders).
+ */
+public class FolderScanner {
+
+    private static final Pattern ALLOWED_FILES_PATTERN = Pattern.compile("\\.(jpe?g|mp4|mov)$",
+            Pattern.CASE_INSENSITIVE);
+
+    public record Folder(String albumName, File path, List<File> files) {
+    }
+
+    private final String baseFolder;
+
+    private final ForkJoinPool pool;
+
+    public FolderScanner(String baseFolder, int threads) {
+        this.baseFolder = baseFolder;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    static boolean isMedia(String fileName) {
+        return ALLOWED_FILES_PATTERN.matcher(fileName).find();
+    }
+
+    public List<Folder> scan(File folder) {
+        try {
+            return pool.invoke(new ScanTask(folder));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<List<Folder>> {
+        private final File path;
+
+        ScanTask(File path) {
+            this.path = path;
+        }
+
+        @Override
+        protected List<Folder> compute() {
+            List<File> files = new ArrayList<>();
+            List<ScanTask> subfolders = new ArrayList<>();
+            File[] entries = path.listFiles();
+            if (entries == null) {
+                return List.of();
+            }
+            for (File file : entries) {
+                String fileName = file.getName();
+                if (fileName.startsWith("."))
+                    continue;
+                if (file.isDirectory()) {
+                    subfolders.add(new ScanTask(file));
+                } else if (isMedia(fileName)) {
+                    files.add(file);
+                }
+            }
+            subfolders.forEach(ScanTask::fork);
+            List<Folder> folders = new ArrayList<>();
+            if (!files.isEmpty()) {
+                folders.add(new Folder(AlbumUtils.file2AlbumName(baseFolder, path), path, files));
+            }
+            for (ScanTask subfolder : subfolders) {
+                folders.addAll(subfolder.join());
+            }
+            return folders;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snapshot of the folder tree as of the last sync, so a re-scan only lists what changed.
+ * Each directory is recorded with its modification time, a hash of its medias (names, sizes and
+ * modification times) and its subdirectories.
+ * A directory whose modification time didn't change holds the same entries, so it isn't listed:
+ * its recorded subdirectories are visited instead, and an unchanged subtree costs one stat per
+ * directory. A listed directory whose medias hash the same isn't synced.
+ * A media rewritten in place under the same name doesn't touch its directory, so it's only
+ * noticed once something else changes the directory.
+ */
+public class FolderSnapshot implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FolderSnapshot.class);
+
+    // Changes within the timestamp resolution of the scan could be missed, such directories are listed again
+    static final long RACY_MILLIS = 2000;
+
+    // Snapshots written by earlier versions also held a tree hash per directory
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record DirectoryState(String path, long modified, String filesHash, List<String> subdirectories) {
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path snapshotFile;
+
+    private final Map<String, DirectoryState> directories = new ConcurrentHashMap<>();
+
+    // Listed with changed medias, recorded once their album is synced
+    private final Map<String, DirectoryState> pending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger listedDirectories = new AtomicInteger();
+
+    private final AtomicInteger skippedDirectories = new AtomicInteger();
+
+    private volatile boolean changed = false;
+
+    public FolderSnapshot(Path snapshotFile) throws IOException {
+        this.snapshotFile = snapshotFile;
+        if (Files.exists(snapshotFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        DirectoryState state = objectMapper.readValue(line, DirectoryState.class);
+                        directories.put(state.path(), state);
+                    }
+                }
+            }
+        }
+        logger.info("Folder snapshot: {} directories", directories.size());
+    }
+
+    /**
+     * Folders whose medias changed since they were last synced.
+     */
+    public List<FolderScanner.Folder> scan(String baseFolder, File root, int threads) {
+        listedDirectories.set(0);
+        skippedDirectories.set(0);
+        long scanStart = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<FolderScanner.Folder> folders = pool.invoke(new ScanTask(baseFolder, root, scanStart));
+            logger.info("Folder snapshot: {} directories listed, {} unchanged, {} folders to sync",
+                    listedDirectories.get(), skippedDirectories.get(), folders.size());
+            return folders;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    int getListedDirectories() {
+        return listedDirectories.get();
+    }
+
+    /**
+     * Records a folder returned by scan() once its album holds all of its medias.
+     */
+    public void markSynced(FolderScanner.Folder folder) {
+        DirectoryState state = pending.remove(key(folder.path()));
+        if (state != null) {
+            record(state);
+        }
+    }
+
+    private static String key(File directory) {
+        return directory.getAbsolutePath();
+    }
+
+    private void record(DirectoryState state) {
+        DirectoryState previous = directories.put(state.path(), state);
+        if (previous == null || previous.modified() != state.modified()
+                || !previous.filesHash().equals(state.filesHash())
+                || !previous.subdirectories().equals(state.subdirectories())) {
+            changed = true;
+        }
+        if (previous != null) {
+            // Entries of removed subdirectories, and of everything below them, are dropped
+            for (String subdirectory : previous.subdirectories()) {
+                if (!state.subdirectories().contains(subdirectory)) {
+                    String removed = state.path() + File.separator + subdirectory;
+                    directories.keySet().removeIf(path -> path.equals(removed)
+                            || path.startsWith(removed + File.separator));
+                }
+            }
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<List<FolderScanner.Folder>> {
+        private final String baseFolder;
+
+        private final File path;
+
+        private final long scanStart;
+
+        ScanTask(String baseFolder, File path, long scanStart) {
+            this.baseFolder = baseFolder;
+            this.path = path;
+            this.scanStart = scanStart;
+        }
+
+        @Override
+        protected List<FolderScanner.Folder> compute() {
+            String key = key(path);
+            long modified = path.lastModified();
+            DirectoryState previous = directories.get(key);
+            if (previous != null && modified != 0 && previous.modified() == modified) {
+                skippedDirectories.incrementAndGet();
+                return scanSubdirectories(previous.subdirectories());
+            }
+            File[] entries = path.listFiles();
+            if (entries == null) {
+                return List.of();
+            }
+            listedDirectories.incrementAndGet();
+            List<File> files = new ArrayList<>();
+            List<String> subdirectories = new ArrayList<>();
+            for (File file : entries) {
+                String fileName = file.getName();
+                if (fileName.startsWith(".")) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    subdirectories.add(fileName);
+                } else if (FolderScanner.isMedia(fileName)) {
+                    files.add(file);
+                }
+            }
+            subdirectories.sort(null);
+            String filesHash = SyncState.fingerprint(files);
+            DirectoryState state = new DirectoryState(key,
+                    scanStart - modified < RACY_MILLIS ? -1 : modified, filesHash, subdirectories);
+            List<FolderScanner.Folder> folders = new ArrayList<>();
+            if (!files.isEmpty() && (previous == null || !filesHash.equals(previous.filesHash()))) {
+                pending.put(key, state);
+                folders.add(new FolderScanner.Folder(AlbumUtils.file2AlbumName(baseFolder, path), path, files));
+            } else {
+                record(state);
+            }
+            folders.addAll(scanSubdirectories(subdirectories));
+            return folders;
+        }
+
+        private List<FolderScanner.Folder> scanSubdirectories(List<String> subdirectories) {
+            List<ScanTask> tasks = new ArrayList<>();
+            for (String subdirectory : subdirectories) {
+                tasks.add(new ScanTask(baseFolder, new File(path, subdirectory), scanStart));
+            }
+            tasks.forEach(ScanTask::fork);
+            List<FolderScanner.Folder> folders = new ArrayList<>();
+            for (ScanTask task : tasks) {
+                folders.addAll(task.join());
+            }
+            return folders;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Path updated = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(updated, StandardCharsets.UTF_8)) {
+            for (DirectoryState state : directories.values()) {
+                out.write(objectMapper.writeValueAsString(state));
+                out.newLine();
+            }
+        }
+        Files.move(updated, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+}
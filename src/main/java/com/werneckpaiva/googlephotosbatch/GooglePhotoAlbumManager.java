@@ -4,15 +4,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.gax.rpc.PermissionDeniedException;
 import com.google.api.gax.rpc.UnauthenticatedException;
 import com.werneckpaiva.googlephotosbatch.exception.PermissionDeniedToLoadAlbumsException;
+import com.werneckpaiva.googlephotosbatch.metrics.MetricsRegistry;
+import com.werneckpaiva.googlephotosbatch.metrics.RateMeter;
 import com.werneckpaiva.googlephotosbatch.service.Album;
 import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
 import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
 import com.werneckpaiva.googlephotosbatch.utils.ImageUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -38,8 +46,54 @@ public class GooglePhotoAlbumManager {
 
     public static final int MAX_FREE_DIMENSION = 4608;
 
+    private MetricsRegistry metrics = new MetricsRegistry();
+
+    private MetricsRegistry.Histogram resizeSeconds;
+
+    private MetricsRegistry.Counter uploadedBytes;
+
+    private RateMeter uploadBytesRate;
+
+    private MetricsRegistry.Histogram commitBatchSize;
+
+    private MetricsRegistry.Counter reusedMedias;
+
+    private volatile Queue<MediaWithName> currentResizeQueue = null;
+
+    private volatile Queue<MediaWithName> currentUploadQueue = null;
+
+    private volatile Queue<MediaWithName> currentVideoUploadQueue = null;
+
     public GooglePhotoAlbumManager(GooglePhotosAPI googlePhotosAPI) {
         this.googlePhotosAPI = googlePhotosAPI;
+        registerMetrics();
+    }
+
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        resizeSeconds = metrics.histogram("googlephotos_resize_seconds", "Time spent resizing one JPEG",
+                MetricsRegistry.LATENCY_BUCKETS);
+        uploadedBytes = metrics.counter("googlephotos_upload_bytes_total", "Bytes uploaded");
+        uploadBytesRate = metrics.rateMeter("googlephotos_upload_bytes_per_second",
+                "Upload throughput over the last minute");
+        reusedMedias = metrics.counter("googlephotos_reused_medias_total",
+                "Medias added to albums from the remote library instead of uploaded");
+        commitBatchSize = metrics.histogram("googlephotos_commit_batch_size", "Medias saved to an album at once",
+                MetricsRegistry.SIZE_BUCKETS);
+        metrics.sumGauge("googlephotos_queue_depth", "Medias waiting in a pipeline queue",
+                () -> queueSize(currentResizeQueue), "queue", "resize");
+        metrics.sumGauge("googlephotos_queue_depth", "Medias waiting in a pipeline queue",
+                () -> queueSize(currentUploadQueue), "queue", "upload");
+        metrics.sumGauge("googlephotos_queue_depth", "Medias waiting in a pipeline queue",
+                () -> queueSize(currentVideoUploadQueue), "queue", "video_upload");
+    }
+
+    private static double queueSize(Queue<MediaWithName> queue) {
+        return queue == null ? 0 : queue.size();
     }
 
     public void setAlbumsCache(File albumsCache) {
@@ -47,13 +101,27 @@ public class GooglePhotoAlbumManager {
     }
 
     public Map<String, Album> listAllAlbums() throws PermissionDeniedToLoadAlbumsException {
-        if (albumsCache != null && albumsCache.exists()) {
-            Map<String, Album> cachedAlbums = loadAlbumsFromCache();
-            if (cachedAlbums != null) {
-                return cachedAlbums;
+        if (albumsCache == null) {
+            return loadAlbumsFromAPI();
+        }
+        // Workers sharing the cache wait for the first one to list the albums, then read its cache
+        AlbumsCacheLock lock = new AlbumsCacheLock(albumsCache);
+        try {
+            if (albumsCache.exists()) {
+                Map<String, Album> cachedAlbums = loadAlbumsFromCache();
+                if (cachedAlbums != null) {
+                    return cachedAlbums;
+                }
             }
+            Map<String, Album> allAlbums = loadAlbumsFromAPI();
+            saveAlbumsToCache(allAlbums);
+            return allAlbums;
+        } finally {
+            lock.close();
         }
+    }
 
+    private Map<String, Album> loadAlbumsFromAPI() throws PermissionDeniedToLoadAlbumsException {
         logger.info("Loading albums from Google Photos API");
 
         long startTime = System.currentTimeMillis();
@@ -81,17 +149,67 @@ public class GooglePhotoAlbumManager {
             }
         }
 
-        if (albumsCache != null) {
-            saveAlbumsToCache(allAlbums);
-        }
-
         System.out.printf(" %d albums loaded (%d ms)\n", allAlbums.size(), (System.currentTimeMillis() - startTime));
         return allAlbums;
     }
 
+    /**
+     * Holds the albums cache for this process, and for other processes through a lock file next to it.
+     * Threads of this process are serialized apart, per cache file, because a JVM can't hold two locks
+     * on the same file.
+     */
+    private static final class AlbumsCacheLock implements AutoCloseable {
+        private static final Map<Path, ReentrantLock> processLocks = new ConcurrentHashMap<>();
+
+        private final ReentrantLock processLock;
+
+        private FileChannel channel = null;
+
+        private AlbumsCacheLock(File albumsCache) {
+            Path lockFile = Path.of(albumsCache.getPath() + ".lock").toAbsolutePath().normalize();
+            processLock = processLocks.computeIfAbsent(lockFile, path -> new ReentrantLock());
+            processLock.lock();
+            try {
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                channel.lock();
+            } catch (IOException e) {
+                logger.warn("Couldn't lock {}, other workers may write the albums cache at the same time: {}",
+                        lockFile, e.getMessage());
+                closeChannel();
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    // Closing the channel releases the lock
+                    channel.close();
+                } catch (IOException e) {
+                    logger.warn("Error releasing the albums cache lock", e);
+                }
+                channel = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeChannel();
+            processLock.unlock();
+        }
+    }
+
     private Map<String, Album> loadAlbumsFromCache() {
         logger.info("Loading albums from cache file: {}", albumsCache.getAbsolutePath());
         long startTime = System.currentTimeMillis();
+        Map<String, Album> allAlbums = readAlbumsCache();
+        if (allAlbums != null) {
+            System.out.printf(" %d albums loaded from cache (%d ms)\n", allAlbums.size(),
+                    (System.currentTimeMillis() - startTime));
+        }
+        return allAlbums;
+    }
+
+    private Map<String, Album> readAlbumsCache() {
         Map<String, Album> allAlbums = new HashMap<>();
         try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(albumsCache))) {
             String line;
@@ -105,8 +223,6 @@ public class GooglePhotoAlbumManager {
                     logger.warn("Failed to parse album line from cache: {}", line);
                 }
             }
-            System.out.printf(" %d albums loaded from cache (%d ms)\n", allAlbums.size(),
-                    (System.currentTimeMillis() - startTime));
             return allAlbums;
         } catch (java.io.IOException e) {
             logger.error("Error reading albums from cache", e);
@@ -142,10 +258,69 @@ public class GooglePhotoAlbumManager {
 
     private String albumId = null;
 
+    private int numUploaders = 1;
+
+    private int numVideoUploaders = 1;
+
+    private int videoChunkSize = 0;
+
+    private SyncStatusWatcher.Mode progressMode = SyncStatusWatcher.Mode.AUTO;
+
+    private RunReport runReport = null;
+
+    private RemoteLibraryIndex remoteLibraryIndex = null;
+
+    private MediaScheduler scheduler = new MediaScheduler(MediaScheduler.Policy.SHORTEST_FIRST, MAX_FREE_DIMENSION);
+
+    private ExecutorService resizeExecutor = null;
+
     public void setSkipAlbumLoad(boolean skipAlbumLoad) {
         this.skipAlbumLoad = skipAlbumLoad;
     }
 
+    public void setNumUploaders(int numUploaders) {
+        this.numUploaders = Math.max(1, numUploaders);
+    }
+
+    /**
+     * Uploaders of the video lane, apart from the photo uploaders.
+     */
+    public void setNumVideoUploaders(int numVideoUploaders) {
+        this.numVideoUploaders = Math.max(1, numVideoUploaders);
+    }
+
+    /**
+     * Bytes sent per upload request for videos, 0 for the client default.
+     */
+    public void setVideoChunkSize(int videoChunkSize) {
+        this.videoChunkSize = Math.max(0, videoChunkSize);
+    }
+
+    public void setProgressMode(SyncStatusWatcher.Mode progressMode) {
+        this.progressMode = progressMode;
+    }
+
+    public void setRunReport(RunReport runReport) {
+        this.runReport = runReport;
+    }
+
+    public void setRemoteLibraryIndex(RemoteLibraryIndex remoteLibraryIndex) {
+        this.remoteLibraryIndex = remoteLibraryIndex;
+    }
+
+    public void setSchedulingPolicy(MediaScheduler.Policy policy) {
+        this.scheduler = new MediaScheduler(policy, MAX_FREE_DIMENSION);
+    }
+
+    /**
+     * Pool resizing the photos, shared with other managers so that concurrent syncs don't each take
+     * every core. Photos are submitted one task each, in the order of the resize queue, so the syncs
+     * sharing the pool take turns. By default each batch starts its own resizers.
+     */
+    public void setResizeExecutor(ExecutorService resizeExecutor) {
+        this.resizeExecutor = resizeExecutor;
+    }
+
     public void setAlbumId(String albumId) {
         this.albumId = albumId;
     }
@@ -183,9 +358,19 @@ public class GooglePhotoAlbumManager {
     }
 
     public Album createAlbum(String albumName) throws PermissionDeniedToLoadAlbumsException {
-        logger.info("Creating new album {}", albumName);
         ensureAlbumsLoaded();
+        AlbumsCacheLock lock = albumsCache != null ? new AlbumsCacheLock(albumsCache) : null;
         try {
+            // Another worker sharing the cache may have created it since the albums were loaded
+            Map<String, Album> cachedAlbums = albumsCache != null && albumsCache.exists()
+                    ? readAlbumsCache()
+                    : null;
+            if (cachedAlbums != null && cachedAlbums.containsKey(albumName)) {
+                Album album = cachedAlbums.get(albumName);
+                this.albums.put(albumName, album);
+                return album;
+            }
+            logger.info("Creating new album {}", albumName);
             Album album = googlePhotosAPI.createAlbum(albumName);
             this.albums.put(albumName, album);
             appendAlbumToCache(album);
@@ -195,11 +380,29 @@ public class GooglePhotoAlbumManager {
                 throw new PermissionDeniedToLoadAlbumsException(e);
             }
             throw e;
+        } finally {
+            if (lock != null) {
+                lock.close();
+            }
         }
     }
 
-    public void batchUploadFiles(Album album, List<File> files) throws PermissionDeniedToLoadAlbumsException {
+    /**
+     * Returns whether all the files are in the album now.
+     */
+    public boolean batchUploadFiles(Album album, List<File> files) throws PermissionDeniedToLoadAlbumsException {
         logger.info("Album: {}", album.title());
+        long listingStart = System.currentTimeMillis();
+        List<MediaWithName> mediasToUpload = getMediasToUpload(album, files);
+        long listingMs = System.currentTimeMillis() - listingStart;
+        return uploadMedias(album, mediasToUpload, listingMs);
+    }
+
+    /**
+     * Files not in the album yet, compared by media name. Safe to call from several threads.
+     */
+    public List<MediaWithName> getMediasToUpload(Album album, List<File> files)
+            throws PermissionDeniedToLoadAlbumsException {
         Set<String> albumFileNames;
         try {
             albumFileNames = this.skipAlbumLoad ? new HashSet<>()
@@ -212,52 +415,134 @@ public class GooglePhotoAlbumManager {
             }
             throw e;
         }
+        return this.getMediasToUpload(files, albumFileNames);
+    }
 
-        List<MediaWithName> mediasToUpload = this.getMediasToUpload(files, albumFileNames);
-
+    /**
+     * Uploads the medias and saves them to the album, without comparing with the album contents.
+     * Returns whether all of them were uploaded and saved. Items the API reported as not saved may
+     * be in the album anyway, so only then the album is listed again to tell.
+     */
+    public boolean uploadMedias(Album album, List<MediaWithName> mediasToUpload, long listingMs)
+            throws PermissionDeniedToLoadAlbumsException {
         int numberOfMediasToUpload = mediasToUpload.size();
-        if (numberOfMediasToUpload == 0)
-            return;
+        if (numberOfMediasToUpload == 0) {
+            if (runReport != null) {
+                runReport.startAlbum(album.title(), mediasToUpload, listingMs);
+            }
+            return true;
+        }
 
         if (!album.isWriteable()) {
             logger.error("Album is not writable");
-            return;
+            if (runReport != null) {
+                runReport.startAlbum(album.title(), mediasToUpload, listingMs);
+                runReport.failAlbum(album.title(), "Album is not writable");
+            }
+            return false;
+        }
+
+        if (remoteLibraryIndex != null) {
+            mediasToUpload = addMediasFromLibrary(album, mediasToUpload);
+            numberOfMediasToUpload = mediasToUpload.size();
         }
 
+        if (runReport != null) {
+            runReport.startAlbum(album.title(), mediasToUpload, listingMs);
+        }
+        if (numberOfMediasToUpload == 0) {
+            return true;
+        }
+        try {
+            return uploadAndSave(album, mediasToUpload);
+        } catch (PermissionDeniedToLoadAlbumsException | RuntimeException e) {
+            if (runReport != null) {
+                Throwable cause = e;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                runReport.failAlbum(album.title(), cause.toString());
+            }
+            throw e;
+        }
+    }
+
+    private boolean uploadAndSave(Album album, List<MediaWithName> mediasToUpload)
+            throws PermissionDeniedToLoadAlbumsException {
+        int numberOfMediasToUpload = mediasToUpload.size();
         logger.info("Uploading {} medias", numberOfMediasToUpload);
 
+        // Videos skip the resizers and have their own uploaders, so they don't hold back the photos
+        List<MediaWithName> photos = mediasToUpload.stream().filter(media -> ImageUtils.isJPEG(media.file()))
+                .toList();
+        List<MediaWithName> videos = mediasToUpload.stream().filter(media -> !ImageUtils.isJPEG(media.file()))
+                .toList();
         int numCores = Runtime.getRuntime().availableProcessors();
-        ExecutorService taskExecutor = Executors.newFixedThreadPool(numCores + 1);
-        ConcurrentLinkedQueue<MediaWithName> mediasToResizeQueue = new ConcurrentLinkedQueue<>(mediasToUpload);
+        int numResizers = photos.isEmpty() || resizeExecutor != null ? 0 : Math.max(1, numCores - 1);
+        int numPhotoUploaders = photos.isEmpty() ? 0 : numUploaders;
+        int numVideoLaneUploaders = videos.isEmpty() ? 0 : numVideoUploaders;
+        ExecutorService taskExecutor = Executors
+                .newFixedThreadPool(numResizers + numPhotoUploaders + numVideoLaneUploaders + 1);
+        MediaScheduler.CostQueue mediasToResizeQueue = scheduler.resizeQueue(photos);
         List<MediaWithName> mediasUploaded = Collections.synchronizedList(new ArrayList<>(numberOfMediasToUpload));
-        BlockingQueue<MediaWithName> mediasToUploadQueue = new LinkedBlockingQueue<>(numberOfMediasToUpload);
-        ConcurrentLinkedQueue<SyncStatusWatcher.MediaTaskLog> progressLog = new ConcurrentLinkedQueue<>();
-
-        Future<Void> watcherFuture = taskExecutor.submit(SyncStatusWatcher.getWatcherTask(album, mediasToUploadQueue,
-                mediasToResizeQueue, mediasUploaded, progressLog,
-                numberOfMediasToUpload));
-
-        IntStream.range(0, numCores - 1)
-                .mapToObj(i -> getResizerTask(i, mediasToResizeQueue, mediasToUploadQueue, progressLog))
+        MediaScheduler.CostQueue mediasToUploadQueue = scheduler.uploadQueue();
+        MediaScheduler.CostQueue videosToUploadQueue = scheduler.uploadQueue();
+        videos.forEach(videosToUploadQueue::offer);
+        BlockingQueue<SyncStatusWatcher.MediaTaskLog> progressLog = new LinkedBlockingQueue<>();
+        Consumer<SyncStatusWatcher.MediaTaskLog> progressListener = runReport == null ? progressLog::add
+                : log -> {
+                    runReport.onEvent(album.title(), log);
+                    progressLog.add(log);
+                };
+        currentResizeQueue = mediasToResizeQueue;
+        currentUploadQueue = mediasToUploadQueue;
+        currentVideoUploadQueue = videosToUploadQueue;
+
+        long totalBytes = mediasToUpload.stream().mapToLong(media -> media.file().length()).sum();
+        Future<Void> watcherFuture = taskExecutor.submit(SyncStatusWatcher.getWatcherTask(album, progressLog,
+                numberOfMediasToUpload, totalBytes, progressMode));
+
+        IntStream.range(0, numResizers)
+                .mapToObj(i -> getResizerTask(i, mediasToResizeQueue, mediasToUploadQueue, progressListener))
                 .forEach(taskExecutor::submit);
+        if (resizeExecutor != null) {
+            // Each task resizes the next photo of the queue when the shared pool runs it
+            IntStream.range(0, photos.size())
+                    .forEach(i -> resizeExecutor.submit(() -> {
+                        resizeNext(i, mediasToResizeQueue, mediasToUploadQueue, progressListener);
+                        return null;
+                    }));
+        }
 
         // Run uploader tasks and chain saver task after all uploads complete
-        CompletableFuture<?>[] uploaderFutures = IntStream.range(0, 1)
-                .mapToObj(i -> CompletableFuture.runAsync(() -> {
-                    try {
-                        getUploaderTask(i, numberOfMediasToUpload, mediasToUploadQueue, mediasUploaded, progressLog)
-                                .call();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }, taskExecutor))
+        AtomicInteger numPhotosToUpload = new AtomicInteger(photos.size());
+        AtomicInteger numVideosToUpload = new AtomicInteger(videos.size());
+        CompletableFuture<?>[] uploaderFutures = IntStream.range(0, numPhotoUploaders + numVideoLaneUploaders)
+                .mapToObj(i -> {
+                    // Video uploaders follow the photo ones in the progress display
+                    Callable<Void> uploaderTask = i < numPhotoUploaders
+                            ? getUploaderTask(i, scheduler.takesOppositeEnd(i, numPhotoUploaders), 0,
+                                    numPhotosToUpload, mediasToUploadQueue, mediasUploaded, progressListener)
+                            : getUploaderTask(i,
+                                    scheduler.takesOppositeEnd(i - numPhotoUploaders, numVideoLaneUploaders),
+                                    videoChunkSize, numVideosToUpload, videosToUploadQueue, mediasUploaded,
+                                    progressListener);
+                    return CompletableFuture.runAsync(() -> {
+                        try {
+                            uploaderTask.call();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, taskExecutor);
+                })
                 .toArray(CompletableFuture[]::new);
 
         // Chain saver task to run after all uploaders complete
+        AtomicInteger saveFailures = new AtomicInteger();
         CompletableFuture<Void> uploadAndSaveFuture = CompletableFuture.allOf(uploaderFutures)
                 .thenRunAsync(() -> {
                     try {
-                        getSaverTask(album, mediasUploaded, progressLog).call();
+                        saveFailures.set(getSaverTask(album, mediasUploaded, progressListener).call());
                     } catch (Exception e) {
                         throw new RuntimeException(e);
                     }
@@ -268,6 +553,8 @@ public class GooglePhotoAlbumManager {
             uploadAndSaveFuture.get();
             watcherFuture.get();
         } catch (InterruptedException | ExecutionException e) {
+            // The watcher waits for the save to complete, which won't happen anymore
+            watcherFuture.cancel(true);
             Throwable cause = e.getCause();
             if (isAuthError(cause)) {
                 throw new PermissionDeniedToLoadAlbumsException(new RuntimeException(cause));
@@ -281,99 +568,155 @@ public class GooglePhotoAlbumManager {
                 throw new RuntimeException(e);
             }
         }
+        if (mediasUploaded.size() < numberOfMediasToUpload) {
+            return false;
+        }
+        if (saveFailures.get() > 0) {
+            if (skipAlbumLoad) {
+                return false;
+            }
+            logger.info("{} medias reported as not saved, listing album {} again", saveFailures.get(), album.title());
+            return getMediasToUpload(album, mediasToUpload.stream().map(MediaWithName::file).toList()).isEmpty();
+        }
+        return true;
     }
 
-    private Callable<Void> getResizerTask(int index, ConcurrentLinkedQueue<MediaWithName> mediasToResizeQueue,
-            BlockingQueue<MediaWithName> mediasToUpload,
-            ConcurrentLinkedQueue<SyncStatusWatcher.MediaTaskLog> progressLog) {
+    private Callable<Void> getResizerTask(int index, Queue<MediaWithName> mediasToResizeQueue,
+            Queue<MediaWithName> mediasToUpload,
+            Consumer<SyncStatusWatcher.MediaTaskLog> progressListener) {
         return () -> {
             while (!mediasToResizeQueue.isEmpty()) {
-                MediaWithName mediaToResize = mediasToResizeQueue.poll();
-                if (mediaToResize != null) {
-                    progressLog.add(new SyncStatusWatcher.MediaTaskLog(
-                            SyncStatusWatcher.MediaTaskLog.Status.RESIZE_STARTED, index, mediaToResize));
-                    if (ImageUtils.isJPEG(mediaToResize.file())) {
-                        File resizedFile = ImageUtils.resizeJPGImage(mediaToResize.file(), MAX_FREE_DIMENSION);
-                        mediaToResize = new MediaWithName(mediaToResize.name(), resizedFile);
-                        progressLog.add(new SyncStatusWatcher.MediaTaskLog(
-                                SyncStatusWatcher.MediaTaskLog.Status.RESIZE_COMPLETED, index, mediaToResize));
-                    } else {
-                        progressLog
-                                .add(new SyncStatusWatcher.MediaTaskLog(
-                                        SyncStatusWatcher.MediaTaskLog.Status.RESIZE_NOT_REQUIRED, index,
-                                        mediaToResize));
-                    }
-                    try {
-                        mediasToUpload.put(mediaToResize);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+                resizeNext(index, mediasToResizeQueue, mediasToUpload, progressListener);
             }
-            progressLog.add(new SyncStatusWatcher.MediaTaskLog(
+            progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
                     SyncStatusWatcher.MediaTaskLog.Status.RESIZE_ALL_COMPLETED, index));
             return null;
         };
     }
 
-    private Callable<Void> getUploaderTask(int index, int totalNumMedias,
-            BlockingQueue<MediaWithName> mediasToUploadQueue, List<MediaWithName> mediasUploaded,
-            ConcurrentLinkedQueue<SyncStatusWatcher.MediaTaskLog> progressLog) {
-        AtomicInteger numMediasToUpload = new AtomicInteger(totalNumMedias);
+    private void resizeNext(int index, Queue<MediaWithName> mediasToResizeQueue, Queue<MediaWithName> mediasToUpload,
+            Consumer<SyncStatusWatcher.MediaTaskLog> progressListener) {
+        MediaWithName mediaToResize = mediasToResizeQueue.poll();
+        if (mediaToResize == null) {
+            return;
+        }
+        progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
+                SyncStatusWatcher.MediaTaskLog.Status.RESIZE_STARTED, index, mediaToResize));
+        if (ImageUtils.isJPEG(mediaToResize.file())) {
+            long resizeStart = System.nanoTime();
+            File resizedFile = ImageUtils.resizeJPGImage(mediaToResize.file(), MAX_FREE_DIMENSION);
+            resizeSeconds.observeSince(resizeStart);
+            mediaToResize = new MediaWithName(mediaToResize.name(), resizedFile);
+            progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
+                    SyncStatusWatcher.MediaTaskLog.Status.RESIZE_COMPLETED, index, mediaToResize));
+        } else {
+            progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
+                    SyncStatusWatcher.MediaTaskLog.Status.RESIZE_NOT_REQUIRED, index, mediaToResize));
+        }
+        mediasToUpload.offer(mediaToResize);
+    }
+
+    private Callable<Void> getUploaderTask(int index, boolean takesOppositeEnd, int chunkSize,
+            AtomicInteger numMediasToUpload, MediaScheduler.CostQueue mediasToUploadQueue,
+            List<MediaWithName> mediasUploaded, Consumer<SyncStatusWatcher.MediaTaskLog> progressListener) {
         return () -> {
             while (numMediasToUpload.getAndDecrement() > 0) {
                 try {
-                    MediaWithName media = mediasToUploadQueue.take();
-                    progressLog.add(new SyncStatusWatcher.MediaTaskLog(
+                    MediaWithName media = takesOppositeEnd ? mediasToUploadQueue.takeOpposite()
+                            : mediasToUploadQueue.take();
+                    progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
                             SyncStatusWatcher.MediaTaskLog.Status.UPLOAD_STARTED, index, media));
-                    String newMediaToken = googlePhotosAPI.uploadSingleFile(media.name(), media.file());
+                    String newMediaToken = chunkSize > 0
+                            ? googlePhotosAPI.uploadSingleFile(media.name(), media.file(), chunkSize)
+                            : googlePhotosAPI.uploadSingleFile(media.name(), media.file());
                     if (newMediaToken != null) {
-                        progressLog.add(new SyncStatusWatcher.MediaTaskLog(
+                        long fileSize = media.file().length();
+                        uploadedBytes.add(fileSize);
+                        uploadBytesRate.mark(fileSize);
+                        progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
                                 SyncStatusWatcher.MediaTaskLog.Status.UPLOAD_COMPLETED, index, media));
                         mediasUploaded.add(new MediaWithName(media.name(), media.file(), newMediaToken));
                     } else {
-                        progressLog.add(new SyncStatusWatcher.MediaTaskLog(
+                        progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
                                 SyncStatusWatcher.MediaTaskLog.Status.UPLOAD_FAILED, index, media));
                     }
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
             }
-            progressLog.add(new SyncStatusWatcher.MediaTaskLog(
+            progressListener.accept(new SyncStatusWatcher.MediaTaskLog(
                     SyncStatusWatcher.MediaTaskLog.Status.UPLOAD_ALL_COMPLETED, index));
             return null;
         };
     }
 
-    private Callable<Void> getSaverTask(
+    /**
+     * Returns how many medias the API reported as not saved.
+     */
+    private Callable<Integer> getSaverTask(
             Album album,
             List<MediaWithName> mediasUploaded,
-            ConcurrentLinkedQueue<SyncStatusWatcher.MediaTaskLog> progressLog) {
+            Consumer<SyncStatusWatcher.MediaTaskLog> progressListener) {
 
         return () -> {
             Collections.sort(mediasUploaded);
 
             if (!mediasUploaded.isEmpty()) {
-                progressLog.add(SyncStatusWatcher.MediaTaskLog
+                progressListener.accept(SyncStatusWatcher.MediaTaskLog
                         .forSave(SyncStatusWatcher.MediaTaskLog.Status.SAVE_STARTED, mediasUploaded.size()));
+                commitBatchSize.observe(mediasUploaded.size());
 
-                googlePhotosAPI.saveToAlbum(album,
+                int failed = googlePhotosAPI.saveToAlbum(album,
                         mediasUploaded.stream()
                                 .map(MediaWithName::uploadToken)
                                 .collect(Collectors.toList()));
 
-                progressLog.add(SyncStatusWatcher.MediaTaskLog
+                progressListener.accept(SyncStatusWatcher.MediaTaskLog
                         .forSave(SyncStatusWatcher.MediaTaskLog.Status.SAVE_COMPLETED, mediasUploaded.size()));
-            } else {
-                // No medias to save, signal completion immediately
-                progressLog.add(SyncStatusWatcher.MediaTaskLog
-                        .forSave(SyncStatusWatcher.MediaTaskLog.Status.SAVE_COMPLETED, 0));
+                return failed;
             }
-
-            return null;
+            // No medias to save, signal completion immediately
+            progressListener.accept(SyncStatusWatcher.MediaTaskLog
+                    .forSave(SyncStatusWatcher.MediaTaskLog.Status.SAVE_COMPLETED, 0));
+            return 0;
         };
     }
 
+    /**
+     * Adds the medias already in the remote library to the album without uploading them.
+     * Returns the medias still to upload: the unmatched ones, or all of them if the add fails
+     * (only items uploaded by this app can be added to its albums).
+     */
+    private List<MediaWithName> addMediasFromLibrary(Album album, List<MediaWithName> mediasToUpload)
+            throws PermissionDeniedToLoadAlbumsException {
+        List<MediaWithName> remaining = new ArrayList<>();
+        List<String> libraryIds = new ArrayList<>();
+        for (MediaWithName media : mediasToUpload) {
+            String libraryId = remoteLibraryIndex.find(media.file(), media.name());
+            if (libraryId != null) {
+                libraryIds.add(libraryId);
+            } else {
+                remaining.add(media);
+            }
+        }
+        if (libraryIds.isEmpty()) {
+            return mediasToUpload;
+        }
+        try {
+            googlePhotosAPI.batchAddMediaItems(album.id(), libraryIds);
+        } catch (RuntimeException e) {
+            if (isAuthError(e)) {
+                throw new PermissionDeniedToLoadAlbumsException(e);
+            }
+            logger.warn("Couldn't add {} medias from the library, uploading them: {}", libraryIds.size(),
+                    e.getMessage());
+            return mediasToUpload;
+        }
+        logger.info("Added {} medias already in the library", libraryIds.size());
+        reusedMedias.add(libraryIds.size());
+        return remaining;
+    }
+
     private List<MediaWithName> getMediasToUpload(List<File> files, Set<String> albumFileNames) {
         return files.stream()
                 .map(file -> new MediaWithName(AlbumUtils.file2MediaName(file), file))
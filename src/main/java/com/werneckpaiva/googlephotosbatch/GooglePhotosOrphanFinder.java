@@ -1,9 +1,19 @@
 package com.werneckpaiva.googlephotosbatch;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.bulk.BulkAlbumAdder;
+import com.werneckpaiva.googlephotosbatch.bulk.BulkDescriptionUpdater;
+import com.werneckpaiva.googlephotosbatch.bulk.BulkOperation;
+import com.werneckpaiva.googlephotosbatch.orphan.AlbumMediasIndex;
+import com.werneckpaiva.googlephotosbatch.orphan.LibraryDump;
+import com.werneckpaiva.googlephotosbatch.orphan.MediaDownloader;
+import com.werneckpaiva.googlephotosbatch.orphan.OrphanReport;
+import com.werneckpaiva.googlephotosbatch.orphan.SegmentedDump;
 import com.werneckpaiva.googlephotosbatch.service.Album;
 import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
 import com.werneckpaiva.googlephotosbatch.service.impl.GooglePhotosAPIV1LibraryImpl;
+import com.werneckpaiva.googlephotosbatch.service.impl.RequestRateLimiter;
 import org.fusesource.jansi.AnsiConsole;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,15 +25,15 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CommandLine.Command(name = "googlephotos-orphan-finder", mixinStandardHelpOptions = true, version = "1.0", description = "Identifies files in Google Photos that are not in any album with resume support.", subcommands = {
         GooglePhotosOrphanFinder.DownloadCommand.class, GooglePhotosOrphanFinder.ReportCommand.class,
@@ -50,7 +60,25 @@ public class GooglePhotosOrphanFinder {
             "--library-token" }, description = "File to store library page token", defaultValue = "library_page_token.txt")
     private String libraryTokenFile;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @CommandLine.Option(names = {
+            "--max-requests-per-second" }, description = "Upper bound on API requests per second, 0 for unlimited (default: ${DEFAULT-VALUE})", defaultValue = "0")
+    private double maxRequestsPerSecond;
+
+    @CommandLine.Option(names = {
+            "--dump-format" }, description = "Format of new album and library dumps: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}). Existing dumps keep their format, reading detects it", defaultValue = "JSONL")
+    private SegmentedDump.Format dumpFormat;
+
+    @CommandLine.Option(names = {
+            "--drop-base-url" }, description = "Don't store the expiring baseUrl of medias in the dumps")
+    private boolean dropBaseUrl;
+
+    // Albums written per dump segment: a crash loses at most this many album scans
+    private static final int ALBUMS_PER_SEGMENT = 25;
+
+    private static final long SEGMENT_INTERVAL_MS = 5000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
     public record AlbumMedias(String albumName, String albumId, List<GooglePhotosAPI.MediaItemInfo> files) {
     }
@@ -71,6 +99,18 @@ public class GooglePhotosOrphanFinder {
         @CommandLine.ParentCommand
         private GooglePhotosOrphanFinder parent;
 
+        @CommandLine.Option(names = {
+                "--album-concurrency" }, description = "Number of albums scanned in parallel (default: ${DEFAULT-VALUE})", defaultValue = "4")
+        private int albumConcurrency;
+
+        @CommandLine.Option(names = {
+                "--checkpoint-pages" }, description = "Library pages written between checkpoints of the page token (default: ${DEFAULT-VALUE})", defaultValue = "10")
+        private int checkpointPages;
+
+        @CommandLine.Option(names = {
+                "--checkpoint-seconds" }, description = "Maximum seconds between checkpoints of the page token (default: ${DEFAULT-VALUE})", defaultValue = "5")
+        private int checkpointSeconds;
+
         @Override
         public Integer call() {
             try {
@@ -80,12 +120,19 @@ public class GooglePhotosOrphanFinder {
                     return 1;
                 }
 
-                GooglePhotosAPI googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                GooglePhotosAPIV1LibraryImpl googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                googlePhotoService.setRateLimiter(new RequestRateLimiter(parent.maxRequestsPerSecond));
                 GooglePhotoAlbumManager albumManager = new GooglePhotoAlbumManager(googlePhotoService);
                 albumManager.setAlbumsCache(new File(parent.albumsCacheFile));
 
-                parent.processAlbums(googlePhotoService, albumManager);
-                parent.processLibrary(googlePhotoService);
+                parent.processAlbums(googlePhotoService, albumManager, albumConcurrency);
+                LibraryDump libraryDump = new LibraryDump(Paths.get(parent.libraryMediasFile),
+                        Paths.get(parent.libraryTokenFile));
+                libraryDump.setCheckpointPages(checkpointPages);
+                libraryDump.setCheckpointIntervalMs(checkpointSeconds * 1000L);
+                libraryDump.setFormat(parent.dumpFormat);
+                libraryDump.setDropBaseUrl(parent.dropBaseUrl);
+                libraryDump.run(googlePhotoService);
 
                 return 0;
             } catch (Throwable e) {
@@ -101,10 +148,24 @@ public class GooglePhotosOrphanFinder {
         @CommandLine.ParentCommand
         private GooglePhotosOrphanFinder parent;
 
+        @CommandLine.Option(names = {
+                "--sort-memory-mb" }, description = "Memory for sorting media IDs before spilling to disk (default: ${DEFAULT-VALUE})", defaultValue = "256")
+        private int sortMemoryMb;
+
+        @CommandLine.Option(names = {
+                "--temp-dir" }, description = "Directory for sort spill files (default: system temp dir)")
+        private File tempDir;
+
+        @CommandLine.Option(names = {
+                "--reader-threads" }, description = "Threads reading segmented dumps (default: ${DEFAULT-VALUE})", defaultValue = "4")
+        private int readerThreads;
+
         @Override
         public Integer call() {
             try {
-                parent.reportOrphans();
+                parent.reportOrphans(sortMemoryMb * 1024L * 1024L,
+                        tempDir != null ? tempDir.toPath() : Paths.get(System.getProperty("java.io.tmpdir")),
+                        readerThreads);
                 return 0;
             } catch (Throwable e) {
                 logger.error("Error running report", e);
@@ -113,181 +174,128 @@ public class GooglePhotosOrphanFinder {
         }
     }
 
-    private void processAlbums(GooglePhotosAPI api, GooglePhotoAlbumManager albumManager) throws Throwable {
+    /**
+     * Scans albums with a bounded pool. Only this thread appends to the album medias file,
+     * one complete line per album, so resuming by albumId keeps working.
+     */
+    void processAlbums(GooglePhotosAPI api, GooglePhotoAlbumManager albumManager, int albumConcurrency)
+            throws Throwable {
         System.out.println("Loading albums...");
         Map<String, Album> allAlbums = albumManager.listAllAlbums();
 
-        Set<String> completedAlbumIds = loadCompletedAlbumIds();
+        AlbumMediasIndex albumMediasIndex = new AlbumMediasIndex(Paths.get(albumMediasFile));
+        Set<String> completedAlbumIds = albumMediasIndex.load();
         System.out.println("Processing albums (resuming from " + completedAlbumIds.size() + " already processed)...");
 
-        int albumCount = 0;
+        ExecutorService scanners = Executors.newFixedThreadPool(Math.max(1, albumConcurrency));
+        CompletionService<AlbumMedias> scans = new ExecutorCompletionService<>(scanners);
+        int pending = 0;
         for (Album album : allAlbums.values()) {
-            albumCount++;
             if (completedAlbumIds.contains(album.id())) {
                 continue;
             }
-
-            System.out.print("\rProcessing album " + albumCount + "/" + allAlbums.size() + ": " + album.title());
-            try {
-                Set<GooglePhotosAPI.MediaItemInfo> albumFiles = api.retrieveFilesFromAlbum(album);
-                AlbumMedias entry = new AlbumMedias(album.title(), album.id(),
-                        new java.util.ArrayList<>(albumFiles));
-                appendJsonObject(albumMediasFile, entry);
-            } catch (Exception e) {
-                System.err.println("\nError retrieving files from album " + album.title() + ": " + e.getMessage());
-            }
-        }
-        System.out.println("\nFinished processing albums.");
-    }
-
-    private Set<String> loadCompletedAlbumIds() throws IOException {
-        Set<String> ids = new HashSet<>();
-        Path path = Paths.get(albumMediasFile);
-        if (!Files.exists(path)) {
-            return ids;
-        }
-        try (BufferedReader reader = Files.newBufferedReader(path)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty())
-                    continue;
+            scans.submit(() -> {
                 try {
-                    AlbumMedias entry = objectMapper.readValue(line, AlbumMedias.class);
-                    ids.add(entry.albumId());
+                    return new AlbumMedias(album.title(), album.id(),
+                            new ArrayList<>(api.retrieveFilesFromAlbum(album)));
                 } catch (Exception e) {
-                    // Ignore malformed lines
+                    System.err.println("\nError retrieving files from album " + album.title() + ": " + e.getMessage());
+                    return null;
                 }
-            }
+            });
+            pending++;
         }
-        return ids;
-    }
-
-    private void processLibrary(GooglePhotosAPI api) throws IOException {
-        String pageToken = loadToken(libraryTokenFile);
-        System.out.println(
-                "Processing library items (resuming with token: " + (pageToken == null ? "START" : pageToken) + ")...");
-
-        int totalItems = 0;
-        do {
-            GooglePhotosAPI.MediaItemsResult result = api.listMediaItems(pageToken);
-            List<GooglePhotosAPI.MediaItemInfo> pageItems = new java.util.ArrayList<>();
-            for (GooglePhotosAPI.MediaItemInfo item : result.items()) {
-                pageItems.add(item);
-                totalItems++;
-            }
-            appendJsonObjects(libraryMediasFile, pageItems);
-
-            pageToken = result.nextPageToken();
-            saveToken(libraryTokenFile, pageToken);
-
-            if (totalItems % 100 == 0 || pageToken == null) {
-                System.out.print("\rProcessed " + totalItems + " library items...");
-            }
-        } while (pageToken != null && !pageToken.isEmpty());
-
-        System.out.println("\nFinished processing library items.");
-    }
 
-    public record OrphanReportItem(String id, String filename) {
-    }
-
-    public record ReportOutput(int totalAlbums, int totalLibraryItems, int totalUniqueItemsInAlbums, int orphanCount,
-            List<OrphanReportItem> orphans) {
-    }
-
-    private void reportOrphans() throws IOException {
-        System.err.println("Identifying orphaned files...");
-        Set<String> idsInAlbums = new HashSet<>();
-        int albumCount = 0;
-        Path albumPath = Paths.get(albumMediasFile);
-        if (Files.exists(albumPath)) {
-            try (BufferedReader reader = Files.newBufferedReader(albumPath)) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.trim().isEmpty())
+        int albumCount = allAlbums.size() - pending;
+        List<String> uncommittedAlbumIds = new ArrayList<>();
+        long lastCommit = System.currentTimeMillis();
+        try (SegmentedDump albumMediasDump = SegmentedDump.openForAppend(Paths.get(albumMediasFile), dumpFormat)) {
+            try {
+                for (int i = 0; i < pending; i++) {
+                    AlbumMedias entry = scans.take().get();
+                    albumCount++;
+                    if (entry == null) {
                         continue;
-                    try {
-                        AlbumMedias album = objectMapper.readValue(line, AlbumMedias.class);
-                        albumCount++;
-                        for (GooglePhotosAPI.MediaItemInfo item : album.files()) {
-                            idsInAlbums.add(item.id());
-                        }
-                    } catch (Exception e) {
-                        // Skip malformed lines
+                    }
+                    System.out.print("\rProcessed album " + albumCount + "/" + allAlbums.size() + ": "
+                            + entry.albumName());
+                    if (dropBaseUrl) {
+                        entry = new AlbumMedias(entry.albumName(), entry.albumId(), entry.files().stream()
+                                .map(file -> new GooglePhotosAPI.MediaItemInfo(file.id(), file.filename(), null,
+                                        file.creationTime()))
+                                .toList());
+                    }
+                    albumMediasDump.writeLine(objectMapper.writeValueAsString(entry));
+                    uncommittedAlbumIds.add(entry.albumId());
+                    if (uncommittedAlbumIds.size() >= ALBUMS_PER_SEGMENT
+                            || System.currentTimeMillis() - lastCommit >= SEGMENT_INTERVAL_MS) {
+                        commitAlbums(albumMediasDump, albumMediasIndex, uncommittedAlbumIds);
+                        lastCommit = System.currentTimeMillis();
                     }
                 }
+            } finally {
+                commitAlbums(albumMediasDump, albumMediasIndex, uncommittedAlbumIds);
             }
+        } finally {
+            scanners.shutdownNow();
         }
-
-        List<OrphanReportItem> orphans = new java.util.ArrayList<>();
-        int orphanCount = 0;
-        int totalLibraryItems = 0;
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(libraryMediasFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty())
-                    continue;
-                totalLibraryItems++;
-                GooglePhotosAPI.MediaItemInfo item = objectMapper.readValue(line, GooglePhotosAPI.MediaItemInfo.class);
-
-                if (!idsInAlbums.contains(item.id())) {
-                    orphanCount++;
-                    orphans.add(new OrphanReportItem(item.id(), item.filename()));
-                }
-            }
-        }
-        System.err.println("Total albums considered: " + albumCount);
-        System.err.println("Total library items: " + totalLibraryItems);
-        System.err.println("Total unique items in albums: " + idsInAlbums.size());
-        System.err.println("Found " + orphanCount + " orphaned files.");
-
-        ReportOutput report = new ReportOutput(albumCount, totalLibraryItems, idsInAlbums.size(), orphanCount, orphans);
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(System.out, report);
-    }
-
-    private void appendJsonObject(String fileName, Object obj) throws IOException {
-        String line = objectMapper.writeValueAsString(obj);
-        Files.write(Paths.get(fileName), java.util.Collections.singletonList(line), StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-    }
-
-    private void appendJsonObjects(String fileName, List<GooglePhotosAPI.MediaItemInfo> items) throws IOException {
-        if (items.isEmpty())
-            return;
-        List<String> lines = new java.util.ArrayList<>();
-        for (GooglePhotosAPI.MediaItemInfo item : items) {
-            lines.add(objectMapper.writeValueAsString(item));
-        }
-        Files.write(Paths.get(fileName), lines, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("\nFinished processing albums.");
     }
 
-    private String loadToken(String fileName) throws IOException {
-        Path path = Paths.get(fileName);
-        if (!Files.exists(path))
-            return null;
-        String token = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
-        return token.isEmpty() ? null : token;
+    /**
+     * Writes the report to stdout as it is computed: the orphans array (in ID order), then the totals.
+     */
+    private void reportOrphans(long sortMemoryBytes, Path tempDir, int readerThreads) throws IOException {
+        System.err.println("Identifying orphaned files...");
+        // Each of the two sorters gets half of the budget
+        OrphanReport orphanReport = new OrphanReport(sortMemoryBytes / 2, tempDir);
+        orphanReport.setReaderThreads(readerThreads);
+        OrphanReport.Summary summary = orphanReport.write(Paths.get(albumMediasFile), Paths.get(libraryMediasFile), System.out);
+        System.out.println();
+        System.err.println("Total albums considered: " + summary.totalAlbums());
+        System.err.println("Total library items: " + summary.totalLibraryItems());
+        System.err.println("Total unique items in albums: " + summary.totalUniqueItemsInAlbums());
+        System.err.println("Found " + summary.orphanCount() + " orphaned files.");
     }
 
-    private void saveToken(String fileName, String token) throws IOException {
-        if (token == null) {
-            Files.deleteIfExists(Paths.get(fileName));
-        } else {
-            Files.write(Paths.get(fileName), token.getBytes(StandardCharsets.UTF_8),
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    private static void commitAlbums(SegmentedDump albumMediasDump, AlbumMediasIndex albumMediasIndex,
+            List<String> albumIds) throws IOException {
+        albumMediasDump.commit();
+        for (String albumId : albumIds) {
+            albumMediasIndex.append(albumId);
         }
+        albumIds.clear();
     }
 
-    @CommandLine.Command(name = "download-media", description = "Download a single media item by ID", mixinStandardHelpOptions = true)
+    @CommandLine.Command(name = "download-media", description = "Download media items by ID, one or a list such as the orphan report", mixinStandardHelpOptions = true)
     public static class DownloadMediaCommand implements Callable<Integer> {
 
         @CommandLine.ParentCommand
         private GooglePhotosOrphanFinder parent;
 
-        @CommandLine.Option(names = { "--id",
-                "-i" }, required = true, description = "The ID of the media item to download")
-        private String mediaId;
+        @CommandLine.ArgGroup(exclusive = true, multiplicity = "1")
+        private Source source;
+
+        static class Source {
+            @CommandLine.Option(names = { "--id", "-i" }, description = "The ID of the media item to download")
+            private String mediaId;
+
+            @CommandLine.Option(names = {
+                    "--ids-file" }, description = "File with the IDs to download, '-' for stdin: one ID per line, the orphan report or a JSON Lines media dump")
+            private String idsFile;
+        }
+
+        @CommandLine.Option(names = {
+                "--output-dir" }, description = "Folder to download to (default: ${DEFAULT-VALUE})", defaultValue = ".")
+        private String outputDir;
+
+        @CommandLine.Option(names = {
+                "--concurrency" }, description = "Parallel downloads (default: ${DEFAULT-VALUE})", defaultValue = "4")
+        private int concurrency;
+
+        @CommandLine.Option(names = {
+                "--done-file" }, description = "File recording the downloaded IDs, skipped on the next run (default: <output-dir>/downloaded_medias.txt)")
+        private String doneFile;
 
         @Override
         public Integer call() {
@@ -298,25 +306,32 @@ public class GooglePhotosOrphanFinder {
                     return 1;
                 }
 
-                GooglePhotosAPI googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
-
-                System.out.println("Fetching media item info for ID: " + mediaId);
-                GooglePhotosAPI.MediaItemInfo mediaItem = googlePhotoService.getMediaItem(mediaId);
-                System.out.println("Found media item: " + mediaItem.filename());
-
-                String downloadUrl = mediaItem.baseUrl() + "=d";
-                System.out.println("Downloading from: " + downloadUrl);
+                GooglePhotosAPIV1LibraryImpl googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                googlePhotoService.setRateLimiter(new RequestRateLimiter(parent.maxRequestsPerSecond));
 
-                File outputFile = new File(mediaItem.filename());
-                try (InputStream in = new URL(downloadUrl).openStream()) {
-                    Files.copy(in, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                List<String> mediaIds;
+                if (source.mediaId != null) {
+                    mediaIds = List.of(source.mediaId);
+                } else if ("-".equals(source.idsFile)) {
+                    mediaIds = MediaDownloader.readIds(System.in);
+                } else {
+                    try (InputStream in = Files.newInputStream(Paths.get(source.idsFile))) {
+                        mediaIds = MediaDownloader.readIds(in);
+                    }
                 }
 
-                System.out.println("Downloaded to: " + outputFile.getAbsolutePath());
+                Path outputPath = Paths.get(outputDir);
+                MediaDownloader downloader = new MediaDownloader(outputPath,
+                        doneFile != null ? Paths.get(doneFile) : outputPath.resolve("downloaded_medias.txt"));
+                downloader.setConcurrency(concurrency);
+                MediaDownloader.Result result = downloader.download(googlePhotoService, mediaIds);
 
-                return 0;
+                System.out.println("Downloaded " + result.downloaded() + " media items to "
+                        + outputPath.toAbsolutePath() + " (" + result.skipped() + " already done, "
+                        + result.failed() + " failed)");
+                return result.failed() > 0 ? 1 : 0;
             } catch (Throwable e) {
-                logger.error("Error downloading media item", e);
+                logger.error("Error downloading media items", e);
                 return 1;
             }
         }
@@ -328,48 +343,58 @@ public class GooglePhotosOrphanFinder {
         @CommandLine.ParentCommand
         private GooglePhotosOrphanFinder parent;
 
-        @CommandLine.Option(names = { "--album-id", "-a" }, required = true, description = "The ID of the target album")
+        @CommandLine.Option(names = { "--album-id",
+                "-a" }, description = "The ID of the target album, for input lines with only a media ID")
         private String albumId;
 
-        @CommandLine.Parameters(description = "The IDs of the media items to add")
+        @CommandLine.Option(names = {
+                "--concurrency" }, description = "Batches added in parallel (default: ${DEFAULT-VALUE})", defaultValue = "4")
+        private int concurrency;
+
+        @CommandLine.Option(names = {
+                "--input" }, description = "File of items to add, '-' for stdin: mediaId, or albumId,mediaId per line")
+        private String inputFile;
+
+        @CommandLine.Option(names = {
+                "--results-file" }, description = "JSON Lines file with the result of each item, items already added are skipped on the next run (default: <input>.results.jsonl next to --input, add_to_album_results.jsonl otherwise)")
+        private String resultsFile;
+
+        @CommandLine.Parameters(description = "The IDs of the media items to add. Without them or --input, lines are read from stdin: mediaId, or albumId,mediaId")
         private List<String> mediaItemIds;
 
         @Override
         public Integer call() {
             try {
+                if (inputFile != null && mediaItemIds != null && !mediaItemIds.isEmpty()) {
+                    System.err.println("Give either media item IDs or --input, not both");
+                    return 1;
+                }
                 URL credentialsURL = parent.getClass().getClassLoader().getResource(CREDENTIALS_JSON);
                 if (credentialsURL == null) {
                     System.err.println("Required credentials file not found: " + CREDENTIALS_JSON);
                     return 1;
                 }
 
-                GooglePhotosAPI googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
-
-                List<String> idsToAdd = new ArrayList<>();
-                if (mediaItemIds != null && !mediaItemIds.isEmpty()) {
-                    idsToAdd.addAll(mediaItemIds);
-                } else {
-                    // Read from stdin
-                    try (Scanner scanner = new Scanner(System.in)) {
-                        while (scanner.hasNextLine()) {
-                            String line = scanner.nextLine().trim();
-                            if (!line.isEmpty()) {
-                                idsToAdd.add(line);
-                            }
-                        }
-                    }
-                }
-
-                if (idsToAdd.isEmpty()) {
-                    System.err.println("No media IDs provided.");
-                    return 1;
+                GooglePhotosAPIV1LibraryImpl googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                googlePhotoService.setRateLimiter(new RequestRateLimiter(parent.maxRequestsPerSecond));
+
+                Path results = resultsFile != null ? Paths.get(resultsFile)
+                        : BulkOperation.defaultResultsFile(inputFile, "add_to_album_results.jsonl");
+
+                BulkOperation.Summary summary;
+                try (BufferedReader input = mediaItemIds != null && !mediaItemIds.isEmpty()
+                        ? new BufferedReader(new StringReader(String.join("\n", mediaItemIds)))
+                        : inputFile != null && !"-".equals(inputFile)
+                                ? Files.newBufferedReader(Paths.get(inputFile), StandardCharsets.UTF_8)
+                                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                        BulkOperation operation = new BulkOperation(results, concurrency)) {
+                    new BulkAlbumAdder(googlePhotoService, operation, albumId).add(input);
+                    summary = operation.await();
                 }
 
-                System.out.println("Adding " + idsToAdd.size() + " items to album " + albumId);
-                googlePhotoService.batchAddMediaItems(albumId, idsToAdd);
-                System.out.println("Items added successfully.");
-
-                return 0;
+                System.out.println("Added " + summary.succeeded() + " items (" + summary.skipped()
+                        + " already added, " + summary.failed() + " failed, see " + results + ")");
+                return summary.failed() > 0 ? 1 : 0;
             } catch (Throwable e) {
                 logger.error("Error adding items to album", e);
                 return 1;
@@ -417,18 +442,40 @@ public class GooglePhotosOrphanFinder {
         }
     }
 
-    @CommandLine.Command(name = "set-description", description = "Update the description of a media item", mixinStandardHelpOptions = true)
+    @CommandLine.Command(name = "set-description", description = "Update the description of a media item, or of many from a file", mixinStandardHelpOptions = true)
     public static class SetDescriptionCommand implements Callable<Integer> {
 
         @CommandLine.ParentCommand
         private GooglePhotosOrphanFinder parent;
 
-        @CommandLine.Option(names = { "--media-id",
-                "-i" }, required = true, description = "The ID of the media item to update")
-        private String mediaId;
+        @CommandLine.ArgGroup(exclusive = true, multiplicity = "1")
+        private Source source;
+
+        static class Source {
+            @CommandLine.ArgGroup(exclusive = false)
+            private Single single;
 
-        @CommandLine.Option(names = { "--description", "-d" }, required = true, description = "The new description")
-        private String description;
+            @CommandLine.Option(names = {
+                    "--input" }, description = "File of descriptions to set, '-' for stdin: JSON Lines with id and description, or CSV mediaId,description")
+            private String input;
+        }
+
+        static class Single {
+            @CommandLine.Option(names = { "--media-id",
+                    "-i" }, required = true, description = "The ID of the media item to update")
+            private String mediaId;
+
+            @CommandLine.Option(names = { "--description", "-d" }, required = true, description = "The new description")
+            private String description;
+        }
+
+        @CommandLine.Option(names = {
+                "--concurrency" }, description = "Updates sent in parallel with --input (default: ${DEFAULT-VALUE})", defaultValue = "4")
+        private int concurrency;
+
+        @CommandLine.Option(names = {
+                "--results-file" }, description = "JSON Lines file with the result of each item, items already updated are skipped on the next run (default: <input>.results.jsonl next to --input, set_description_results.jsonl for stdin)")
+        private String resultsFile;
 
         @Override
         public Integer call() {
@@ -439,13 +486,31 @@ public class GooglePhotosOrphanFinder {
                     return 1;
                 }
 
-                GooglePhotosAPI googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                GooglePhotosAPIV1LibraryImpl googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
+                googlePhotoService.setRateLimiter(new RequestRateLimiter(parent.maxRequestsPerSecond));
 
-                System.out.println("Updating description for media item: " + mediaId);
-                googlePhotoService.updateMediaItemDescription(mediaId, description);
-                System.out.println("Description updated successfully.");
+                if (source.single != null) {
+                    System.out.println("Updating description for media item: " + source.single.mediaId);
+                    googlePhotoService.updateMediaItemDescription(source.single.mediaId, source.single.description);
+                    System.out.println("Description updated successfully.");
+                    return 0;
+                }
 
-                return 0;
+                Path results = resultsFile != null ? Paths.get(resultsFile)
+                        : BulkOperation.defaultResultsFile(source.input, "set_description_results.jsonl");
+
+                BulkOperation.Summary summary;
+                try (BufferedReader input = "-".equals(source.input)
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Paths.get(source.input), StandardCharsets.UTF_8);
+                        BulkOperation operation = new BulkOperation(results, concurrency)) {
+                    new BulkDescriptionUpdater(googlePhotoService, operation).update(input);
+                    summary = operation.await();
+                }
+
+                System.out.println("Updated " + summary.succeeded() + " descriptions (" + summary.skipped()
+                        + " skipped, " + summary.failed() + " failed, see " + results + ")");
+                return summary.failed() > 0 ? 1 : 0;
             } catch (Throwable e) {
                 logger.error("Error updating media item description", e);
                 return 1;
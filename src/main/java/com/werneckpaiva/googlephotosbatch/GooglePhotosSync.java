@@ -1,11 +1,18 @@
 package com.werneckpaiva.googlephotosbatch;
 
 import com.werneckpaiva.googlephotosbatch.exception.PermissionDeniedToLoadAlbumsException;
+import com.werneckpaiva.googlephotosbatch.metrics.InstrumentedGooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.metrics.MetricsExporter;
+import com.werneckpaiva.googlephotosbatch.metrics.MetricsRegistry;
 import com.werneckpaiva.googlephotosbatch.service.Album;
 import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.service.LazyGooglePhotosAPI;
 import com.werneckpaiva.googlephotosbatch.exception.GooglePhotosServiceException;
+import com.werneckpaiva.googlephotosbatch.service.impl.BandwidthLimiter;
+import com.werneckpaiva.googlephotosbatch.service.impl.BandwidthSchedule;
 import com.werneckpaiva.googlephotosbatch.service.impl.GooglePhotosAPIV1LibraryImpl;
-import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+import com.werneckpaiva.googlephotosbatch.service.impl.RequestRateLimiter;
+import com.werneckpaiva.googlephotosbatch.service.impl.TransportSettings;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,23 +20,30 @@ import org.fusesource.jansi.AnsiConsole;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.Callable;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
 
 @CommandLine.Command(name = "googlephotos-sync", mixinStandardHelpOptions = true, version = "1.0", description = "Syncs local folders to Google Photos albums.")
 public class GooglePhotosSync implements Callable<Integer> {
 
-    private static final Pattern ALLOWED_FILES_PATTERN = Pattern.compile("\\.(jpe?g|mp4|mov)$",
-            Pattern.CASE_INSENSITIVE);
-
     private static final Logger logger = LoggerFactory.getLogger(GooglePhotosSync.class);
     private static final String CREDENTIALS_JSON = "credentials.json";
 
-    @CommandLine.Parameters(index = "0", description = "Base folder to calculate album names")
+    @CommandLine.Parameters(index = "0", arity = "0..1", description = "Base folder to calculate album names (not needed with --execute)")
     private String baseFolder;
 
     @CommandLine.Parameters(index = "1..*", description = "Folders to process (optional, defaults to base folder)", defaultValue = "")
@@ -47,6 +61,139 @@ public class GooglePhotosSync implements Callable<Integer> {
             "--albums-cache" }, description = "Path to a file to cache album information (JSON per line)")
     private String albumsCache;
 
+    @CommandLine.Option(names = {
+            "--uploaders" }, description = "Number of concurrent uploaders (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    private int uploaders = 1;
+
+    @CommandLine.Option(names = {
+            "--video-uploaders" }, description = "Concurrent uploaders of the video lane, apart from --uploaders (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    private int videoUploaders = 1;
+
+    @CommandLine.Option(names = {
+            "--video-chunk-size" }, description = "Bytes per upload request for videos (default: client default)")
+    private int videoChunkSize = 0;
+
+    @CommandLine.Option(names = {
+            "--upload-limit" }, description = "Upload bytes per second shared by all uploaders, K/M/G suffixes, with optional time-of-day rules, e.g. 09:00-18:00=5M,0 (default: unlimited)")
+    private String uploadLimit;
+
+    @CommandLine.Option(names = {
+            "--schedule" }, description = "Order of medias through resizing and upload, by estimated cost: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})", defaultValue = "SHORTEST_FIRST")
+    private MediaScheduler.Policy schedulingPolicy = MediaScheduler.Policy.SHORTEST_FIRST;
+
+    @CommandLine.Option(names = {
+            "--channel-pool-size" }, description = "Number of gRPC channels shared by concurrent API calls (default: library default)")
+    private int channelPoolSize = 0;
+
+    @CommandLine.Option(names = {
+            "--keepalive-seconds" }, description = "gRPC keepalive ping interval in seconds (default: library default)")
+    private int keepAliveSeconds = 0;
+
+    @CommandLine.Option(names = {
+            "--keepalive-timeout-seconds" }, description = "gRPC keepalive ping timeout in seconds (default: library default)")
+    private int keepAliveTimeoutSeconds = 0;
+
+    @CommandLine.Option(names = {
+            "--max-inbound-message-size" }, description = "Maximum gRPC inbound message size in bytes (default: library default)")
+    private int maxInboundMessageSize = 0;
+
+    @CommandLine.Option(names = {
+            "--executor-threads" }, description = "Threads of the client background executor (default: library default)")
+    private int executorThreads = 0;
+
+    @CommandLine.Option(names = {
+            "--max-upload-connections" }, description = "Keep-alive connections reused by uploads (default: JVM default)")
+    private int maxUploadConnections = 0;
+
+    @CommandLine.Option(names = {
+            "--metrics-file" }, description = "Prometheus textfile where metrics are written periodically")
+    private String metricsFile;
+
+    @CommandLine.Option(names = {
+            "--metrics-interval" }, description = "Seconds between metrics textfile updates (default: ${DEFAULT-VALUE})", defaultValue = "15")
+    private int metricsInterval = 15;
+
+    @CommandLine.Option(names = {
+            "--jmx" }, description = "Expose pipeline metrics through JMX")
+    private boolean jmx = false;
+
+    @CommandLine.Option(names = {
+            "--progress" }, description = "Progress output: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}, JSON lines when stdout is not a terminal)", defaultValue = "AUTO")
+    private SyncStatusWatcher.Mode progressMode = SyncStatusWatcher.Mode.AUTO;
+
+    @CommandLine.Option(names = {
+            "--run-report" }, description = "JSONL file with per-media timings (queued, resize, upload, commit) and per-album summaries")
+    private String runReportFile;
+
+    @CommandLine.Option(names = {
+            "--library-index" }, description = "Library dump of googlephotos-orphan-finder download: files matching an item by filename and capture time are added to the album instead of uploaded")
+    private String libraryIndexFile;
+
+    @CommandLine.Option(names = {
+            "--scan-threads" }, description = "Threads scanning folders and, with --plan, comparing albums (default: ${DEFAULT-VALUE})", defaultValue = "4")
+    private int scanThreads = 4;
+
+    @CommandLine.Option(names = {
+            "--plan" }, description = "Only scan and compare, writing the albums to create and files to upload to this JSON file")
+    private String planFile;
+
+    @CommandLine.Option(names = {
+            "--plan-upload-mbps" }, description = "Upload throughput in MB/s assumed by the --plan time estimate (default: ${DEFAULT-VALUE})", defaultValue = "2")
+    private double planUploadMBps = 2;
+
+    @CommandLine.Option(names = {
+            "--execute" }, description = "Upload a plan written by --plan without scanning again. Finished albums are recorded in <file>.done")
+    private String executePlanFile;
+
+    @CommandLine.Option(names = {
+            "--sync-state" }, description = "File recording the folders synced (JSON per line). Folders unchanged since their last complete sync are skipped without calling the API")
+    private String syncStateFile;
+
+    @CommandLine.Option(names = {
+            "--folder-snapshot" }, description = "File recording the folder tree as synced (JSON per line). Directories not modified since are not listed again")
+    private String folderSnapshotFile;
+
+    @CommandLine.Option(names = {
+            "--shard" }, description = "Only sync the albums of this worker, i/N with i from 0 to N-1, split by a hash of the album name")
+    private String shardSpec;
+
+    @CommandLine.Option(names = {
+            "--lease-dir" }, description = "Directory shared by workers where album leases are kept (default: <baseFolder>/.googlephotos-leases with --shard)")
+    private String leaseDir;
+
+    @CommandLine.Option(names = {
+            "--daemon" }, description = "Keep running and accept sync jobs through a local HTTP API, reusing the client and the albums loaded")
+    private boolean daemon = false;
+
+    @CommandLine.Option(names = {
+            "--daemon-port" }, description = "Port of the --daemon job API, bound to localhost (default: ${DEFAULT-VALUE})", defaultValue = "8765")
+    private int daemonPort = 8765;
+
+    @CommandLine.Option(names = {
+            "--profiles" }, description = "JSON file of account profiles synced concurrently, each with its own credentials directory, folders and request rate; replaces the base folder")
+    private String profilesFile;
+
+    private static final long LEASE_POLL_MILLIS = 10_000;
+
+    private Shard shard = null;
+
+    private BandwidthLimiter bandwidthLimiter = null;
+
+    private SyncState syncState = null;
+
+    private FolderSnapshot folderSnapshot = null;
+
+    // One client per run, or one per profile
+    private final List<LazyGooglePhotosAPI> lazyGooglePhotosAPIs = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong scanMs = new AtomicLong();
+
+    private AlbumLeases albumLeases = null;
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+
+    private RunReport runReport = null;
+
     public static void main(String[] args) {
         System.setProperty("io.netty.noUnsafe", "true");
         System.setProperty("io.grpc.netty.shaded.io.netty.noUnsafe", "true");
@@ -59,10 +206,70 @@ public class GooglePhotosSync implements Callable<Integer> {
 
     @Override
     public Integer call() {
+        long callStart = System.currentTimeMillis();
         if (albumId != null) {
             skipLoad = true;
         }
-        if (foldersToProcess.isEmpty()) {
+        if (baseFolder == null && executePlanFile == null && profilesFile == null) {
+            System.err.println("Missing base folder");
+            return 1;
+        }
+        if (planFile != null && executePlanFile != null) {
+            System.err.println("--plan and --execute can't be used together");
+            return 1;
+        }
+        if (daemon && (planFile != null || executePlanFile != null)) {
+            System.err.println("--daemon can't be used with --plan or --execute");
+            return 1;
+        }
+        List<SyncProfile> profiles = null;
+        if (profilesFile != null) {
+            if (baseFolder != null || daemon || planFile != null || executePlanFile != null || albumId != null) {
+                System.err.println("--profiles replaces the base folder and can't be used with --daemon, --plan, --execute or --album-id");
+                return 1;
+            }
+            if (albumsCache != null || syncStateFile != null || libraryIndexFile != null || runReportFile != null) {
+                System.err.println("--profiles takes the albums cache, sync state, library index and run report of each account from its profile");
+                return 1;
+            }
+            if (folderSnapshotFile != null || shardSpec != null || leaseDir != null) {
+                System.err.println("--profiles can't be used with --folder-snapshot, --shard or --lease-dir");
+                return 1;
+            }
+            try {
+                profiles = SyncProfile.load(Paths.get(profilesFile));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Invalid --profiles: " + e.getMessage());
+                return 1;
+            }
+            if (progressMode == SyncStatusWatcher.Mode.AUTO) {
+                // Console bars of concurrent albums would overwrite each other
+                progressMode = SyncStatusWatcher.Mode.JSON;
+            }
+        }
+        if (shardSpec != null) {
+            try {
+                shard = Shard.parse(shardSpec);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return 1;
+            }
+        }
+        if (uploadLimit != null || jmx) {
+            try {
+                bandwidthLimiter = new BandwidthLimiter(
+                        uploadLimit != null ? BandwidthSchedule.parse(uploadLimit) : BandwidthSchedule.UNLIMITED);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid --upload-limit: " + e.getMessage());
+                return 1;
+            }
+        }
+        foldersToProcess.removeIf(String::isEmpty);
+        if (executePlanFile != null && !foldersToProcess.isEmpty()) {
+            System.err.println("--execute uploads the folders of the plan, folders to process can't be given");
+            return 1;
+        }
+        if (foldersToProcess.isEmpty() && baseFolder != null) {
             foldersToProcess.add(baseFolder);
         }
         for (String processFolder : foldersToProcess) {
@@ -72,85 +279,435 @@ public class GooglePhotosSync implements Callable<Integer> {
             }
         }
 
-        try {
-            run(baseFolder, foldersToProcess, skipLoad, albumId);
+        try (MetricsExporter metricsExporter = new MetricsExporter(metrics)) {
+            if (jmx) {
+                metricsExporter.registerJmx();
+            }
+            if (bandwidthLimiter != null) {
+                // Registered even without --jmx, so a configured limit can be changed without restarting
+                bandwidthLimiter.registerJmx();
+                metrics.gauge("googlephotos_upload_limit_bytes_per_second",
+                        "Current upload bandwidth limit, 0 when unlimited", bandwidthLimiter::getCurrentBytesPerSecond);
+            }
+            if (metricsFile != null) {
+                metricsExporter.startTextfile(Paths.get(metricsFile), metricsInterval);
+            }
+            if (runReportFile != null) {
+                runReport = new RunReport(new File(runReportFile));
+            }
+            if (leaseDir == null && shard != null && baseFolder != null) {
+                leaseDir = Paths.get(baseFolder, ".googlephotos-leases").toString();
+            }
+            if (syncStateFile != null) {
+                syncState = new SyncState(Paths.get(syncStateFile));
+            }
+            if (folderSnapshotFile != null) {
+                folderSnapshot = new FolderSnapshot(Paths.get(folderSnapshotFile));
+            }
+            if (leaseDir != null) {
+                albumLeases = new AlbumLeases(Paths.get(leaseDir), AlbumLeases.DEFAULT_TTL);
+                logger.info("Worker {} keeping album leases in {}", albumLeases.getOwner(), leaseDir);
+            }
+            if (profiles != null) {
+                runProfiles(profiles);
+            } else {
+                run(baseFolder, foldersToProcess, skipLoad, albumId);
+            }
+            logStartupCosts(callStart);
             return 0;
         } catch (Exception e) {
             logger.error("Error running GooglePhotosSync", e);
             return 1;
+        } finally {
+            closeState();
+        }
+    }
+
+    /**
+     * Releases the leases and saves the sync state, folder snapshot and run report. Only the
+     * first call does it, from call() or from the shutdown hook of the daemon.
+     */
+    private synchronized void closeState() {
+        if (albumLeases != null) {
+            albumLeases.close();
+            albumLeases = null;
+        }
+        if (syncState != null) {
+            try {
+                syncState.close();
+            } catch (IOException e) {
+                logger.error("Error closing sync state", e);
+            }
+            syncState = null;
+        }
+        if (folderSnapshot != null) {
+            try {
+                folderSnapshot.close();
+            } catch (IOException e) {
+                logger.error("Error saving folder snapshot", e);
+            }
+            folderSnapshot = null;
+        }
+        if (runReport != null) {
+            try {
+                runReport.close();
+            } catch (IOException e) {
+                logger.error("Error closing run report", e);
+            }
+            runReport = null;
         }
     }
 
     public void run(String baseFolder, List<String> foldersToProcess, boolean skipLoad, String albumId)
-            throws GooglePhotosServiceException {
+            throws GooglePhotosServiceException, IOException {
         URL credentialsURL = getClass().getClassLoader().getResource(CREDENTIALS_JSON);
 
-        GooglePhotosAPI googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
-        GooglePhotoAlbumManager googlePhotosAlbums = createAlbumManager(googlePhotoService, skipLoad, albumId);
+        TransportSettings transportSettings = getTransportSettings();
+        // Credentials and the gRPC transport are only set up if some folder needs the API
+        LazyGooglePhotosAPI lazyGooglePhotosAPI = new LazyGooglePhotosAPI(() -> {
+            GooglePhotosAPIV1LibraryImpl googlePhotosLibrary = new GooglePhotosAPIV1LibraryImpl(credentialsURL,
+                    transportSettings);
+            googlePhotosLibrary.setBandwidthLimiter(bandwidthLimiter);
+            return googlePhotosLibrary;
+        });
+        lazyGooglePhotosAPIs.add(lazyGooglePhotosAPI);
+        GooglePhotosAPI googlePhotoService = new InstrumentedGooglePhotosAPI(lazyGooglePhotosAPI, metrics);
+        GooglePhotoAlbumManager googlePhotosAlbums = createAlbumManager(googlePhotoService, skipLoad, albumId,
+                albumsCache, libraryIndexFile, runReport);
+
+        if (executePlanFile != null) {
+            Path plan = Paths.get(executePlanFile);
+            SyncPlanner planner = new SyncPlanner(googlePhotosAlbums);
+            SyncPlanner.SyncPlan syncPlan = SyncPlanner.read(plan);
+            retryWithNewCredentials(googlePhotoService, executePlanFile,
+                    () -> planner.execute(syncPlan, SyncPlanner.progressFile(plan)));
+            return;
+        }
+        if (planFile != null) {
+            SyncPlanner planner = new SyncPlanner(googlePhotosAlbums);
+            planner.setThreads(scanThreads);
+            planner.setUploadBytesPerSecond(planUploadMBps * 1_000_000);
+            planner.setShard(shard);
+            retryWithNewCredentials(googlePhotoService, baseFolder, () -> {
+                SyncPlanner.SyncPlan syncPlan = planner.plan(baseFolder, foldersToProcess);
+                SyncPlanner.write(syncPlan, Paths.get(planFile));
+                System.out.printf("Plan written to %s: %d albums (%d to create), %d files, %.1f MB, about %s%n",
+                        planFile, syncPlan.albums().size(), syncPlan.albumsToCreate(), syncPlan.filesToUpload(),
+                        syncPlan.bytesToUpload() / 1e6, Duration.ofSeconds(syncPlan.estimatedSeconds()));
+            });
+            return;
+        }
+        if (daemon) {
+            runDaemon(googlePhotoService, googlePhotosAlbums, baseFolder);
+            return;
+        }
 
         for (String folderToProcess : foldersToProcess) {
             File folderFile = new File(folderToProcess);
             if (!folderFile.exists()) {
                 continue;
             }
-            int retries = 0;
-            while (retries < 2) {
+            retryWithNewCredentials(googlePhotoService, folderToProcess,
+                    () -> uploadFolders(googlePhotosAlbums, baseFolder, folderFile, syncState));
+        }
+
+    }
+
+    private void runDaemon(GooglePhotosAPI googlePhotoService, GooglePhotoAlbumManager googlePhotosAlbums,
+            String baseFolder) throws IOException {
+        // The album manager, and the albums it loaded, are reused by every job
+        SyncDaemon syncDaemon = new SyncDaemon(daemonPort, baseFolder, (folders, jobAlbumId) -> {
+            Album jobAlbum = null;
+            if (jobAlbumId != null) {
+                jobAlbum = googlePhotoService.getAlbum(jobAlbumId);
+                if (jobAlbum == null) {
+                    throw new IllegalArgumentException("Album not found: " + jobAlbumId);
+                }
+            }
+            List<String> skipped = new ArrayList<>();
+            for (String folder : folders) {
+                File folderFile = new File(folder);
+                Album album = jobAlbum;
+                boolean done = album != null
+                        ? retryWithNewCredentials(googlePhotoService, folder,
+                                () -> uploadFoldersToAlbum(googlePhotosAlbums, baseFolder, folderFile, album))
+                        : retryWithNewCredentials(googlePhotoService, folder,
+                                () -> uploadFolders(googlePhotosAlbums, baseFolder, folderFile, syncState));
+                if (!done) {
+                    skipped.add(folder);
+                }
+            }
+            if (!skipped.isEmpty()) {
+                throw new IOException("Permission denied after refreshing credentials: " + skipped);
+            }
+        });
+        metrics.gauge("googlephotos_daemon_queued_jobs", "Sync jobs waiting in the daemon queue",
+                syncDaemon::queuedJobs);
+        // call() doesn't get to close the state once the JVM is shutting down, the hook does it
+        // after the running job finished
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            syncDaemon.close();
+            closeState();
+        }, "sync-daemon-shutdown"));
+        syncDaemon.start();
+        try {
+            syncDaemon.awaitShutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            syncDaemon.close();
+        }
+    }
+
+    /**
+     * Syncs every profile at once, each with its own client, credentials and request rate limiter.
+     * Photos of all profiles are resized by one pool sized to the cores, so the profiles share the
+     * CPU instead of each starting a resizer per core.
+     */
+    private void runProfiles(List<SyncProfile> profiles) throws IOException {
+        URL credentialsURL = getClass().getClassLoader().getResource(CREDENTIALS_JSON);
+        TransportSettings transportSettings = getTransportSettings();
+        int resizeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService resizePool = Executors.newFixedThreadPool(resizeThreads);
+        ExecutorService profilePool = Executors.newFixedThreadPool(profiles.size());
+        logger.info("Syncing {} profiles, sharing {} resize threads", profiles.size(), resizeThreads);
+        try {
+            List<Future<?>> profileFutures = new ArrayList<>();
+            for (SyncProfile profile : profiles) {
+                profileFutures.add(profilePool.submit(() -> {
+                    syncProfile(profile, credentialsURL, transportSettings, resizePool);
+                    return null;
+                }));
+            }
+            int failed = 0;
+            for (int i = 0; i < profiles.size(); i++) {
                 try {
-                    uploadFoldersRecursively(googlePhotosAlbums, baseFolder, folderFile);
-                    break;
-                } catch (PermissionDeniedToLoadAlbumsException e) {
-                    logger.error("Permission denied. New authentication required");
-                    googlePhotoService.logout();
-                    googlePhotoService = new GooglePhotosAPIV1LibraryImpl(credentialsURL);
-                    googlePhotosAlbums = createAlbumManager(googlePhotoService, skipLoad, albumId);
-                    retries++;
-                    if (retries >= 2) {
-                        logger.error("Failed to process folder {} after multiple retries. Skipping.", folderToProcess);
-                    }
+                    profileFutures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Error syncing profile {}", profiles.get(i).name(), e.getCause());
+                    failed++;
                 }
             }
+            if (failed > 0) {
+                throw new IOException(failed + " of " + profiles.size() + " profiles failed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing profiles", e);
+        } finally {
+            profilePool.shutdownNow();
+            resizePool.shutdownNow();
         }
+    }
 
+    private void syncProfile(SyncProfile profile, URL credentialsURL, TransportSettings transportSettings,
+            ExecutorService resizePool) throws GooglePhotosServiceException, IOException {
+        logger.info("Profile {}: syncing {}", profile.name(), profile.foldersToProcess());
+        RequestRateLimiter rateLimiter = profile.requestsPerSecond() > 0
+                ? new RequestRateLimiter(profile.requestsPerSecond())
+                : RequestRateLimiter.UNLIMITED;
+        LazyGooglePhotosAPI profileAPI = new LazyGooglePhotosAPI(() -> {
+            GooglePhotosAPIV1LibraryImpl googlePhotosLibrary = new GooglePhotosAPIV1LibraryImpl(credentialsURL,
+                    transportSettings, new File(profile.credentialsDir()));
+            googlePhotosLibrary.setRateLimiter(rateLimiter);
+            googlePhotosLibrary.setBandwidthLimiter(bandwidthLimiter);
+            return googlePhotosLibrary;
+        });
+        lazyGooglePhotosAPIs.add(profileAPI);
+        GooglePhotosAPI googlePhotoService = new InstrumentedGooglePhotosAPI(profileAPI, metrics);
+        try (SyncState profileState = profile.syncState() != null ? new SyncState(Paths.get(profile.syncState()))
+                : null;
+                RunReport profileReport = profile.runReport() != null ? new RunReport(new File(profile.runReport()))
+                        : null) {
+            GooglePhotoAlbumManager googlePhotosAlbums = createAlbumManager(googlePhotoService, skipLoad, null,
+                    profile.albumsCache(), profile.libraryIndex(), profileReport);
+            googlePhotosAlbums.setResizeExecutor(resizePool);
+            for (String folderToProcess : profile.foldersToProcess()) {
+                File folderFile = new File(folderToProcess);
+                if (!folderFile.exists()) {
+                    continue;
+                }
+                retryWithNewCredentials(googlePhotoService, folderToProcess,
+                        () -> uploadFolders(googlePhotosAlbums, profile.baseFolder(), folderFile, profileState));
+            }
+        }
+        logger.info("Profile {}: done", profile.name());
+    }
+
+    @FunctionalInterface
+    private interface SyncStep {
+        void run() throws PermissionDeniedToLoadAlbumsException, IOException;
+    }
+
+    /**
+     * Runs the step, renewing the credentials when permission is denied. Returns false when it
+     * was skipped after failing again with new credentials.
+     */
+    private boolean retryWithNewCredentials(GooglePhotosAPI googlePhotoService, String target, SyncStep step)
+            throws GooglePhotosServiceException, IOException {
+        int retries = 0;
+        while (retries < 2) {
+            try {
+                step.run();
+                return true;
+            } catch (PermissionDeniedToLoadAlbumsException e) {
+                // Albums already loaded and medias already saved are kept, only credentials are renewed
+                logger.error("Permission denied. Refreshing credentials");
+                googlePhotoService.reauthenticate();
+                retries++;
+                if (retries >= 2) {
+                    logger.error("Failed to process {} after multiple retries. Skipping.", target);
+                }
+            }
+        }
+        return false;
+    }
+
+    private TransportSettings getTransportSettings() {
+        return new TransportSettings(
+                channelPoolSize,
+                keepAliveSeconds > 0 ? Duration.ofSeconds(keepAliveSeconds) : null,
+                keepAliveTimeoutSeconds > 0 ? Duration.ofSeconds(keepAliveTimeoutSeconds) : null,
+                maxInboundMessageSize,
+                executorThreads,
+                maxUploadConnections);
     }
 
     private GooglePhotoAlbumManager createAlbumManager(GooglePhotosAPI googlePhotoService, boolean skipLoad,
-            String albumId) {
+            String albumId, String albumsCache, String libraryIndexFile, RunReport runReport) throws IOException {
         GooglePhotoAlbumManager googlePhotosAlbums = new GooglePhotoAlbumManager(googlePhotoService);
         googlePhotosAlbums.setSkipAlbumLoad(skipLoad);
+        googlePhotosAlbums.setNumUploaders(uploaders);
+        googlePhotosAlbums.setNumVideoUploaders(videoUploaders);
+        googlePhotosAlbums.setVideoChunkSize(videoChunkSize);
+        googlePhotosAlbums.setSchedulingPolicy(schedulingPolicy);
+        googlePhotosAlbums.setMetrics(metrics);
+        googlePhotosAlbums.setProgressMode(progressMode);
+        googlePhotosAlbums.setRunReport(runReport);
         if (albumId != null) {
             googlePhotosAlbums.setAlbumId(albumId);
         }
         if (albumsCache != null) {
             googlePhotosAlbums.setAlbumsCache(new File(albumsCache));
         }
+        if (libraryIndexFile != null) {
+            googlePhotosAlbums.setRemoteLibraryIndex(RemoteLibraryIndex.load(Paths.get(libraryIndexFile)));
+        }
         return googlePhotosAlbums;
     }
 
-    private void uploadFoldersRecursively(GooglePhotoAlbumManager googlePhotoAlbumManager, String baseFolder, File path)
-            throws PermissionDeniedToLoadAlbumsException {
-        List<File> files = new ArrayList<>();
-        List<File> dirs = new ArrayList<>();
-        for (File file : Objects.requireNonNull(path.listFiles())) {
-            String fileName = file.getName();
-            if (fileName.startsWith("."))
-                continue;
-            if (file.isDirectory()) {
-                dirs.add(file);
-            } else if (ALLOWED_FILES_PATTERN.matcher(fileName).find()) {
-                files.add(file);
+    private void uploadFolders(GooglePhotoAlbumManager googlePhotoAlbumManager, String baseFolder, File path,
+            SyncState syncState) throws PermissionDeniedToLoadAlbumsException, IOException {
+        long scanStart = System.currentTimeMillis();
+        List<FolderScanner.Folder> folders = folderSnapshot != null
+                ? folderSnapshot.scan(baseFolder, path, scanThreads)
+                : new FolderScanner(baseFolder, scanThreads).scan(path);
+        if (shard != null) {
+            folders = folders.stream().filter(folder -> shard.owns(folder.albumName())).toList();
+            logger.info("Shard {}: {} folders to sync", shard, folders.size());
+        }
+        if (syncState != null) {
+            int scanned = folders.size();
+            List<FolderScanner.Folder> changed = new ArrayList<>();
+            for (FolderScanner.Folder folder : folders) {
+                if (!syncState.isUpToDate(folder.albumName(), SyncState.fingerprint(folder.files()))) {
+                    changed.add(folder);
+                } else if (folderSnapshot != null) {
+                    folderSnapshot.markSynced(folder);
+                }
             }
+            folders = changed;
+            logger.info("{} of {} folders unchanged since their last sync", scanned - folders.size(), scanned);
         }
-        if (!files.isEmpty()) {
-            String albumName = AlbumUtils.file2AlbumName(baseFolder, path);
-            Album album = googlePhotoAlbumManager.getAlbum(albumName);
-            if (album == null) {
-                album = googlePhotoAlbumManager.createAlbum(albumName);
+        scanMs.addAndGet(System.currentTimeMillis() - scanStart);
+        if (albumLeases == null) {
+            for (FolderScanner.Folder folder : folders) {
+                uploadFolder(googlePhotoAlbumManager, folder, syncState);
             }
-            googlePhotoAlbumManager.batchUploadFiles(album, files);
+            return;
         }
-        for (File dir : dirs) {
-            uploadFoldersRecursively(googlePhotoAlbumManager, baseFolder, dir);
+        // Albums leased by other workers are retried after the free ones
+        List<FolderScanner.Folder> pending = folders;
+        while (!pending.isEmpty()) {
+            List<FolderScanner.Folder> busy = new ArrayList<>();
+            for (FolderScanner.Folder folder : pending) {
+                try (AlbumLeases.Lease lease = albumLeases.tryAcquire(folder.albumName())) {
+                    if (lease == null) {
+                        busy.add(folder);
+                        continue;
+                    }
+                    uploadFolder(googlePhotoAlbumManager, folder, syncState);
+                    if (!lease.isHeld()) {
+                        logger.warn("Lease of album {} expired during its upload, another worker may have written to it",
+                                folder.albumName());
+                    }
+                }
+            }
+            if (!busy.isEmpty()) {
+                logger.info("Waiting for {} albums leased by other workers", busy.size());
+                try {
+                    Thread.sleep(LEASE_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for album leases", e);
+                }
+            }
+            pending = busy;
         }
     }
 
+    private void uploadFoldersToAlbum(GooglePhotoAlbumManager googlePhotoAlbumManager, String baseFolder, File path,
+            Album album) throws PermissionDeniedToLoadAlbumsException {
+        for (FolderScanner.Folder folder : new FolderScanner(baseFolder, scanThreads).scan(path)) {
+            googlePhotoAlbumManager.batchUploadFiles(album, folder.files());
+        }
+    }
+
+    private void uploadFolder(GooglePhotoAlbumManager googlePhotoAlbumManager, FolderScanner.Folder folder,
+            SyncState syncState) throws PermissionDeniedToLoadAlbumsException, IOException {
+        // Taken before uploading, a file changed meanwhile is seen on the next run
+        String fingerprint = syncState != null ? SyncState.fingerprint(folder.files()) : null;
+        Album album = googlePhotoAlbumManager.getAlbum(folder.albumName());
+        if (album == null) {
+            album = googlePhotoAlbumManager.createAlbum(folder.albumName());
+        }
+        boolean uploaded = googlePhotoAlbumManager.batchUploadFiles(album, folder.files());
+        if (syncState == null && folderSnapshot == null) {
+            return;
+        }
+        // Items the API reported as not saved were checked against the album already
+        if (uploaded) {
+            if (fingerprint != null) {
+                syncState.markSynced(folder.albumName(), fingerprint);
+            }
+            if (folderSnapshot != null) {
+                folderSnapshot.markSynced(folder);
+            }
+        }
+    }
+
+    private void logStartupCosts(long callStart) {
+        long jvmStartupMs = ProcessHandle.current().info().startInstant()
+                .map(start -> callStart - start.toEpochMilli())
+                .orElse(-1L);
+        int loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        // Summed over the clients created, one per profile in a --profiles run
+        long[] initializationMs = lazyGooglePhotosAPIs.stream()
+                .mapToLong(LazyGooglePhotosAPI::getInitializationMs)
+                .filter(ms -> ms >= 0)
+                .toArray();
+        long clientMs = LongStream.of(initializationMs).sum();
+        int clients = initializationMs.length;
+        logger.info("Run took {} ms: JVM startup {} ms, {} classes loaded, folder scan {} ms, Google Photos client {}",
+                System.currentTimeMillis() - callStart, jvmStartupMs, loadedClasses, scanMs.get(),
+                clients == 0 ? "not needed" : clients == 1 ? clientMs + " ms" : clientMs + " ms for " + clients);
+        metrics.gauge("googlephotos_startup_seconds", "Time spent starting up, by phase",
+                () -> jvmStartupMs / 1000.0, "phase", "jvm");
+        metrics.gauge("googlephotos_startup_seconds", "Time spent starting up, by phase",
+                () -> scanMs.get() / 1000.0, "phase", "scan");
+        metrics.gauge("googlephotos_startup_seconds", "Time spent starting up, by phase",
+                () -> clientMs / 1000.0, "phase", "client");
+        metrics.gauge("googlephotos_loaded_classes", "Classes loaded by the JVM", () -> loadedClasses);
+    }
+
 }
@@ -0,0 +1,202 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.werneckpaiva.googlephotosbatch.utils.ImageUtils;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Orders medias through the resize and upload queues by estimated cost.
+ * A media costs the seconds to resize it (pixels decoded, for JPEGs above the maximum dimension)
+ * plus the seconds to upload it (bytes, shrunk by the resize). Once resized, medias wait for an
+ * uploader ordered by their actual size.
+ * With several uploaders, the first one takes from the other end of the upload queue, so large
+ * and small medias are uploaded side by side: shortest-first doesn't leave large videos for the
+ * end, and largest-first doesn't hold back every photo behind them.
+ */
+public class MediaScheduler {
+
+    public enum Policy {
+        /** Filename order */
+        FILENAME,
+        /** Cheapest medias first, most medias in the album early */
+        SHORTEST_FIRST,
+        /** Most expensive medias first, the least idle time at the end of an album */
+        LARGEST_FIRST
+    }
+
+    static final double RESIZE_PIXELS_PER_SECOND = 50_000_000;
+
+    static final double UPLOAD_BYTES_PER_SECOND = 2_000_000;
+
+    private final Policy policy;
+
+    private final int maxDimension;
+
+    public MediaScheduler(Policy policy, int maxDimension) {
+        this.policy = policy;
+        this.maxDimension = maxDimension;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Estimated seconds to resize and upload a media. JPEG dimensions are read from the header.
+     */
+    public double estimateCost(File file) {
+        double bytes = file.length();
+        double resizeSeconds = 0;
+        if (ImageUtils.isJPEG(file)) {
+            Dimension dimension = ImageUtils.readDimensions(file);
+            int largest = dimension == null ? 0 : Math.max(dimension.width, dimension.height);
+            if (largest > maxDimension) {
+                resizeSeconds = (double) dimension.width * dimension.height / RESIZE_PIXELS_PER_SECOND;
+                double scale = (double) maxDimension / largest;
+                bytes *= scale * scale;
+            }
+        }
+        return resizeSeconds + bytes / UPLOAD_BYTES_PER_SECOND;
+    }
+
+    public CostQueue resizeQueue(List<MediaWithName> medias) {
+        CostQueue queue = new CostQueue(media -> 0, policy == Policy.LARGEST_FIRST);
+        for (MediaWithName media : medias) {
+            queue.offer(media, policy == Policy.FILENAME ? 0 : estimateCost(media.file()));
+        }
+        return queue;
+    }
+
+    public CostQueue uploadQueue() {
+        return policy == Policy.FILENAME
+                ? new CostQueue(media -> 0, false)
+                : new CostQueue(media -> media.file().length(), policy == Policy.LARGEST_FIRST);
+    }
+
+    /**
+     * Whether the uploader takes from the other end of the upload queue.
+     */
+    public boolean takesOppositeEnd(int uploaderIndex, int numUploaders) {
+        return policy != Policy.FILENAME && numUploaders > 1 && uploaderIndex == 0;
+    }
+
+    /**
+     * Blocking queue of medias ordered by cost, then by arrival. poll() and take() return the next
+     * media of the policy; takeOpposite() the last one.
+     */
+    public static class CostQueue extends AbstractQueue<MediaWithName> {
+
+        private record Entry(MediaWithName media, double cost, long sequence) {
+        }
+
+        private final ToDoubleFunction<MediaWithName> costFunction;
+
+        private final TreeSet<Entry> entries;
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notEmpty = lock.newCondition();
+
+        CostQueue(ToDoubleFunction<MediaWithName> costFunction, boolean largestFirst) {
+            this.costFunction = costFunction;
+            Comparator<Entry> byCost = Comparator.comparingDouble(Entry::cost);
+            this.entries = new TreeSet<>((largestFirst ? byCost.reversed() : byCost)
+                    .thenComparingLong(Entry::sequence));
+        }
+
+        @Override
+        public boolean offer(MediaWithName media) {
+            return offer(media, costFunction.applyAsDouble(media));
+        }
+
+        public boolean offer(MediaWithName media, double cost) {
+            lock.lock();
+            try {
+                entries.add(new Entry(media, cost, sequence.getAndIncrement()));
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public MediaWithName poll() {
+            lock.lock();
+            try {
+                Entry entry = entries.pollFirst();
+                return entry == null ? null : entry.media();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public MediaWithName peek() {
+            lock.lock();
+            try {
+                return entries.isEmpty() ? null : entries.first().media();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public MediaWithName take() throws InterruptedException {
+            return take(false);
+        }
+
+        public MediaWithName takeOpposite() throws InterruptedException {
+            return take(true);
+        }
+
+        private MediaWithName take(boolean opposite) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (entries.isEmpty()) {
+                    notEmpty.await();
+                }
+                return (opposite ? entries.pollLast() : entries.pollFirst()).media();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Iterates over a snapshot, in queue order.
+         */
+        @Override
+        public Iterator<MediaWithName> iterator() {
+            List<MediaWithName> snapshot = new ArrayList<>();
+            lock.lock();
+            try {
+                entries.forEach(entry -> snapshot.add(entry.media()));
+            } finally {
+                lock.unlock();
+            }
+            return snapshot.iterator();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.werneckpaiva.googlephotosbatch.orphan.DumpRecords;
+import com.werneckpaiva.googlephotosbatch.orphan.SegmentedDump;
+import com.werneckpaiva.googlephotosbatch.utils.ImageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the remote library by filename, loaded from a library dump of the orphan finder.
+ * A local file matches a remote item with its filename (as uploaded by this tool, or the original
+ * name) and the same capture time: the EXIF DateTimeOriginal, local time without zone, must be
+ * the remote UTC creation time shifted by a whole time zone offset. Files without a capture time
+ * never match, a filename alone is too common to identify a photo.
+ */
+public class RemoteLibraryIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteLibraryIndex.class);
+
+    private static final long MAX_ZONE_OFFSET_SECONDS = Duration.ofHours(14).toSeconds();
+
+    private static final long ZONE_OFFSET_STEP_SECONDS = Duration.ofMinutes(15).toSeconds();
+
+    private record Candidate(String id, Instant creationTime) {
+    }
+
+    private final Map<String, List<Candidate>> byFilename = new HashMap<>();
+
+    private int size = 0;
+
+    public static RemoteLibraryIndex load(Path libraryMediasFile) throws IOException {
+        RemoteLibraryIndex index = new RemoteLibraryIndex();
+        DumpRecords.read(libraryMediasFile, () -> SegmentedDump.openRead(libraryMediasFile), parser -> {
+            String id = null, filename = null, creationTime = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                    parser.skipChildren();
+                } else if ("id".equals(field)) {
+                    id = parser.getText();
+                } else if ("filename".equals(field)) {
+                    filename = parser.getText();
+                } else if ("creationTime".equals(field)) {
+                    creationTime = parser.getText();
+                }
+            }
+            index.add(id, filename, creationTime);
+        });
+        logger.info("Remote library index: {} items with a capture time", index.size());
+        return index;
+    }
+
+    void add(String id, String filename, String creationTime) {
+        if (id == null || filename == null || creationTime == null) {
+            return;
+        }
+        try {
+            Instant time = Instant.parse(creationTime);
+            byFilename.computeIfAbsent(filename, name -> new ArrayList<>()).add(new Candidate(id, time));
+            size++;
+        } catch (DateTimeParseException e) {
+            logger.debug("Ignoring item {} with creation time {}", id, creationTime);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * ID of a remote item holding the given local file, null if there is none.
+     */
+    public String find(File file, String mediaName) {
+        if (!byFilename.containsKey(mediaName) && !byFilename.containsKey(file.getName())) {
+            return null;
+        }
+        LocalDateTime captureTime = ImageUtils.readCaptureTime(file);
+        return captureTime == null ? null : find(List.of(mediaName, file.getName()), captureTime);
+    }
+
+    String find(List<String> filenames, LocalDateTime captureTime) {
+        long localSeconds = captureTime.toEpochSecond(ZoneOffset.UTC);
+        for (String filename : filenames) {
+            for (Candidate candidate : byFilename.getOrDefault(filename, List.of())) {
+                long offset = localSeconds - candidate.creationTime().getEpochSecond();
+                if (Math.abs(offset) <= MAX_ZONE_OFFSET_SECONDS && offset % ZONE_OFFSET_STEP_SECONDS == 0) {
+                    return candidate.id();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,222 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.MediaTaskLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional JSONL report of a sync run.
+ * One record per media with the time spent queued, resizing, uploading and committing,
+ * followed by one summary record per album, with the error of albums whose upload failed.
+ * Medias are told apart by their source file, resized copies are traced back to it.
+ */
+public class RunReport implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunReport.class);
+
+    public record MediaRecord(String type, String album, String media, String file, String status,
+            long sourceBytes, long uploadBytes, long queuedMs, long resizeMs, long uploadMs, long commitMs) {
+    }
+
+    public record AlbumRecord(String type, String album, int medias, int failed, long sourceBytes,
+            long uploadBytes, long listingMs, long queuedMs, long resizeMs, long uploadMs, long commitMs,
+            long wallMs, String error) {
+    }
+
+    private static class MediaTiming {
+        final String media;
+        final String file;
+        final long sourceBytes;
+        final long enqueued;
+        long uploadBytes;
+        long resizeStarted;
+        long resizeEnded;
+        long uploadStarted;
+        long uploadEnded;
+        String status = "PENDING";
+
+        MediaTiming(String media, String file, long sourceBytes, long enqueued) {
+            this.media = media;
+            this.file = file;
+            this.sourceBytes = sourceBytes;
+            this.enqueued = enqueued;
+        }
+    }
+
+    private static class AlbumTiming {
+        final long started;
+        final long listingMs;
+        // By source file path
+        final Map<String, MediaTiming> medias = new HashMap<>();
+        // Source file path by resized file path, and by resizer while it runs
+        final Map<String, String> resizedFiles = new HashMap<>();
+        final Map<Integer, String> resizing = new HashMap<>();
+        long saveStarted;
+
+        AlbumTiming(long started, long listingMs) {
+            this.started = started;
+            this.listingMs = listingMs;
+        }
+    }
+
+    // Timestamps are relative to the report creation, so 0 can mean "not happened"
+    private final long origin = System.nanoTime();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final BufferedWriter writer;
+
+    private final Map<String, AlbumTiming> albums = new HashMap<>();
+
+    public RunReport(File reportFile) throws IOException {
+        this.writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    public synchronized void startAlbum(String albumName, List<MediaWithName> mediasToUpload, long listingMs) {
+        AlbumTiming albumTiming = new AlbumTiming(now(), listingMs);
+        for (MediaWithName media : mediasToUpload) {
+            albumTiming.medias.put(media.file().getPath(), new MediaTiming(media.name(), media.file().getPath(),
+                    media.file().length(), albumTiming.started));
+        }
+        albums.put(albumName, albumTiming);
+        if (mediasToUpload.isEmpty()) {
+            finishAlbum(albumName, albumTiming, 0, null);
+        }
+    }
+
+    /**
+     * Records an album whose upload stopped before its medias were saved.
+     */
+    public synchronized void failAlbum(String albumName, String error) {
+        AlbumTiming albumTiming = albums.get(albumName);
+        if (albumTiming != null) {
+            finishAlbum(albumName, albumTiming, 0, error);
+        }
+    }
+
+    public synchronized void onEvent(String albumName, MediaTaskLog log) {
+        AlbumTiming albumTiming = albums.get(albumName);
+        if (albumTiming == null) {
+            return;
+        }
+        long now = now();
+        String sourcePath = null;
+        if (log.media() != null) {
+            String path = log.media().file().getPath();
+            sourcePath = albumTiming.resizedFiles.getOrDefault(path, path);
+            if (log.status() == MediaTaskLog.Status.RESIZE_STARTED) {
+                albumTiming.resizing.put(log.workerIndex(), sourcePath);
+            } else if (log.status() == MediaTaskLog.Status.RESIZE_COMPLETED
+                    || log.status() == MediaTaskLog.Status.RESIZE_NOT_REQUIRED) {
+                String resizedFrom = albumTiming.resizing.remove(log.workerIndex());
+                if (resizedFrom != null) {
+                    albumTiming.resizedFiles.put(path, resizedFrom);
+                    sourcePath = resizedFrom;
+                }
+            }
+        }
+        MediaTiming timing = sourcePath != null ? albumTiming.medias.get(sourcePath) : null;
+        switch (log.status()) {
+            case RESIZE_STARTED -> {
+                if (timing != null) {
+                    timing.resizeStarted = now;
+                }
+            }
+            case RESIZE_COMPLETED, RESIZE_NOT_REQUIRED -> {
+                if (timing != null) {
+                    timing.resizeEnded = now;
+                    timing.uploadBytes = log.media().file().length();
+                }
+            }
+            case UPLOAD_STARTED -> {
+                if (timing != null) {
+                    if (timing.resizeEnded == 0) {
+                        // Videos go straight to their upload lane, all the waiting is for an uploader
+                        timing.resizeStarted = timing.enqueued;
+                        timing.resizeEnded = timing.enqueued;
+                        timing.uploadBytes = log.media().file().length();
+                    }
+                    timing.uploadStarted = now;
+                }
+            }
+            case UPLOAD_COMPLETED, UPLOAD_FAILED -> {
+                if (timing != null) {
+                    timing.uploadEnded = now;
+                    timing.status = log.status() == MediaTaskLog.Status.UPLOAD_COMPLETED ? "UPLOADED" : "FAILED";
+                }
+            }
+            case SAVE_STARTED -> albumTiming.saveStarted = now;
+            case SAVE_COMPLETED -> finishAlbum(albumName, albumTiming,
+                    albumTiming.saveStarted > 0 ? toMillis(now - albumTiming.saveStarted) : 0, null);
+            default -> {
+            }
+        }
+    }
+
+    private void finishAlbum(String albumName, AlbumTiming albumTiming, long commitMs, String error) {
+        albums.remove(albumName);
+        List<Object> records = new ArrayList<>();
+        int failed = 0;
+        long sourceBytes = 0, uploadBytes = 0, queuedMs = 0, resizeMs = 0, uploadMs = 0;
+        for (MediaTiming timing : albumTiming.medias.values()) {
+            // Time waiting for a resizer plus time waiting for an uploader
+            long mediaQueuedMs = elapsed(timing.enqueued, timing.resizeStarted)
+                    + elapsed(timing.resizeEnded, timing.uploadStarted);
+            long mediaResizeMs = elapsed(timing.resizeStarted, timing.resizeEnded);
+            long mediaUploadMs = elapsed(timing.uploadStarted, timing.uploadEnded);
+            boolean uploaded = "UPLOADED".equals(timing.status);
+            records.add(new MediaRecord("media", albumName, timing.media, timing.file, timing.status,
+                    timing.sourceBytes, timing.uploadBytes, mediaQueuedMs, mediaResizeMs, mediaUploadMs,
+                    uploaded ? commitMs : 0));
+            if (!uploaded) {
+                failed++;
+            }
+            sourceBytes += timing.sourceBytes;
+            uploadBytes += timing.uploadBytes;
+            queuedMs += mediaQueuedMs;
+            resizeMs += mediaResizeMs;
+            uploadMs += mediaUploadMs;
+        }
+        records.add(new AlbumRecord("album", albumName, albumTiming.medias.size(), failed, sourceBytes,
+                uploadBytes, albumTiming.listingMs, queuedMs, resizeMs, uploadMs, commitMs,
+                toMillis(now() - albumTiming.started), error));
+        try {
+            for (Object record : records) {
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Error writing run report", e);
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - origin + 1;
+    }
+
+    private static long elapsed(long from, long to) {
+        return from > 0 && to >= from ? toMillis(to - from) : 0;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
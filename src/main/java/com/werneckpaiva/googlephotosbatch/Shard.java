@@ -0,0 +1,43 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * One of N workers splitting a sync. Albums are assigned by a CRC32 of their name, so every
+ * worker agrees on the split without talking to the others, across hosts and runs.
+ */
+public record Shard(int index, int count) {
+
+    public Shard {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+    }
+
+    /**
+     * Parses "i/N", with i from 0 to N-1.
+     */
+    public static Shard parse(String shard) {
+        String[] parts = shard.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard must be i/N: " + shard);
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be i/N: " + shard);
+        }
+    }
+
+    public boolean owns(String albumName) {
+        CRC32 crc = new CRC32();
+        crc.update(albumName.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % count == index;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,319 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a sync process running and accepts jobs through an HTTP API on the loopback interface,
+ * so the client, its credentials and the albums stay loaded between syncs.
+ * POST /jobs {"folders": [...], "albumId": "...", "priority": 0} queues a job,
+ * GET /jobs and GET /jobs/{id} report their status, DELETE /jobs/{id} cancels a queued job.
+ * Jobs run one at a time, highest priority first, then in submission order; each job uploads
+ * with the full concurrency of the sync. Only the latest finished jobs are kept for GET.
+ * Closing stops accepting jobs and waits for the running one, queued jobs are dropped.
+ */
+public class SyncDaemon implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncDaemon.class);
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    public record JobRequest(List<String> folders, String albumId, Integer priority) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record JobStatus(String id, List<String> folders, String albumId, int priority, Status status,
+            String submittedAt, String startedAt, String finishedAt, String error) {
+    }
+
+    @FunctionalInterface
+    public interface JobRunner {
+        void run(List<String> folders, String albumId) throws Exception;
+    }
+
+    private static final class Job {
+        final String id;
+        final long sequence;
+        final JobRequest request;
+        final int priority;
+        final Instant submittedAt = Instant.now();
+        Status status = Status.QUEUED;
+        Instant startedAt;
+        Instant finishedAt;
+        String error;
+
+        Job(String id, long sequence, JobRequest request) {
+            this.id = id;
+            this.sequence = sequence;
+            this.request = request;
+            this.priority = request.priority() == null ? 0 : request.priority();
+        }
+
+        synchronized JobStatus status() {
+            return new JobStatus(id, request.folders(), request.albumId(), priority, status,
+                    submittedAt.toString(), startedAt == null ? null : startedAt.toString(),
+                    finishedAt == null ? null : finishedAt.toString(), error);
+        }
+    }
+
+    static final int MAX_FINISHED_JOBS = 100;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Wakes the worker up to stop, ahead of any queued job
+    private final Job stopJob = new Job("stop", 0, new JobRequest(List.of(), null, Integer.MAX_VALUE));
+
+    private final Path baseFolder;
+
+    private int maxFinishedJobs = MAX_FINISHED_JOBS;
+
+    private final JobRunner runner;
+
+    private final HttpServer server;
+
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>(16,
+            Comparator.comparingInt((Job job) -> -job.priority).thenComparingLong(job -> job.sequence));
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Thread worker;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    public SyncDaemon(int port, String baseFolder, JobRunner runner) throws IOException {
+        // Real path, so folders reaching out of it through links or ".." are told apart
+        Path basePath = Path.of(baseFolder).toAbsolutePath().normalize();
+        this.baseFolder = Files.exists(basePath) ? basePath.toRealPath() : basePath;
+        this.runner = runner;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/jobs", this::handle);
+        this.worker = new Thread(this::work, "sync-daemon-worker");
+    }
+
+    public void start() {
+        server.start();
+        worker.start();
+        logger.info("Sync daemon listening on http://{}:{}/jobs", server.getAddress().getHostString(), getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int queuedJobs() {
+        return queue.size();
+    }
+
+    void setMaxFinishedJobs(int maxFinishedJobs) {
+        this.maxFinishedJobs = maxFinishedJobs;
+    }
+
+    /**
+     * Blocks until the daemon is closed.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stops accepting jobs and returns once the running job, if any, finished.
+     */
+    @Override
+    public void close() {
+        if (closing.compareAndSet(false, true)) {
+            server.stop(0);
+            queue.add(stopJob);
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopped.countDown();
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == stopJob) {
+                return;
+            }
+            synchronized (job) {
+                if (job.status != Status.QUEUED) {
+                    continue;
+                }
+                job.status = Status.RUNNING;
+                job.startedAt = Instant.now();
+            }
+            logger.info("Running job {}: {}", job.id, job.request.folders());
+            Status status = Status.DONE;
+            String error = null;
+            try {
+                runner.run(job.request.folders(), job.request.albumId());
+            } catch (Exception e) {
+                logger.error("Job {} failed", job.id, e);
+                status = Status.FAILED;
+                error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+            synchronized (job) {
+                job.status = status;
+                job.error = error;
+                job.finishedAt = Instant.now();
+            }
+            pruneFinishedJobs();
+        }
+    }
+
+    /**
+     * Forgets the oldest finished jobs beyond the limit.
+     */
+    private void pruneFinishedJobs() {
+        synchronized (jobs) {
+            List<Job> finished = new ArrayList<>();
+            for (Job job : jobs.values()) {
+                synchronized (job) {
+                    if (job.finishedAt != null) {
+                        finished.add(job);
+                    }
+                }
+            }
+            for (int i = 0; i < finished.size() - maxFinishedJobs; i++) {
+                jobs.remove(finished.get(i).id);
+            }
+        }
+    }
+
+    JobStatus submit(JobRequest request) {
+        if (request.folders() == null || request.folders().isEmpty()) {
+            throw new IllegalArgumentException("No folders to sync");
+        }
+        if (closing.get()) {
+            throw new IllegalStateException("Shutting down");
+        }
+        List<String> folders = new ArrayList<>();
+        for (String folder : request.folders()) {
+            Path folderPath;
+            try {
+                folderPath = Path.of(folder).toAbsolutePath().normalize();
+                if (!folderPath.toRealPath().startsWith(baseFolder)) {
+                    throw new IllegalArgumentException("Folder must be included in the base folder: " + folder);
+                }
+            } catch (IOException | InvalidPathException e) {
+                throw new IllegalArgumentException("Not a folder: " + folder);
+            }
+            if (!Files.isDirectory(folderPath)) {
+                throw new IllegalArgumentException("Not a folder: " + folder);
+            }
+            folders.add(folderPath.toString());
+        }
+        long jobSequence = sequence.incrementAndGet();
+        Job job = new Job("job-" + jobSequence, jobSequence,
+                new JobRequest(folders, request.albumId(), request.priority()));
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+        }
+        queue.add(job);
+        logger.info("Queued job {} with priority {}: {}", job.id, job.priority, folders);
+        pruneFinishedJobs();
+        return job.status();
+    }
+
+    private Job findJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().replaceAll("/+$", "");
+            String jobId = path.startsWith("/jobs/") ? path.substring("/jobs/".length()) : null;
+            if (path.equals("/jobs") && method.equals("POST")) {
+                JobRequest request;
+                try (InputStream body = exchange.getRequestBody()) {
+                    request = objectMapper.readValue(body, JobRequest.class);
+                } catch (IOException e) {
+                    respond(exchange, 400, Map.of("error", "Invalid job: " + e.getMessage()));
+                    return;
+                }
+                try {
+                    respond(exchange, 201, submit(request));
+                } catch (IllegalArgumentException e) {
+                    respond(exchange, 400, Map.of("error", e.getMessage()));
+                } catch (IllegalStateException e) {
+                    respond(exchange, 503, Map.of("error", e.getMessage()));
+                }
+            } else if (path.equals("/jobs") && method.equals("GET")) {
+                List<JobStatus> statuses = new ArrayList<>();
+                synchronized (jobs) {
+                    jobs.values().forEach(job -> statuses.add(job.status()));
+                }
+                respond(exchange, 200, statuses);
+            } else if (jobId != null && (method.equals("GET") || method.equals("DELETE"))) {
+                Job job = findJob(jobId);
+                if (job == null) {
+                    respond(exchange, 404, Map.of("error", "Unknown job " + jobId));
+                    return;
+                }
+                if (method.equals("DELETE")) {
+                    synchronized (job) {
+                        if (job.status != Status.QUEUED) {
+                            respond(exchange, 409, Map.of("error", "Job " + jobId + " is " + job.status));
+                            return;
+                        }
+                        job.status = Status.CANCELLED;
+                        job.finishedAt = Instant.now();
+                    }
+                    queue.remove(job);
+                }
+                respond(exchange, 200, job.status());
+            } else {
+                respond(exchange, 404, Map.of("error", "No such endpoint: " + method + " " + path));
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
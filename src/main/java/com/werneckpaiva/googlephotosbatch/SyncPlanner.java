@@ -0,0 +1,205 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.werneckpaiva.googlephotosbatch.exception.PermissionDeniedToLoadAlbumsException;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a sync in two phases.
+ * plan() scans the folders, resolves albums (from the albums cache when set) and compares the
+ * existing albums with their folders in parallel. The plan lists the albums to create and the
+ * files to upload, with byte totals and an estimated upload time.
+ * execute() uploads a plan without scanning or listing albums again, and records each finished
+ * album in a progress file so that an interrupted execution resumes with the next album.
+ */
+public class SyncPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncPlanner.class);
+
+    public record AlbumPlan(String albumName, String albumId, boolean create, List<String> files, long bytes) {
+    }
+
+    public record SyncPlan(String baseFolder, String createdAt, int albumsToCreate, int filesToUpload,
+            long bytesToUpload, long estimatedSeconds, List<AlbumPlan> albums) {
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final GooglePhotoAlbumManager albumManager;
+
+    private int threads = 4;
+
+    private double uploadBytesPerSecond = 2_000_000;
+
+    private Shard shard = null;
+
+    public SyncPlanner(GooglePhotoAlbumManager albumManager) {
+        this.albumManager = albumManager;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Throughput the estimated time is based on.
+     */
+    public void setUploadBytesPerSecond(double uploadBytesPerSecond) {
+        this.uploadBytesPerSecond = uploadBytesPerSecond;
+    }
+
+    /**
+     * Plans only the albums of this shard, null for all.
+     */
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    public SyncPlan plan(String baseFolder, List<String> foldersToProcess)
+            throws PermissionDeniedToLoadAlbumsException {
+        List<FolderScanner.Folder> folders = new ArrayList<>();
+        for (String folderToProcess : foldersToProcess) {
+            File folderFile = new File(folderToProcess);
+            if (folderFile.exists()) {
+                folders.addAll(new FolderScanner(baseFolder, threads).scan(folderFile));
+            }
+        }
+        if (shard != null) {
+            folders.removeIf(folder -> !shard.owns(folder.albumName()));
+        }
+        logger.info("Found {} folders with medias", folders.size());
+
+        // Albums are resolved on this thread, the album manager loads them only once
+        List<Album> albums = new ArrayList<>();
+        for (FolderScanner.Folder folder : folders) {
+            albums.add(albumManager.getAlbum(folder.albumName()));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<MediaWithName>>> comparisons = new ArrayList<>();
+            for (int i = 0; i < folders.size(); i++) {
+                Album album = albums.get(i);
+                List<File> files = folders.get(i).files();
+                comparisons.add(album == null
+                        ? CompletableFuture.completedFuture(files.stream()
+                                .map(file -> new MediaWithName(AlbumUtils.file2MediaName(file), file))
+                                .toList())
+                        : pool.submit(() -> albumManager.getMediasToUpload(album, files)));
+            }
+
+            List<AlbumPlan> albumPlans = new ArrayList<>();
+            int albumsToCreate = 0;
+            int filesToUpload = 0;
+            long bytesToUpload = 0;
+            for (int i = 0; i < folders.size(); i++) {
+                Album album = albums.get(i);
+                List<MediaWithName> medias = comparisons.get(i).get();
+                if (medias.isEmpty()) {
+                    continue;
+                }
+                if (album != null && !album.isWriteable()) {
+                    logger.warn("Album {} is not writable, leaving out {} medias", album.title(), medias.size());
+                    continue;
+                }
+                long bytes = medias.stream().mapToLong(media -> media.file().length()).sum();
+                albumPlans.add(new AlbumPlan(folders.get(i).albumName(), album != null ? album.id() : null,
+                        album == null, medias.stream().map(media -> media.file().getAbsolutePath()).toList(), bytes));
+                albumsToCreate += album == null ? 1 : 0;
+                filesToUpload += medias.size();
+                bytesToUpload += bytes;
+            }
+            long estimatedSeconds = (long) Math.ceil(bytesToUpload / uploadBytesPerSecond);
+            return new SyncPlan(baseFolder, Instant.now().toString(), albumsToCreate, filesToUpload, bytesToUpload,
+                    estimatedSeconds, albumPlans);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while planning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PermissionDeniedToLoadAlbumsException permissionDenied) {
+                throw permissionDenied;
+            }
+            throw new RuntimeException("Error comparing albums", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static void write(SyncPlan plan, Path planFile) throws IOException {
+        objectMapper.writeValue(planFile.toFile(), plan);
+    }
+
+    public static SyncPlan read(Path planFile) throws IOException {
+        return objectMapper.readValue(planFile.toFile(), SyncPlan.class);
+    }
+
+    public static Path progressFile(Path planFile) {
+        return planFile.resolveSibling(planFile.getFileName() + ".done");
+    }
+
+    /**
+     * Creates the planned albums and uploads the planned files. Files deleted since the plan are
+     * left out. Albums finished by an earlier execution, as listed in the progress file, are skipped.
+     * An album is only listed there once all of its files were uploaded and saved.
+     */
+    public void execute(SyncPlan plan, Path progressFile) throws PermissionDeniedToLoadAlbumsException, IOException {
+        Set<String> finished = new HashSet<>();
+        if (Files.exists(progressFile)) {
+            finished.addAll(Files.readAllLines(progressFile, StandardCharsets.UTF_8));
+        }
+        int albumNumber = 0;
+        for (AlbumPlan albumPlan : plan.albums()) {
+            albumNumber++;
+            if (finished.contains(albumPlan.albumName())) {
+                continue;
+            }
+            logger.info("Executing album {} of {}: {}", albumNumber, plan.albums().size(), albumPlan.albumName());
+            Album album;
+            if (albumPlan.albumId() != null) {
+                album = new Album(albumPlan.albumName(), albumPlan.albumId(), true);
+            } else {
+                // An interrupted execution may have created it already
+                album = albumManager.getAlbum(albumPlan.albumName());
+                if (album == null) {
+                    album = albumManager.createAlbum(albumPlan.albumName());
+                }
+            }
+            List<MediaWithName> medias = new ArrayList<>();
+            for (String path : albumPlan.files()) {
+                File file = new File(path);
+                if (file.exists()) {
+                    medias.add(new MediaWithName(AlbumUtils.file2MediaName(file), file));
+                } else {
+                    logger.warn("Skipping {}, deleted since the plan was made", path);
+                }
+            }
+            if (!albumManager.uploadMedias(album, medias, 0)) {
+                logger.warn("Album {} is not complete, it's executed again next time", albumPlan.albumName());
+                continue;
+            }
+            Files.write(progressFile, List.of(albumPlan.albumName()), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One Google account synced by a --profiles run: its credentials store, folders and quota, and the
+ * files holding its state, which can't be shared with the other accounts.
+ * Profiles are read from a JSON array, e.g.
+ * [{"name": "alice", "credentialsDir": "credentials-alice", "baseFolder": "/photos/alice",
+ * "albumsCache": "alice-albums.json", "syncState": "alice-state.jsonl",
+ * "libraryIndex": "alice-library.json", "runReport": "alice-report.jsonl", "requestsPerSecond": 5}]
+ * Only name, credentialsDir and baseFolder are required; folders default to the base folder.
+ */
+public record SyncProfile(String name, String credentialsDir, String baseFolder, List<String> folders,
+        String albumsCache, String syncState, String libraryIndex, String runReport, double requestsPerSecond) {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public List<String> foldersToProcess() {
+        return folders == null || folders.isEmpty() ? List.of(baseFolder) : folders;
+    }
+
+    public static List<SyncProfile> load(Path profilesFile) throws IOException {
+        List<SyncProfile> profiles = objectMapper.readValue(profilesFile.toFile(), new TypeReference<>() {
+        });
+        Set<String> names = new HashSet<>();
+        Set<String> credentialsDirs = new HashSet<>();
+        for (SyncProfile profile : profiles) {
+            if (profile.name() == null || profile.credentialsDir() == null || profile.baseFolder() == null) {
+                throw new IllegalArgumentException("Profiles need a name, credentialsDir and baseFolder: " + profile);
+            }
+            if (!names.add(profile.name())) {
+                throw new IllegalArgumentException("Duplicate profile " + profile.name());
+            }
+            // Two clients refreshing the same stored token would invalidate each other
+            if (!credentialsDirs.add(Path.of(profile.credentialsDir()).toAbsolutePath().normalize().toString())) {
+                throw new IllegalArgumentException("Profile " + profile.name() + " shares its credentialsDir");
+            }
+            for (String folder : profile.foldersToProcess()) {
+                if (!folder.startsWith(profile.baseFolder())) {
+                    throw new IllegalArgumentException(
+                            "Processing folder must be included in the base folder: " + folder);
+                }
+            }
+        }
+        return profiles;
+    }
+}
@@ -0,0 +1,121 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local record of the folders already synced, one JSON line per album with a fingerprint of its
+ * files (names, sizes and modification times). A folder whose fingerprint didn't change since its
+ * last complete sync is skipped without any API call. Later lines win; the file is compacted
+ * when it holds more superseded lines than current ones.
+ */
+public class SyncState implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncState.class);
+
+    record FolderState(String album, String fingerprint) {
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path stateFile;
+
+    private final Map<String, String> fingerprints = new HashMap<>();
+
+    private BufferedWriter writer = null;
+
+    private int lines = 0;
+
+    public SyncState(Path stateFile) throws IOException {
+        this.stateFile = stateFile;
+        if (Files.exists(stateFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    lines++;
+                    try {
+                        FolderState state = objectMapper.readValue(line, FolderState.class);
+                        fingerprints.put(state.album(), state.fingerprint());
+                    } catch (IOException e) {
+                        logger.warn("Ignoring invalid sync state line: {}", line);
+                    }
+                }
+            }
+        }
+        logger.info("Sync state: {} folders synced", fingerprints.size());
+    }
+
+    /**
+     * Identifies the files of a folder by name, size and modification time.
+     */
+    public static String fingerprint(List<File> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            files.stream().sorted(Comparator.comparing(File::getName)).forEach(file -> digest.update(
+                    (file.getName() + "\t" + file.length() + "\t" + file.lastModified() + "\n")
+                            .getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized boolean isUpToDate(String album, String fingerprint) {
+        return fingerprint.equals(fingerprints.get(album));
+    }
+
+    public synchronized void markSynced(String album, String fingerprint) throws IOException {
+        if (fingerprint.equals(fingerprints.put(album, fingerprint))) {
+            return;
+        }
+        if (writer == null) {
+            writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        writer.write(objectMapper.writeValueAsString(new FolderState(album, fingerprint)));
+        writer.newLine();
+        // Flushed per folder, so an interrupted run keeps the folders it finished
+        writer.flush();
+        lines++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (lines > 2 * fingerprints.size()) {
+            Path compacted = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+                    out.write(objectMapper.writeValueAsString(new FolderState(entry.getKey(), entry.getValue())));
+                    out.newLine();
+                }
+            }
+            Files.move(compacted, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = fingerprints.size();
+        }
+    }
+}
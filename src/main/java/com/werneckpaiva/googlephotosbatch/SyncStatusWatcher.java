@@ -1,18 +1,50 @@
 package com.werneckpaiva.googlephotosbatch;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.werneckpaiva.googlephotosbatch.service.Album;
 import org.fusesource.jansi.Ansi;
 
+import java.io.File;
+import java.io.PrintStream;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Renders the progress of an album sync.
+ * Wakes up on pipeline events, redraws only when the state changed (capped frame rate)
+ * and estimates the remaining time from bytes and measured throughput.
+ * When stdout is not a terminal, prints one JSON line per interval instead.
+ */
 public class SyncStatusWatcher {
     private static final int BAR_WIDTH = 40;
 
+    private static final long MIN_FRAME_INTERVAL_MS = 250;
+
+    private static final long ANSI_HEARTBEAT_MS = 1000;
+
+    private static final long JSON_INTERVAL_MS = 10000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public enum Mode {
+        AUTO, ANSI, JSON, NONE;
+
+        Mode resolve() {
+            return resolve(System.console() != null);
+        }
+
+        Mode resolve(boolean terminal) {
+            if (this != AUTO) {
+                return this;
+            }
+            return terminal ? ANSI : JSON;
+        }
+    }
+
     public record MediaTaskLog(Status status, int workerIndex, MediaWithName media, int count) {
 
         public enum Status {
@@ -41,97 +73,195 @@ public class SyncStatusWatcher {
         }
     }
 
-    private static class SyncProgress {
+    public record ProgressSnapshot(String album, String phase, int completed, int total, long bytesCompleted,
+            long bytesTotal, long bytesPerSecond, long elapsedMs, Long etaMs, int resizing, int uploading) {
+    }
+
+    static class SyncProgress {
         int completedUploads = 0;
+        long completedBytes = 0;
+        long totalBytes;
         final Map<String, String> activeResizeTasks = new LinkedHashMap<>();
+        final Map<String, Long> activeResizeSizes = new LinkedHashMap<>();
         final Map<String, String> activeUploadTasks = new LinkedHashMap<>();
         boolean saveStarted = false;
         boolean saveCompleted = false;
         int saveCount = 0;
         final long startTime = System.currentTimeMillis();
+
+        SyncProgress(long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        long bytesPerSecond(long elapsedMs) {
+            return elapsedMs > 0 ? completedBytes * 1000 / elapsedMs : 0;
+        }
+
+        Long etaMs(long elapsedMs) {
+            long bytesPerSecond = bytesPerSecond(elapsedMs);
+            if (bytesPerSecond <= 0) {
+                return null;
+            }
+            return Math.max(0, totalBytes - completedBytes) * 1000 / bytesPerSecond;
+        }
     }
 
     public static Callable<Void> getWatcherTask(
             Album album,
-            BlockingQueue<MediaWithName> mediasToUploadQueue,
-            ConcurrentLinkedQueue<MediaWithName> mediasToResizeQueue,
-            List<MediaWithName> mediasUploaded,
-            ConcurrentLinkedQueue<MediaTaskLog> progressLog,
-            int totalMedias) {
+            BlockingQueue<MediaTaskLog> progressLog,
+            int totalMedias,
+            long totalBytes,
+            Mode mode) {
+        return getWatcherTask(album, progressLog, totalMedias, totalBytes, mode.resolve(), System.out);
+    }
+
+    static Callable<Void> getWatcherTask(
+            Album album,
+            BlockingQueue<MediaTaskLog> progressLog,
+            int totalMedias,
+            long totalBytes,
+            Mode resolvedMode,
+            PrintStream out) {
 
         return () -> {
-            SyncProgress progress = new SyncProgress();
+            SyncProgress progress = new SyncProgress(totalBytes);
             int lastDisplayedLines = 0;
+            long lastRender = 0;
+            boolean dirty = true;
+            long renderInterval = resolvedMode == Mode.JSON ? JSON_INTERVAL_MS : MIN_FRAME_INTERVAL_MS;
+            long heartbeatInterval = resolvedMode == Mode.ANSI ? ANSI_HEARTBEAT_MS : JSON_INTERVAL_MS;
 
             while (!progress.saveCompleted) {
-                processLogEntries(progressLog, progress);
-                lastDisplayedLines = refreshDisplay(album.title(), progress, totalMedias, lastDisplayedLines);
-
-                if (!progress.saveCompleted) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
+                long now = System.currentTimeMillis();
+                boolean renderDue = dirty ? now - lastRender >= renderInterval
+                        : now - lastRender >= heartbeatInterval;
+                if (renderDue) {
+                    if (resolvedMode == Mode.JSON) {
+                        printJson(out, album.title(), "syncing", progress, totalMedias);
+                    } else if (resolvedMode == Mode.ANSI) {
+                        lastDisplayedLines = refreshDisplay(out, album.title(), progress, totalMedias,
+                                lastDisplayedLines);
                     }
+                    lastRender = now;
+                    dirty = false;
+                }
+                long wait = (dirty ? renderInterval : heartbeatInterval) - (System.currentTimeMillis() - lastRender);
+                try {
+                    MediaTaskLog log = progressLog.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                    if (log != null) {
+                        dirty |= processLogEntry(log, progress);
+                        while ((log = progressLog.poll()) != null) {
+                            dirty |= processLogEntry(log, progress);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
 
+            if (resolvedMode == Mode.NONE) {
+                return null;
+            }
+            if (resolvedMode == Mode.JSON) {
+                printJson(out, album.title(), "completed", progress, totalMedias);
+                return null;
+            }
+            if (lastDisplayedLines > 0) {
+                out.print(Ansi.ansi().cursorUp(lastDisplayedLines).eraseScreen(Ansi.Erase.FORWARD));
+            }
             long elapsedMs = System.currentTimeMillis() - progress.startTime;
             String elapsedStr = formatTime(elapsedMs);
-            String bar = "=".repeat(BAR_WIDTH);
-            System.out.println(String.format("Syncing 100%% | %s | %d/%d (%s / %s) - Album %s completed.",
-                    bar, totalMedias, totalMedias, elapsedStr, elapsedStr, album.title()));
-            System.out.flush();
+            StringBuilder summary = new StringBuilder("Syncing 100% | ")
+                    .append("=".repeat(BAR_WIDTH))
+                    .append(" | ").append(totalMedias).append('/').append(totalMedias)
+                    .append(" (").append(elapsedStr).append(" / ").append(elapsedStr).append(") - ")
+                    .append(formatBytes(progress.completedBytes)).append(" - Album ")
+                    .append(album.title()).append(" completed.");
+            out.println(summary);
+            out.flush();
 
             return null;
         };
     }
 
-    private static void processLogEntries(ConcurrentLinkedQueue<MediaTaskLog> progressLog, SyncProgress progress) {
-        MediaTaskLog log;
-        while ((log = progressLog.poll()) != null) {
-            String mediaName = (log.media() != null) ? log.media().name() : "";
-            String workerKey = String.valueOf(log.workerIndex());
+    /**
+     * Applies one event to the progress state. Returns whether the display changed.
+     */
+    private static boolean processLogEntry(MediaTaskLog log, SyncProgress progress) {
+        String mediaName = (log.media() != null) ? log.media().name() : "";
+        String workerKey = String.valueOf(log.workerIndex());
 
-            switch (log.status()) {
-                case RESIZE_STARTED:
-                    progress.activeResizeTasks.put(workerKey, mediaName);
-                    break;
-                case RESIZE_COMPLETED:
-                case RESIZE_NOT_REQUIRED:
-                    progress.activeResizeTasks.remove(workerKey);
-                    break;
-                case UPLOAD_STARTED:
-                    progress.activeUploadTasks.put(workerKey, mediaName);
-                    break;
-                case UPLOAD_COMPLETED:
-                case UPLOAD_FAILED:
-                    progress.activeUploadTasks.remove(workerKey);
-                    progress.completedUploads++;
-                    break;
-                case SAVE_STARTED:
-                    progress.saveStarted = true;
-                    progress.saveCount = log.count();
-                    break;
-                case SAVE_COMPLETED:
-                    progress.saveCompleted = true;
-                    break;
-                default:
-                    break;
-            }
+        switch (log.status()) {
+            case RESIZE_STARTED:
+                progress.activeResizeTasks.put(workerKey, mediaName);
+                progress.activeResizeSizes.put(workerKey, fileSize(log.media()));
+                return true;
+            case RESIZE_COMPLETED:
+                // Resized file is smaller than the original, adjust the bytes still to upload
+                Long originalSize = progress.activeResizeSizes.remove(workerKey);
+                if (originalSize != null) {
+                    progress.totalBytes -= originalSize - fileSize(log.media());
+                }
+                progress.activeResizeTasks.remove(workerKey);
+                return true;
+            case RESIZE_NOT_REQUIRED:
+                progress.activeResizeSizes.remove(workerKey);
+                progress.activeResizeTasks.remove(workerKey);
+                return true;
+            case UPLOAD_STARTED:
+                progress.activeUploadTasks.put(workerKey, mediaName);
+                return true;
+            case UPLOAD_COMPLETED:
+                progress.completedBytes += fileSize(log.media());
+                progress.activeUploadTasks.remove(workerKey);
+                progress.completedUploads++;
+                return true;
+            case UPLOAD_FAILED:
+                progress.totalBytes -= fileSize(log.media());
+                progress.activeUploadTasks.remove(workerKey);
+                progress.completedUploads++;
+                return true;
+            case SAVE_STARTED:
+                progress.saveStarted = true;
+                progress.saveCount = log.count();
+                return true;
+            case SAVE_COMPLETED:
+                progress.saveCompleted = true;
+                return true;
+            default:
+                return false;
         }
     }
 
-    private static int refreshDisplay(String albumName, SyncProgress progress, int totalMedias,
-            int lastDisplayedLines) {
-
-        if (progress.saveCompleted) {
-            if (lastDisplayedLines > 0) {
-                System.out.print(Ansi.ansi().cursorUp(lastDisplayedLines).eraseScreen(Ansi.Erase.FORWARD));
-            }
+    private static long fileSize(MediaWithName media) {
+        if (media == null) {
             return 0;
         }
+        File file = media.file();
+        return file != null ? file.length() : 0;
+    }
+
+    private static void printJson(PrintStream out, String albumName, String phase, SyncProgress progress, int totalMedias) {
+        long elapsedMs = System.currentTimeMillis() - progress.startTime;
+        if (progress.saveStarted && !progress.saveCompleted) {
+            phase = "saving";
+        }
+        ProgressSnapshot snapshot = new ProgressSnapshot(albumName, phase,
+                progress.completedUploads, totalMedias, progress.completedBytes, progress.totalBytes,
+                progress.bytesPerSecond(elapsedMs), elapsedMs,
+                "completed".equals(phase) ? Long.valueOf(0) : progress.etaMs(elapsedMs),
+                progress.activeResizeTasks.size(), progress.activeUploadTasks.size());
+        try {
+            out.println(objectMapper.writeValueAsString(snapshot));
+            out.flush();
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int refreshDisplay(PrintStream out, String albumName, SyncProgress progress, int totalMedias,
+            int lastDisplayedLines) {
 
         StringBuilder display = new StringBuilder();
 
@@ -140,54 +270,73 @@ public class SyncStatusWatcher {
         }
 
         long elapsedMs = System.currentTimeMillis() - progress.startTime;
-        String progressLine = buildProgressLine(albumName, progress.completedUploads, totalMedias, elapsedMs);
-        display.append(progressLine).append("\n");
+        appendProgressLine(display, albumName, progress, totalMedias, elapsedMs);
+        display.append('\n');
 
         int lineCount = 1;
 
         if (progress.saveStarted) {
-            display.append(String.format("Saving %d photos to album %s...\n", progress.saveCount, albumName));
+            display.append("Saving ").append(progress.saveCount).append(" photos to album ").append(albumName)
+                    .append("...\n");
             lineCount++;
         } else {
             for (String name : progress.activeResizeTasks.values()) {
-                display.append(String.format("Resizing: %s\n", name));
+                display.append("Resizing: ").append(name).append('\n');
                 lineCount++;
             }
             for (String name : progress.activeUploadTasks.values()) {
-                display.append(String.format("Uploading: %s\n", name));
+                display.append("Uploading: ").append(name).append('\n');
                 lineCount++;
             }
         }
 
-        System.out.print(display.toString());
-        System.out.flush();
+        out.print(display);
+        out.flush();
         return lineCount;
     }
 
-    private static String buildProgressLine(String albumName, int completed, int total, long elapsedMs) {
-        int percent = (total > 0) ? (completed * 100 / total) : 0;
-        int filled = (total > 0) ? (BAR_WIDTH * completed) / total : 0;
+    private static void appendProgressLine(StringBuilder line, String albumName, SyncProgress progress, int total,
+            long elapsedMs) {
+        long totalBytes = Math.max(progress.totalBytes, progress.completedBytes);
+        int percent = (totalBytes > 0) ? (int) (progress.completedBytes * 100 / totalBytes) : 0;
+        int filled = (totalBytes > 0) ? (int) (BAR_WIDTH * progress.completedBytes / totalBytes) : 0;
 
-        StringBuilder bar = new StringBuilder();
-        for (int i = 0; i < BAR_WIDTH; i++) {
-            bar.append(i < filled ? "=" : " ");
+        line.append("Syncing ");
+        if (percent < 100) {
+            line.append(' ');
         }
-
-        String elapsedStr = formatTime(elapsedMs);
-        String totalTimeStr = "??:??";
-        if (completed > 0) {
-            long estimatedTotalMs = (elapsedMs * total) / completed;
-            totalTimeStr = formatTime(estimatedTotalMs);
+        if (percent < 10) {
+            line.append(' ');
         }
-
-        return String.format("Syncing %3d%% | %s | %d/%d (%s / %s) - Album %s",
-                percent, bar.toString(), completed, total, elapsedStr, totalTimeStr, albumName);
+        line.append(percent).append("% | ");
+        for (int i = 0; i < BAR_WIDTH; i++) {
+            line.append(i < filled ? '=' : ' ');
+        }
+        line.append(" | ").append(progress.completedUploads).append('/').append(total)
+                .append(" (").append(formatTime(elapsedMs)).append(" / ");
+        Long etaMs = progress.etaMs(elapsedMs);
+        line.append(etaMs != null ? formatTime(elapsedMs + etaMs) : "??:??").append(") ")
+                .append(formatBytes(progress.bytesPerSecond(elapsedMs))).append("/s - Album ").append(albumName);
     }
 
     private static String formatTime(long millis) {
         long seconds = millis / 1000;
         long minutes = seconds / 60;
         seconds = seconds % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+        return (minutes < 10 ? "0" : "") + minutes + (seconds < 10 ? ":0" : ":") + seconds;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        double value = bytes;
+        String[] units = { "KB", "MB", "GB", "TB" };
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return (Math.round(value * 10) / 10.0) + " " + units[unit];
     }
 }
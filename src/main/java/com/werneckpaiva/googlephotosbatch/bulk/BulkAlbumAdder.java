@@ -0,0 +1,77 @@
+package com.werneckpaiva.googlephotosbatch.bulk;
+
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds media items to albums from a stream of lines: "mediaId", or "albumId,mediaId" (comma or
+ * tab) to target several albums. Items are grouped per album into batches of the API maximum
+ * and committed concurrently through a BulkOperation.
+ */
+public class BulkAlbumAdder {
+
+    // Largest batch accepted by albums.batchAddMediaItems
+    private static final int BATCH_SIZE = 50;
+
+    private final GooglePhotosAPI api;
+
+    private final BulkOperation operation;
+
+    private final String defaultAlbumId;
+
+    private final Map<String, List<String>> pending = new LinkedHashMap<>();
+
+    private final Set<String> seen = new HashSet<>();
+
+    /**
+     * @param defaultAlbumId album of lines with only a media ID, may be null
+     */
+    public BulkAlbumAdder(GooglePhotosAPI api, BulkOperation operation, String defaultAlbumId) {
+        this.api = api;
+        this.operation = operation;
+        this.defaultAlbumId = defaultAlbumId;
+    }
+
+    public void add(BufferedReader input) throws IOException, InterruptedException {
+        String line;
+        int lineNumber = 0;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[,\t]", 2);
+            String albumId = fields.length == 2 ? fields[0].trim() : defaultAlbumId;
+            String mediaId = fields[fields.length - 1].trim();
+            if (albumId == null || albumId.isEmpty()) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has no album ID and no default album is set");
+            }
+            if (!seen.add(albumId + "/" + mediaId) || operation.isCompleted(albumId, mediaId)) {
+                operation.skip();
+                continue;
+            }
+            List<String> batch = pending.computeIfAbsent(albumId, id -> new ArrayList<>());
+            batch.add(mediaId);
+            if (batch.size() >= BATCH_SIZE) {
+                submit(albumId, pending.remove(albumId));
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : pending.entrySet()) {
+            submit(entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+    }
+
+    private void submit(String albumId, List<String> mediaIds) throws InterruptedException {
+        operation.submit(albumId, mediaIds, ids -> api.batchAddMediaItems(albumId, ids));
+    }
+}
@@ -0,0 +1,141 @@
+package com.werneckpaiva.googlephotosbatch.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Updates media descriptions from a stream of (mediaId, description) records, one request per
+ * item through a BulkOperation. Each line is either a JSON object with "id" (or "mediaId") and
+ * "description", or a CSV record "mediaId,description" where the description may be quoted and
+ * then contain commas, doubled quotes and line breaks. A CSV header line is skipped.
+ * Items updated by an earlier run are skipped, as are later duplicates of an ID.
+ */
+public class BulkDescriptionUpdater {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkDescriptionUpdater.class);
+
+    private record Entry(String mediaId, String description) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final GooglePhotosAPI api;
+
+    private final BulkOperation operation;
+
+    private final Set<String> seen = new HashSet<>();
+
+    public BulkDescriptionUpdater(GooglePhotosAPI api, BulkOperation operation) {
+        this.api = api;
+        this.operation = operation;
+    }
+
+    public void update(BufferedReader input) throws IOException, InterruptedException {
+        String line;
+        int lineNumber = 0;
+        boolean first = true;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            Entry entry;
+            if (line.stripLeading().startsWith("{")) {
+                entry = parseJson(line, lineNumber);
+            } else {
+                List<String> fields = readCsvRecord(line, input);
+                if (first && isHeader(fields)) {
+                    first = false;
+                    continue;
+                }
+                if (fields.size() != 2) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected mediaId,description");
+                }
+                entry = new Entry(fields.get(0).trim(), fields.get(1));
+            }
+            first = false;
+            if (!seen.add(entry.mediaId())) {
+                logger.warn("Ignoring duplicate description for media item {} on line {}", entry.mediaId(), lineNumber);
+                operation.skip();
+                continue;
+            }
+            if (operation.isCompleted(null, entry.mediaId())) {
+                operation.skip();
+                continue;
+            }
+            operation.submit(null, List.of(entry.mediaId()),
+                    ids -> api.updateMediaItemDescription(entry.mediaId(), entry.description()));
+        }
+    }
+
+    private Entry parseJson(String line, int lineNumber) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        JsonNode id = node.has("id") ? node.get("id") : node.get("mediaId");
+        JsonNode description = node.get("description");
+        if (id == null || !id.isTextual() || description == null || description.isNull()) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected id and description fields");
+        }
+        return new Entry(id.asText(), description.asText());
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        String first = fields.get(0).trim();
+        return first.equalsIgnoreCase("id") || first.equalsIgnoreCase("mediaId");
+    }
+
+    /**
+     * Splits a CSV record, reading more lines while a quoted field is open.
+     */
+    static List<String> readCsvRecord(String line, BufferedReader input) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                line = input.readLine();
+                if (line == null) {
+                    throw new IllegalArgumentException("Unterminated quoted field: " + field);
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.toString().isBlank()) {
+                field.setLength(0);
+                quoted = true;
+            } else if (c == ',' && fields.isEmpty()) {
+                // Only the first comma separates, the description keeps the rest
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,201 @@
+package com.werneckpaiva.googlephotosbatch.bulk;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of a bulk edit on a bounded pool and records the result of each item as a
+ * JSON line. Items recorded as OK by an earlier run are reported completed, so a rerun with the
+ * same input only retries failed and missing items. submit() blocks while the pool is busy,
+ * which keeps a streamed input from being read far ahead of the requests. A batch request that
+ * fails is retried in halves, so one bad item doesn't fail the valid items sent with it.
+ */
+public class BulkOperation implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkOperation.class);
+
+    public enum Status {
+        OK, FAILED
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ItemResult(String albumId, String id, Status status, String error) {
+    }
+
+    public record Summary(int succeeded, int failed, int skipped) {
+    }
+
+    @FunctionalInterface
+    public interface Task {
+        void run(List<String> ids) throws Exception;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Set<String> completed = new HashSet<>();
+
+    private final ExecutorService pool;
+
+    private final Semaphore slots;
+
+    private final BufferedWriter results;
+
+    private final AtomicInteger succeeded = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    public BulkOperation(Path resultsFile, int concurrency) throws IOException {
+        loadCompleted(resultsFile);
+        this.pool = Executors.newFixedThreadPool(Math.max(1, concurrency));
+        this.slots = new Semaphore(Math.max(1, concurrency) * 2);
+        this.results = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void loadCompleted(Path resultsFile) throws IOException {
+        if (!Files.exists(resultsFile)) {
+            return;
+        }
+        Map<String, Status> lastStatus = new HashMap<>();
+        for (String line : Files.readAllLines(resultsFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                ItemResult result = objectMapper.readValue(line, ItemResult.class);
+                lastStatus.put(key(result.albumId(), result.id()), result.status());
+            } catch (JsonProcessingException e) {
+                logger.warn("Skipping unreadable line in {}: {}", resultsFile, line);
+            }
+        }
+        lastStatus.forEach((key, status) -> {
+            if (status == Status.OK) {
+                completed.add(key);
+            }
+        });
+        // A run killed mid-write leaves a partial line, don't glue the next result to it
+        try (RandomAccessFile file = new RandomAccessFile(resultsFile.toFile(), "rw")) {
+            if (file.length() > 0) {
+                file.seek(file.length() - 1);
+                if (file.read() != '\n') {
+                    file.write('\n');
+                }
+            }
+        }
+        logger.info("{} items already completed according to {}", completed.size(), resultsFile);
+    }
+
+    /**
+     * The results file used when --results-file is not given: next to the input file, or in the
+     * working directory when the items don't come from a file.
+     */
+    public static Path defaultResultsFile(String input, String fallbackName) {
+        if (input == null || "-".equals(input)) {
+            return Paths.get(fallbackName);
+        }
+        Path inputPath = Paths.get(input);
+        return inputPath.resolveSibling(inputPath.getFileName() + ".results.jsonl");
+    }
+
+    private static String key(String albumId, String id) {
+        return albumId == null ? id : albumId + "/" + id;
+    }
+
+    public boolean isCompleted(String albumId, String id) {
+        return completed.contains(key(albumId, id));
+    }
+
+    /**
+     * Counts an input item that needs no request, e.g. completed by an earlier run.
+     */
+    public void skip() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Runs the task for the given items, waiting for a free slot first.
+     * albumId is only recorded in the results, null when the operation is not about albums.
+     */
+    public void submit(String albumId, List<String> ids, Task task) throws InterruptedException {
+        slots.acquire();
+        pool.execute(() -> {
+            try {
+                run(albumId, ids, task);
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    private void run(String albumId, List<String> ids, Task task) {
+        try {
+            task.run(ids);
+            record(albumId, ids, Status.OK, null);
+            succeeded.addAndGet(ids.size());
+        } catch (Exception e) {
+            if (ids.size() > 1) {
+                // Batch requests fail as a whole, split to find the items at fault
+                logger.warn("Failed on {} items, retrying in halves: {}", ids.size(), e.getMessage());
+                int half = ids.size() / 2;
+                run(albumId, ids.subList(0, half), task);
+                run(albumId, ids.subList(half, ids.size()), task);
+                return;
+            }
+            logger.error("Failed on {}: {}", ids.get(0), e.getMessage());
+            record(albumId, ids, Status.FAILED, String.valueOf(e.getMessage()));
+            failed.incrementAndGet();
+        }
+    }
+
+    private synchronized void record(String albumId, List<String> ids, Status status, String error) {
+        try {
+            for (String id : ids) {
+                results.write(objectMapper.writeValueAsString(new ItemResult(albumId, id, status, error)));
+                results.newLine();
+            }
+            results.flush();
+        } catch (IOException e) {
+            logger.error("Can't write results", e);
+        }
+    }
+
+    /**
+     * Waits for the submitted tasks to finish.
+     */
+    public Summary await() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return new Summary(succeeded.get(), failed.get(), skipped.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        results.close();
+    }
+}
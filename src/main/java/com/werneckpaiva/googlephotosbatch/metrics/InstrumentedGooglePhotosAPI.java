@@ -0,0 +1,205 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import com.werneckpaiva.googlephotosbatch.exception.GooglePhotosServiceException;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * GooglePhotosAPI decorator recording latency and error count per method.
+ */
+public class InstrumentedGooglePhotosAPI implements GooglePhotosAPI {
+
+    private final GooglePhotosAPI delegate;
+
+    private final MetricsRegistry metrics;
+
+    public InstrumentedGooglePhotosAPI(GooglePhotosAPI delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    private <T> T timed(String method, Supplier<T> call) {
+        MetricsRegistry.Histogram latency = metrics.histogram("googlephotos_api_call_seconds",
+                "Latency of Google Photos API calls", MetricsRegistry.LATENCY_BUCKETS, "method", method);
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            metrics.counter("googlephotos_api_errors_total", "Failed Google Photos API calls",
+                    "method", method).inc();
+            throw e;
+        } finally {
+            latency.observeSince(start);
+        }
+    }
+
+    private void timed(String method, Runnable call) {
+        timed(method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    @Override
+    public void logout() {
+        delegate.logout();
+    }
+
+    @Override
+    public void reauthenticate() throws GooglePhotosServiceException {
+        delegate.reauthenticate();
+    }
+
+    @Override
+    public MediaItemInfo getMediaItem(String mediaId) {
+        return timed("getMediaItem", () -> delegate.getMediaItem(mediaId));
+    }
+
+    @Override
+    public List<MediaItemInfo> getMediaItems(List<String> mediaIds) {
+        return timed("getMediaItems", () -> delegate.getMediaItems(mediaIds));
+    }
+
+    @Override
+    public Set<MediaItemInfo> retrieveFilesFromAlbum(Album album) {
+        return timed("retrieveFilesFromAlbum", () -> delegate.retrieveFilesFromAlbum(album));
+    }
+
+    @Override
+    public String uploadSingleFile(String name, File file) {
+        return countFailedUpload(timed("uploadSingleFile", () -> delegate.uploadSingleFile(name, file)));
+    }
+
+    @Override
+    public String uploadSingleFile(String name, File file, int chunkSize) {
+        return countFailedUpload(timed("uploadSingleFile", () -> delegate.uploadSingleFile(name, file, chunkSize)));
+    }
+
+    private String countFailedUpload(String uploadToken) {
+        if (uploadToken == null) {
+            // The implementation reports upload failures with a null token
+            metrics.counter("googlephotos_api_errors_total", "Failed Google Photos API calls",
+                    "method", "uploadSingleFile").inc();
+        }
+        return uploadToken;
+    }
+
+    @Override
+    public int saveToAlbum(Album album, List<String> mediasUploaded) {
+        return timed("saveToAlbum", () -> delegate.saveToAlbum(album, mediasUploaded));
+    }
+
+    @Override
+    public Album createAlbum(String albumName) {
+        return timed("createAlbum", () -> delegate.createAlbum(albumName));
+    }
+
+    @Override
+    public Album getAlbum(String albumId) {
+        return timed("getAlbum", () -> delegate.getAlbum(albumId));
+    }
+
+    /**
+     * Pages are fetched while iterating, so one listing is observed when its iteration ends, with
+     * the time spent getting the iterable and in the iterator.
+     */
+    @Override
+    public Iterable<Album> getAllAlbums() {
+        long start = System.nanoTime();
+        Iterable<Album> albums;
+        try {
+            albums = delegate.getAllAlbums();
+        } catch (RuntimeException e) {
+            countError("getAllAlbums");
+            observeLatency("getAllAlbums", System.nanoTime() - start);
+            throw e;
+        }
+        long startNanos = System.nanoTime() - start;
+        return () -> new TimedIterator<>("getAllAlbums", albums::iterator, startNanos);
+    }
+
+    private void countError(String method) {
+        metrics.counter("googlephotos_api_errors_total", "Failed Google Photos API calls", "method", method).inc();
+    }
+
+    private void observeLatency(String method, long nanos) {
+        metrics.histogram("googlephotos_api_call_seconds", "Latency of Google Photos API calls",
+                MetricsRegistry.LATENCY_BUCKETS, "method", method).observe(nanos / 1e9);
+    }
+
+    private class TimedIterator<T> implements Iterator<T> {
+        private final String method;
+
+        private final Iterator<T> delegate;
+
+        private long elapsedNanos;
+
+        private boolean observed = false;
+
+        TimedIterator(String method, Supplier<Iterator<T>> iterator, long elapsedNanos) {
+            this.method = method;
+            this.elapsedNanos = elapsedNanos;
+            this.delegate = timedStep(iterator);
+        }
+
+        private <R> R timedStep(Supplier<R> step) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                R result = step.get();
+                failed = false;
+                return result;
+            } catch (RuntimeException e) {
+                countError(method);
+                throw e;
+            } finally {
+                elapsedNanos += System.nanoTime() - start;
+                if (failed) {
+                    observe();
+                }
+            }
+        }
+
+        private void observe() {
+            if (!observed) {
+                observed = true;
+                observeLatency(method, elapsedNanos);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = timedStep(delegate::hasNext);
+            if (!hasNext) {
+                observe();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            return timedStep(delegate::next);
+        }
+    }
+
+    @Override
+    public MediaItemsResult listMediaItems(String pageToken) {
+        return timed("listMediaItems", () -> delegate.listMediaItems(pageToken));
+    }
+
+    @Override
+    public void batchAddMediaItems(String albumId, List<String> mediaItemIds) {
+        timed("batchAddMediaItems", () -> delegate.batchAddMediaItems(albumId, mediaItemIds));
+    }
+
+    @Override
+    public void updateMediaItemDescription(String mediaId, String description) {
+        timed("updateMediaItemDescription", () -> delegate.updateMediaItemDescription(mediaId, description));
+    }
+}
@@ -0,0 +1,101 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a MetricsRegistry through JMX and/or as a Prometheus textfile
+ * rewritten periodically (for the node exporter textfile collector).
+ */
+public class MetricsExporter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    public static final String OBJECT_NAME = "com.werneckpaiva.googlephotosbatch:type=Metrics";
+
+    private final MetricsRegistry registry;
+
+    private ScheduledExecutorService scheduler = null;
+
+    private Path textfile = null;
+
+    private ObjectName objectName = null;
+
+    public MetricsExporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void registerJmx() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new MetricsMXBean() {
+                    @Override
+                    public Map<String, Double> getValues() {
+                        return registry.snapshot();
+                    }
+
+                    @Override
+                    public String getPrometheusText() {
+                        return registry.toPrometheusText();
+                    }
+                }, objectName);
+            }
+            logger.info("Metrics registered in JMX as {}", OBJECT_NAME);
+        } catch (JMException e) {
+            logger.error("Couldn't register metrics in JMX", e);
+        }
+    }
+
+    public void startTextfile(Path textfile, long intervalSeconds) {
+        this.textfile = textfile;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::writeTextfile, 0, intervalSeconds, TimeUnit.SECONDS);
+        logger.info("Writing metrics to {} every {}s", textfile, intervalSeconds);
+    }
+
+    private void writeTextfile() {
+        // Write then rename, so the collector never reads a partial file
+        Path tmpFile = textfile.resolveSibling(textfile.getFileName() + ".tmp");
+        try {
+            Files.write(tmpFile, registry.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile, textfile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Couldn't write metrics to {}", textfile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            writeTextfile();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Couldn't unregister metrics from JMX", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+    Map<String, Double> getValues();
+
+    String getPrometheusText();
+}
@@ -0,0 +1,225 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Minimal in-process metrics: counters, gauges and histograms,
+ * identified by a family name and optional label pairs.
+ * Rendered as Prometheus text or as a flat map (for JMX).
+ */
+public class MetricsRegistry {
+
+    public static final double[] LATENCY_BUCKETS = { 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300 };
+
+    public static final double[] SIZE_BUCKETS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    private enum Type {
+        counter, gauge, histogram
+    }
+
+    private record Family(String name, String help, Type type, Map<String, Object> metrics) {
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.counter, labels, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) register(name, help, Type.histogram, labels, () -> new Histogram(buckets));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        register(name, help, Type.gauge, labels, () -> new Gauge(supplier));
+    }
+
+    /**
+     * Adds supplier to a gauge reporting the sum of all the suppliers added with the same name and
+     * labels, for values spread over several instances, e.g. the queues of concurrent syncs.
+     */
+    public void sumGauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Object gauge = register(name, help, Type.gauge, labels, SumGauge::new);
+        if (!(gauge instanceof SumGauge sumGauge)) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as a single gauge");
+        }
+        sumGauge.suppliers.add(supplier);
+    }
+
+    public RateMeter rateMeter(String name, String help, String... labels) {
+        return (RateMeter) register(name, help, Type.gauge, labels, RateMeter::new);
+    }
+
+    private Object register(String name, String help, Type type, String[] labels,
+            java.util.function.Supplier<Object> factory) {
+        Family family = families.computeIfAbsent(name,
+                n -> new Family(n, help, type, new ConcurrentSkipListMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric " + name + " already registered as " + family.type());
+        }
+        return family.metrics().computeIfAbsent(formatLabels(labels), l -> factory.get());
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (formatted.length() > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+        }
+        return formatted.toString();
+    }
+
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        for (Family family : families.values()) {
+            text.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            text.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+            for (Map.Entry<String, Object> entry : family.metrics().entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Histogram histogram) {
+                    histogram.appendPrometheus(text, family.name(), labels);
+                } else {
+                    appendSample(text, family.name(), labels, value(metric));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Flat view of all current values, histograms reduced to their count and sum.
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> entry : family.metrics().entrySet()) {
+                String key = entry.getKey().isEmpty() ? family.name()
+                        : family.name() + "{" + entry.getKey() + "}";
+                Object metric = entry.getValue();
+                if (metric instanceof Histogram histogram) {
+                    values.put(key + "_count", (double) histogram.count.sum());
+                    values.put(key + "_sum", histogram.sum.sum());
+                } else {
+                    values.put(key, value(metric));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static double value(Object metric) {
+        if (metric instanceof Counter counter) {
+            return counter.get();
+        } else if (metric instanceof Gauge gauge) {
+            return gauge.supplier.getAsDouble();
+        } else if (metric instanceof SumGauge sumGauge) {
+            return sumGauge.suppliers.stream().mapToDouble(DoubleSupplier::getAsDouble).sum();
+        } else if (metric instanceof RateMeter rateMeter) {
+            return rateMeter.perSecond();
+        }
+        return Double.NaN;
+    }
+
+    static void appendSample(StringBuilder text, String name, String labels, double value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    static String formatValue(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    public static class Counter {
+        private final DoubleAdder value = new DoubleAdder();
+
+        public void inc() {
+            value.add(1);
+        }
+
+        public void add(double amount) {
+            value.add(amount);
+        }
+
+        public double get() {
+            return value.sum();
+        }
+    }
+
+    private record Gauge(DoubleSupplier supplier) {
+    }
+
+    private static class SumGauge {
+        private final CopyOnWriteArrayList<DoubleSupplier> suppliers = new CopyOnWriteArrayList<>();
+    }
+
+    public static class Histogram {
+        private final double[] buckets;
+        private final LongAdder[] bucketCounts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] buckets) {
+            this.buckets = buckets;
+            this.bucketCounts = new LongAdder[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (value <= buckets[i]) {
+                    bucketCounts[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1e9);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double sum() {
+            return sum.sum();
+        }
+
+        void appendPrometheus(StringBuilder text, String name, String labels) {
+            String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += bucketCounts[i].sum();
+                appendSample(text, name + "_bucket", labelPrefix + "le=\"" + formatValue(buckets[i]) + "\"",
+                        cumulative);
+            }
+            appendSample(text, name + "_bucket", labelPrefix + "le=\"+Inf\"", count.sum());
+            appendSample(text, name + "_sum", labels, sum.sum());
+            appendSample(text, name + "_count", labels, count.sum());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+/**
+ * Per-second rate over a sliding window of one-second slots.
+ */
+public class RateMeter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final long[] slotSeconds = new long[WINDOW_SECONDS];
+
+    private final long[] slotValues = new long[WINDOW_SECONDS];
+
+    private final long startSecond = currentSecond();
+
+    public synchronized void mark(long amount) {
+        long second = currentSecond();
+        int slot = (int) (second % WINDOW_SECONDS);
+        if (slotSeconds[slot] != second) {
+            slotSeconds[slot] = second;
+            slotValues[slot] = 0;
+        }
+        slotValues[slot] += amount;
+    }
+
+    public synchronized double perSecond() {
+        long now = currentSecond();
+        long total = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (now - slotSeconds[i] < WINDOW_SECONDS) {
+                total += slotValues[i];
+            }
+        }
+        long window = Math.max(1, Math.min(WINDOW_SECONDS, now - startSecond + 1));
+        return (double) total / window;
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,276 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Side index of the albums already written to the album medias file.
+ * Each line holds an album ID and the size of the data file once that album was appended,
+ * so resuming reads the small index plus whatever was appended after its last entry.
+ * Data lines that are not indexed yet are scanned with a streaming parser that only
+ * reads albumId and skips the file lists. Compressed dumps are scanned per segment.
+ */
+public class AlbumMediasIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlbumMediasIndex.class);
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private record ScanResult(long stoppedAt, int found) {
+    }
+
+    private final Path dataFile;
+
+    private final Path indexFile;
+
+    public AlbumMediasIndex(Path dataFile) {
+        this.dataFile = dataFile;
+        this.indexFile = dataFile.resolveSibling(dataFile.getFileName() + ".idx");
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Returns the IDs of the albums already in the data file, bringing the index up to date.
+     */
+    public Set<String> load() throws IOException {
+        Set<String> ids = new HashSet<>();
+        if (!Files.exists(dataFile)) {
+            Files.deleteIfExists(indexFile);
+            return ids;
+        }
+        long dataSize = Files.size(dataFile);
+        long indexedSize = readIndex(ids);
+        if (indexedSize > dataSize) {
+            logger.warn("Index {} is ahead of {}, rebuilding it", indexFile, dataFile);
+            ids.clear();
+            indexedSize = 0;
+            Files.deleteIfExists(indexFile);
+        }
+        if (indexedSize < dataSize) {
+            if (SegmentedDump.detect(dataFile) == SegmentedDump.Format.GZIP) {
+                catchUpSegments(ids, indexedSize, dataSize);
+            } else {
+                catchUp(ids, indexedSize);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Records an album whose line was just committed to the data file.
+     */
+    public void append(String albumId) throws IOException {
+        Files.write(indexFile, List.of(albumId + "\t" + Files.size(dataFile)), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private long readIndex(Set<String> ids) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return 0;
+        }
+        long indexedSize = 0;
+        for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                continue;
+            }
+            try {
+                long size = Long.parseLong(line.substring(tab + 1));
+                ids.add(line.substring(0, tab));
+                indexedSize = Math.max(indexedSize, size);
+            } catch (NumberFormatException e) {
+                // Partially written last line
+            }
+        }
+        return indexedSize;
+    }
+
+    /**
+     * Scans the data file from the given offset, indexing every complete album found.
+     * Malformed lines are skipped; a trailing partial line (interrupted write) is cut off
+     * so that new lines start clean.
+     */
+    private void catchUp(Set<String> ids, long fromOffset) throws IOException {
+        int found = 0;
+        // Cut once the index is closed, so its last entries are flushed first
+        long incompleteFrom = -1;
+        try (BufferedWriter index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            long offset = fromOffset;
+            while (true) {
+                ScanResult scan = scan(ids, index, offset);
+                found += scan.found();
+                long lastGoodEnd = scan.stoppedAt();
+                if (lastGoodEnd < 0) {
+                    break;
+                }
+                long nextLine = nextLineStart(lastGoodEnd);
+                if (nextLine < 0) {
+                    incompleteFrom = lastGoodEnd;
+                    break;
+                }
+                logger.warn("Skipping malformed record in {} between bytes {} and {}", dataFile, lastGoodEnd,
+                        nextLine);
+                offset = nextLine;
+            }
+        }
+        if (incompleteFrom >= 0) {
+            logger.warn("Removing incomplete last record of {} after byte {}", dataFile, incompleteFrom);
+            truncate(incompleteFrom);
+        }
+        logger.info("Indexed {} albums appended to {} after byte {}", found, dataFile, fromOffset);
+    }
+
+    /**
+     * Streams records from the offset. Stops at the end of the last good record when a malformed
+     * one follows (-1 when the end of the file was reached).
+     */
+    private ScanResult scan(Set<String> ids, BufferedWriter index, long fromOffset) throws IOException {
+        long lastGoodEnd = fromOffset;
+        int found = 0;
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            channel.position(fromOffset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            try (JsonParser parser = jsonFactory.createParser(in)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new IOException("Unexpected " + token + " at " + parser.currentLocation());
+                    }
+                    String albumId = readAlbumId(parser);
+                    lastGoodEnd = fromOffset + parser.currentLocation().getByteOffset();
+                    if (albumId != null) {
+                        ids.add(albumId);
+                        index.write(albumId + "\t" + lastGoodEnd);
+                        index.newLine();
+                        found++;
+                    }
+                }
+            } catch (IOException e) {
+                return new ScanResult(lastGoodEnd, found);
+            }
+        }
+        return new ScanResult(-1, found);
+    }
+
+    /**
+     * Start of the line following the first non-blank byte after the offset, or -1 if that line
+     * is the last one and has no line break.
+     */
+    private long nextLineStart(long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            boolean inRecord = false;
+            long position = offset;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n' && inRecord) {
+                    return position;
+                }
+                inRecord |= !Character.isWhitespace(b);
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Compressed dumps can only be cut at segment boundaries: index the committed segments after
+     * the offset and drop whatever follows the last one.
+     */
+    private void catchUpSegments(Set<String> ids, long fromOffset, long dataSize) throws IOException {
+        List<SegmentedDump.Segment> segments = SegmentedDump.readSegments(dataFile);
+        if (segments == null) {
+            logger.warn("{} has no segment file, reading it whole", dataFile);
+            try (InputStream in = SegmentedDump.openRead(dataFile)) {
+                readAlbumIds(in, ids::add);
+            }
+            return;
+        }
+        long end = fromOffset;
+        int found = 0;
+        try (BufferedWriter index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (SegmentedDump.Segment segment : segments) {
+                if (segment.offset() < fromOffset) {
+                    continue;
+                }
+                List<String> segmentIds = new ArrayList<>();
+                try (InputStream in = SegmentedDump.openSegment(dataFile, segment)) {
+                    readAlbumIds(in, segmentIds::add);
+                }
+                for (String albumId : segmentIds) {
+                    ids.add(albumId);
+                    index.write(albumId + "\t" + segment.end());
+                    index.newLine();
+                }
+                found += segmentIds.size();
+                end = segment.end();
+            }
+        }
+        if (dataSize > end) {
+            logger.warn("Removing {} uncommitted bytes at the end of {}", dataSize - end, dataFile);
+            SegmentedDump.truncate(dataFile, end);
+        }
+        logger.info("Indexed {} albums appended to {} after byte {}", found, dataFile, fromOffset);
+    }
+
+    private static void readAlbumIds(InputStream in, Consumer<String> albumIds) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String albumId = readAlbumId(parser);
+                if (albumId != null) {
+                    albumIds.accept(albumId);
+                }
+            }
+        }
+    }
+
+    private static String readAlbumId(JsonParser parser) throws IOException {
+        String albumId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("albumId".equals(field) && value == JsonToken.VALUE_STRING) {
+                albumId = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return albumId;
+    }
+
+    private void truncate(long size) throws IOException {
+        SegmentedDump.truncate(dataFile, size);
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.WRITE)) {
+            if (size > 0) {
+                channel.position(size);
+                channel.write(ByteBuffer.wrap(new byte[] { '\n' }));
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads the JSON object records of a dump, one per line. Each line gets its own parser, so a
+ * malformed record only loses its line and reading resumes with the next one in the same stream,
+ * as AlbumMediasIndex does; a truncated tail only loses its last record.
+ */
+public final class DumpRecords {
+
+    private static final Logger logger = LoggerFactory.getLogger(DumpRecords.class);
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    @FunctionalInterface
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Reads the object the parser is on. Whatever it keeps should only be used once it returns,
+     * a record failing halfway is skipped.
+     */
+    @FunctionalInterface
+    public interface RecordReader {
+        void read(JsonParser parser) throws IOException;
+    }
+
+    private DumpRecords() {
+    }
+
+    /**
+     * Returns the number of records read.
+     */
+    public static long read(Path file, StreamOpener opener, RecordReader reader) throws IOException {
+        long records = 0;
+        try (InputStream in = opener.open()) {
+            LineReader lines = new LineReader(in);
+            while (lines.next()) {
+                try (JsonParser parser = jsonFactory.createParser(lines.buffer, lines.start,
+                        lines.end - lines.start)) {
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != null) {
+                        if (token != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        reader.read(parser);
+                        records++;
+                    }
+                } catch (JsonProcessingException e) {
+                    if (!lines.terminated) {
+                        logger.warn("Stopped reading {} at an incomplete record after byte {}", file, lines.offset());
+                        return records;
+                    }
+                    logger.warn("Skipping malformed record in {} between bytes {} and {}", file, lines.offset(),
+                            lines.offset() + lines.end - lines.start + 1);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Splits the stream in lines, the current one being buffer[start, end).
+     */
+    private static final class LineReader {
+        private final InputStream in;
+
+        private byte[] buffer = new byte[1 << 16];
+
+        private int start = 0;
+
+        private int end = 0;
+
+        // End of the bytes read
+        private int limit = 0;
+
+        // Offset in the stream of buffer[0]
+        private long bufferOffset = 0;
+
+        private boolean terminated = false;
+
+        private boolean eof = false;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        long offset() {
+            return bufferOffset + start;
+        }
+
+        boolean next() throws IOException {
+            start = terminated ? end + 1 : end;
+            int scan = start;
+            while (true) {
+                for (int i = scan; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        end = i;
+                        terminated = true;
+                        return true;
+                    }
+                }
+                if (eof) {
+                    end = limit;
+                    terminated = false;
+                    return start < limit;
+                }
+                // Keeps the current line at the start of the buffer, growing it for long lines
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                bufferOffset += start;
+                limit -= start;
+                start = 0;
+                scan = limit;
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                try {
+                    int read = in.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        limit += read;
+                    }
+                } catch (EOFException e) {
+                    // Compressed stream cut short
+                    eof = true;
+                }
+            }
+        }
+    }
+}
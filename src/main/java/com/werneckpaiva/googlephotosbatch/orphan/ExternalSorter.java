@@ -0,0 +1,277 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts key/value byte records by unsigned key order within a memory budget.
+ * Records are packed into one byte array (varint lengths, then key and value) indexed by an
+ * int array of offsets. When the budget is exceeded the buffer is sorted and spilled to a run
+ * file; sorted() then merges the runs. add() may be called from several threads.
+ */
+public class ExternalSorter implements Closeable {
+
+    public record Entry(byte[] key, byte[] value) {
+    }
+
+    private final long memoryLimitBytes;
+
+    private final Path tempDir;
+
+    private byte[] data = new byte[1 << 16];
+
+    private int dataSize = 0;
+
+    private int[] offsets = new int[1024];
+
+    private int count = 0;
+
+    private final List<Path> runs = new ArrayList<>();
+
+    private final List<Closeable> openReaders = new ArrayList<>();
+
+    public ExternalSorter(long memoryLimitBytes, Path tempDir) {
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.tempDir = tempDir;
+    }
+
+    public synchronized void add(byte[] key, byte[] value) throws IOException {
+        int recordSize = varintSize(key.length) + varintSize(value.length) + key.length + value.length;
+        if (count > 0 && (long) dataSize + recordSize + 4L * (count + 1) > memoryLimitBytes) {
+            spill();
+        }
+        if (dataSize + recordSize > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + recordSize));
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = dataSize;
+        dataSize = writeVarint(data, dataSize, key.length);
+        dataSize = writeVarint(data, dataSize, value.length);
+        System.arraycopy(key, 0, data, dataSize, key.length);
+        dataSize += key.length;
+        System.arraycopy(value, 0, data, dataSize, value.length);
+        dataSize += value.length;
+    }
+
+    public int spilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Iterates all records in key order. Call once, after the last add.
+     */
+    public Iterator<Entry> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            sortBuffer();
+            return new BufferIterator();
+        }
+        spill();
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(
+                (a, b) -> Arrays.compareUnsigned(a.current.key(), b.current.key()));
+        for (Path run : runs) {
+            RunReader reader = new RunReader(run);
+            openReaders.add(reader);
+            if (reader.advance()) {
+                heap.add(reader);
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heap.isEmpty();
+            }
+
+            @Override
+            public Entry next() {
+                RunReader reader = heap.poll();
+                if (reader == null) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = reader.current;
+                try {
+                    if (reader.advance()) {
+                        heap.add(reader);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return entry;
+            }
+        };
+    }
+
+    private void spill() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        sortBuffer();
+        Path run = Files.createTempFile(tempDir, "sort-run", ".bin");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < count; i++) {
+                int offset = offsets[i];
+                int keyLength = readVarint(data, offset);
+                offset += varintSize(keyLength);
+                int valueLength = readVarint(data, offset);
+                offset += varintSize(valueLength);
+                out.writeInt(keyLength);
+                out.writeInt(valueLength);
+                out.write(data, offset, keyLength + valueLength);
+            }
+        }
+        count = 0;
+        dataSize = 0;
+    }
+
+    private void sortBuffer() {
+        int[] scratch = new int[count];
+        mergeSort(offsets, scratch, 0, count);
+    }
+
+    private void mergeSort(int[] a, int[] scratch, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(a, scratch, from, middle);
+        mergeSort(a, scratch, middle, to);
+        if (compareKeys(a[middle - 1], a[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, scratch, from, to - from);
+        int left = from, right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareKeys(scratch[left], scratch[right]) <= 0)) {
+                a[i] = scratch[left++];
+            } else {
+                a[i] = scratch[right++];
+            }
+        }
+    }
+
+    private int compareKeys(int offsetA, int offsetB) {
+        int lengthA = readVarint(data, offsetA);
+        int lengthB = readVarint(data, offsetB);
+        int startA = offsetA + varintSize(lengthA);
+        int startB = offsetB + varintSize(lengthB);
+        startA += varintSize(readVarint(data, startA));
+        startB += varintSize(readVarint(data, startB));
+        return Arrays.compareUnsigned(data, startA, startA + lengthA, data, startB, startB + lengthB);
+    }
+
+    private Entry entryAt(int offset) {
+        int keyLength = readVarint(data, offset);
+        offset += varintSize(keyLength);
+        int valueLength = readVarint(data, offset);
+        offset += varintSize(valueLength);
+        return new Entry(Arrays.copyOfRange(data, offset, offset + keyLength),
+                Arrays.copyOfRange(data, offset + keyLength, offset + keyLength + valueLength));
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int readVarint(byte[] buffer, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private class BufferIterator implements Iterator<Entry> {
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public Entry next() {
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            return entryAt(offsets[next++]);
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private Entry current;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            int keyLength;
+            try {
+                keyLength = in.readInt();
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            byte[] key = new byte[keyLength];
+            byte[] value = new byte[in.readInt()];
+            in.readFully(key);
+            in.readFully(value);
+            current = new Entry(key, value);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Closeable reader : openReaders) {
+            reader.close();
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        data = new byte[0];
+        offsets = new int[0];
+        count = 0;
+    }
+}
@@ -0,0 +1,202 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dumps the whole library to a JSON Lines file with resume support.
+ * The next page is requested while the current one is written. Each checkpoint commits a
+ * segment of the dump (fsynced); the checkpoint file then records the page token to continue
+ * from and the data file length it matches, so a resume first cuts off whatever was written
+ * after the last checkpoint. A first checkpoint is saved before listing starts, pages written
+ * before the first periodic one are listed again as well.
+ */
+public class LibraryDump {
+
+    private static final Logger logger = LoggerFactory.getLogger(LibraryDump.class);
+
+    private record Checkpoint(String pageToken, long dataLength) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private final Path dataFile;
+
+    private final Path checkpointFile;
+
+    private int checkpointPages = 10;
+
+    private long checkpointIntervalMs = 5000;
+
+    private SegmentedDump.Format format = SegmentedDump.Format.JSONL;
+
+    private boolean dropBaseUrl = false;
+
+    public LibraryDump(Path dataFile, Path checkpointFile) {
+        this.dataFile = dataFile;
+        this.checkpointFile = checkpointFile;
+    }
+
+    public void setCheckpointPages(int checkpointPages) {
+        this.checkpointPages = Math.max(1, checkpointPages);
+    }
+
+    public void setCheckpointIntervalMs(long checkpointIntervalMs) {
+        this.checkpointIntervalMs = checkpointIntervalMs;
+    }
+
+    public void setFormat(SegmentedDump.Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Base URLs expire after an hour, there is no point in keeping them in a dump.
+     */
+    public void setDropBaseUrl(boolean dropBaseUrl) {
+        this.dropBaseUrl = dropBaseUrl;
+    }
+
+    /**
+     * Returns the number of items written by this run.
+     */
+    public long run(GooglePhotosAPI api) throws IOException {
+        Checkpoint checkpoint = loadCheckpoint();
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint(null, Files.exists(dataFile) ? Files.size(dataFile) : 0);
+            saveCheckpoint(checkpoint);
+        }
+        String pageToken = checkpoint.pageToken();
+        if (checkpoint.dataLength() >= 0) {
+            truncateTo(checkpoint.dataLength());
+        }
+        System.out.println(
+                "Processing library items (resuming with token: " + (pageToken == null ? "START" : pageToken) + ")...");
+
+        ExecutorService fetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-page-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long totalItems = 0;
+        try (SegmentedDump writer = SegmentedDump.openForAppend(dataFile, format)) {
+            Future<GooglePhotosAPI.MediaItemsResult> nextPage = fetch(fetcher, api, pageToken);
+            int pagesSinceCheckpoint = 0;
+            long lastCheckpoint = System.currentTimeMillis();
+            while (true) {
+                GooglePhotosAPI.MediaItemsResult page = await(nextPage);
+                pageToken = page.nextPageToken();
+                boolean lastPage = pageToken == null || pageToken.isEmpty();
+                // Request the following page before writing this one
+                nextPage = lastPage ? null : fetch(fetcher, api, pageToken);
+
+                for (GooglePhotosAPI.MediaItemInfo item : page.items()) {
+                    if (dropBaseUrl) {
+                        item = new GooglePhotosAPI.MediaItemInfo(item.id(), item.filename(), null, item.creationTime());
+                    }
+                    writer.writeLine(objectMapper.writeValueAsString(item));
+                    totalItems++;
+                }
+                pagesSinceCheckpoint++;
+
+                if (lastPage) {
+                    writer.commit();
+                    Files.deleteIfExists(checkpointFile);
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                if (pagesSinceCheckpoint >= checkpointPages || now - lastCheckpoint >= checkpointIntervalMs) {
+                    long dataLength = writer.commit();
+                    saveCheckpoint(new Checkpoint(pageToken, dataLength));
+                    pagesSinceCheckpoint = 0;
+                    lastCheckpoint = now;
+                    System.out.print("\rProcessed " + totalItems + " library items...");
+                }
+            }
+        } finally {
+            fetcher.shutdownNow();
+        }
+        System.out.println("\rProcessed " + totalItems + " library items...");
+        System.out.println("Finished processing library items.");
+        return totalItems;
+    }
+
+    private static Future<GooglePhotosAPI.MediaItemsResult> fetch(ExecutorService fetcher, GooglePhotosAPI api,
+            String pageToken) {
+        return fetcher.submit(() -> api.listMediaItems(pageToken));
+    }
+
+    private static GooglePhotosAPI.MediaItemsResult await(Future<GooglePhotosAPI.MediaItemsResult> page)
+            throws IOException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing library", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Error listing library", e.getCause());
+        }
+    }
+
+    private void truncateTo(long dataLength) throws IOException {
+        if (!Files.exists(dataFile) || Files.size(dataFile) <= dataLength) {
+            return;
+        }
+        logger.info("Discarding {} bytes of {} written after the last checkpoint",
+                Files.size(dataFile) - dataLength, dataFile);
+        SegmentedDump.truncate(dataFile, dataLength);
+    }
+
+    /**
+     * Reads the checkpoint: page token on the first line, empty for the start of the listing,
+     * data file length on the second.
+     * A token file without the length (older versions) resumes without truncating.
+     */
+    private Checkpoint loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(checkpointFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        String pageToken = lines.get(0).trim();
+        long dataLength = -1;
+        if (lines.size() > 1) {
+            try {
+                dataLength = Long.parseLong(lines.get(1).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid data length in {}", checkpointFile);
+            }
+        }
+        if (pageToken.isEmpty() && dataLength < 0) {
+            return null;
+        }
+        return new Checkpoint(pageToken.isEmpty() ? null : pageToken, dataLength);
+    }
+
+    private void saveCheckpoint(Checkpoint checkpoint) throws IOException {
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        String pageToken = checkpoint.pageToken() != null ? checkpoint.pageToken() : "";
+        Files.write(tmp, List.of(pageToken, String.valueOf(checkpoint.dataLength())),
+                StandardCharsets.UTF_8);
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
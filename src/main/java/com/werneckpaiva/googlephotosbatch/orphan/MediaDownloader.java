@@ -0,0 +1,345 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads media items by ID into a folder.
+ * IDs are resolved in batches right before their downloads start, since base URLs expire after
+ * an hour; a download whose URL is rejected resolves its item again. Files are streamed to a
+ * .part file named after the item ID and resumed with an HTTP Range request when a previous run
+ * left one behind. Completed IDs are appended to the done file, so a rerun skips them.
+ */
+public class MediaDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaDownloader.class);
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final Pattern VIDEO_FILES_PATTERN = Pattern.compile("\\.(mp4|mov|m4v|avi|3gp|mkv|webm|mts)$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final int RESOLVE_BATCH_SIZE = 50;
+
+    private static final long TRANSFER_CHUNK_SIZE = 1 << 20;
+
+    public record Result(int downloaded, int skipped, int failed) {
+    }
+
+    private final Path outputDir;
+
+    private final Path doneFile;
+
+    private int concurrency = 4;
+
+    private int maxAttempts = 3;
+
+    private long retryDelayMs = 2000;
+
+    private int connectTimeoutMs = 30000;
+
+    private int readTimeoutMs = 60000;
+
+    private final Set<Path> reservedTargets = new HashSet<>();
+
+    private BufferedWriter doneWriter;
+
+    public MediaDownloader(Path outputDir, Path doneFile) {
+        this.outputDir = outputDir;
+        this.doneFile = doneFile;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public void setRetryDelayMs(long retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public void setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Reads media IDs, one per line, or from JSON: the orphan report (orphans[].id) or a JSON Lines
+     * dump of media items (id of each object). JSON is streamed, only the IDs are kept.
+     */
+    public static List<String> readIds(InputStream input) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(input, 1 << 16);
+        in.mark(1 << 16);
+        int b;
+        do {
+            b = in.read();
+        } while (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+        in.reset();
+        List<String> ids = new ArrayList<>();
+        if (b == '{') {
+            try (JsonParser parser = jsonFactory.createParser(in)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readObjectIds(parser, ids);
+                }
+            }
+            return ids;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                ids.add(line);
+            }
+        }
+        return ids;
+    }
+
+    private static void readObjectIds(JsonParser parser, List<String> ids) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                ids.add(parser.getText());
+            } else if ("orphans".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readObjectIds(parser, ids);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    public Result download(GooglePhotosAPI api, List<String> mediaIds) throws IOException {
+        Files.createDirectories(outputDir);
+        Set<String> done = loadDone();
+        List<String> pending = new ArrayList<>();
+        int skipped = 0;
+        for (String id : new LinkedHashSet<>(mediaIds)) {
+            if (done.contains(id)) {
+                skipped++;
+            } else {
+                pending.add(id);
+            }
+        }
+        logger.info("Downloading {} media items to {} ({} already done)", pending.size(), outputDir, skipped);
+
+        AtomicInteger downloaded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        // Keeps resolution just ahead of the downloads so that base URLs are fresh when used
+        Semaphore inFlight = new Semaphore(concurrency * 2);
+        doneWriter = Files.newBufferedWriter(doneFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        try {
+            for (int i = 0; i < pending.size(); i += RESOLVE_BATCH_SIZE) {
+                List<String> batch = pending.subList(i, Math.min(i + RESOLVE_BATCH_SIZE, pending.size()));
+                List<GooglePhotosAPI.MediaItemInfo> items = api.getMediaItems(batch);
+                if (items.size() < batch.size()) {
+                    Set<String> found = new HashSet<>();
+                    items.forEach(item -> found.add(item.id()));
+                    for (String id : batch) {
+                        if (!found.contains(id)) {
+                            logger.error("Media item {} not found", id);
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+                for (GooglePhotosAPI.MediaItemInfo item : items) {
+                    inFlight.acquire();
+                    pool.submit(() -> {
+                        try {
+                            if (downloadWithRetries(api, item)) {
+                                downloaded.incrementAndGet();
+                            } else {
+                                failed.incrementAndGet();
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading", e);
+        } finally {
+            pool.shutdownNow();
+            doneWriter.close();
+        }
+        return new Result(downloaded.get(), skipped, failed.get());
+    }
+
+    private boolean downloadWithRetries(GooglePhotosAPI api, GooglePhotosAPI.MediaItemInfo item) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                if (attempt > 1) {
+                    Thread.sleep(retryDelayMs * (1L << Math.min(attempt - 2, 5)));
+                }
+                Path target = downloadOnce(item);
+                if (target != null) {
+                    markDone(item, target);
+                    logger.info("Downloaded {} to {}", item.id(), target);
+                    return true;
+                }
+                // The base URL was rejected, it has probably expired
+                GooglePhotosAPI.MediaItemInfo refreshed = api.getMediaItem(item.id());
+                if (refreshed != null) {
+                    item = refreshed;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Error downloading {} (attempt {} of {}): {}", item.id(), attempt, maxAttempts,
+                        e.getMessage());
+            }
+        }
+        logger.error("Giving up on media item {} ({})", item.id(), item.filename());
+        return false;
+    }
+
+    /**
+     * Downloads the item, resuming its .part file. Returns the final file, or null when the server
+     * refused the base URL.
+     */
+    private Path downloadOnce(GooglePhotosAPI.MediaItemInfo item) throws IOException {
+        Path part = outputDir.resolve(item.id() + ".part");
+        long offset = Files.exists(part) ? Files.size(part) : 0;
+
+        HttpURLConnection connection = (HttpURLConnection) URI.create(downloadUrl(item)).toURL().openConnection();
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN
+                    || status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (status == 416 && offset > 0) {
+                // Nothing left after the offset: complete if the server agrees on the length
+                if (("bytes */" + offset).equals(connection.getHeaderField("Content-Range"))) {
+                    return complete(item, part);
+                }
+                Files.delete(part);
+                throw new IOException("Partial file larger than the media item, restarting");
+            }
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("HTTP " + status);
+            }
+            if (status == HttpURLConnection.HTTP_OK && offset > 0) {
+                logger.info("Server ignored the range request for {}, restarting", item.id());
+                offset = 0;
+            }
+            long expected = connection.getContentLengthLong();
+            try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    ReadableByteChannel in = Channels.newChannel(connection.getInputStream())) {
+                out.truncate(offset);
+                long position = offset;
+                long transferred;
+                while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                    position += transferred;
+                }
+                if (expected >= 0 && position - offset != expected) {
+                    throw new IOException("Connection closed after " + (position - offset) + " of " + expected
+                            + " bytes");
+                }
+                out.force(false);
+            }
+            return complete(item, part);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static String downloadUrl(GooglePhotosAPI.MediaItemInfo item) {
+        // =d downloads the original image, videos need =dv or a still frame is returned
+        boolean video = item.filename() != null && VIDEO_FILES_PATTERN.matcher(item.filename()).find();
+        return item.baseUrl() + (video ? "=dv" : "=d");
+    }
+
+    private Path complete(GooglePhotosAPI.MediaItemInfo item, Path part) throws IOException {
+        Path target = reserveTarget(item);
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * Picks the output file, adding part of the ID to the name when another item has the same filename.
+     */
+    private synchronized Path reserveTarget(GooglePhotosAPI.MediaItemInfo item) {
+        String filename = item.filename() == null || item.filename().isBlank() ? item.id()
+                : Path.of(item.filename().replace('\\', '/')).getFileName().toString();
+        Path target = outputDir.resolve(filename);
+        if (Files.exists(target) || reservedTargets.contains(target)) {
+            int dot = filename.lastIndexOf('.');
+            String suffix = "_" + item.id().substring(Math.max(0, item.id().length() - 8));
+            target = outputDir.resolve(dot > 0
+                    ? filename.substring(0, dot) + suffix + filename.substring(dot)
+                    : filename + suffix);
+        }
+        reservedTargets.add(target);
+        return target;
+    }
+
+    private synchronized void markDone(GooglePhotosAPI.MediaItemInfo item, Path target) throws IOException {
+        doneWriter.write(item.id() + "\t" + target.getFileName());
+        doneWriter.newLine();
+        doneWriter.flush();
+    }
+
+    private Set<String> loadDone() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(doneFile)) {
+            for (String line : Files.readAllLines(doneFile, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                String id = (tab >= 0 ? line.substring(0, tab) : line).trim();
+                if (!id.isEmpty()) {
+                    done.add(id);
+                }
+            }
+        }
+        return done;
+    }
+}
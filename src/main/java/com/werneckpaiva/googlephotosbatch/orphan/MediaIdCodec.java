@@ -0,0 +1,51 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Compact byte form of media IDs. Google media IDs are base64url text, so they are stored
+ * decoded (3 bytes for every 4 characters). IDs that don't survive the round trip are kept
+ * as UTF-8. A leading tag byte tells the two forms apart.
+ */
+public final class MediaIdCodec {
+
+    private static final byte BASE64 = 1;
+
+    private static final byte TEXT = 2;
+
+    private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    private MediaIdCodec() {
+    }
+
+    public static byte[] encode(String id) {
+        byte[] decoded = null;
+        if (id.indexOf('=') < 0) {
+            try {
+                decoded = decoder.decode(id);
+            } catch (IllegalArgumentException e) {
+                // Not base64url
+            }
+        }
+        if (decoded == null || !encoder.encodeToString(decoded).equals(id)) {
+            return tagged(TEXT, id.getBytes(StandardCharsets.UTF_8));
+        }
+        return tagged(BASE64, decoded);
+    }
+
+    public static String decode(byte[] encoded) {
+        byte[] body = Arrays.copyOfRange(encoded, 1, encoded.length);
+        return encoded[0] == BASE64 ? encoder.encodeToString(body) : new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] tagged(byte tag, byte[] body) {
+        byte[] encoded = new byte[body.length + 1];
+        encoded[0] = tag;
+        System.arraycopy(body, 0, encoded, 1, body.length);
+        return encoded;
+    }
+}
@@ -0,0 +1,235 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds library items that are in no album with bounded memory.
+ * Album media IDs and library items are fed to external sorters as compact keys, then both
+ * sorted streams are joined by merge. Dumps are read in any SegmentedDump format, segments in
+ * parallel when readerThreads allows. Orphans are written as soon as they are found (in ID
+ * order); the totals follow the orphans array since they are only known at the end.
+ */
+public class OrphanReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrphanReport.class);
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final byte[] NO_VALUE = new byte[0];
+
+    public record Summary(int totalAlbums, long totalLibraryItems, long totalUniqueItemsInAlbums,
+            long orphanCount) {
+    }
+
+    private record JoinResult(long uniqueAlbumIds, long orphans) {
+    }
+
+    private final long memoryLimitBytes;
+
+    private final Path tempDir;
+
+    private int readerThreads = 1;
+
+    /**
+     * @param memoryLimitBytes buffer budget of each of the two sorters
+     */
+    public OrphanReport(long memoryLimitBytes, Path tempDir) {
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.tempDir = tempDir;
+    }
+
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = readerThreads;
+    }
+
+    public Summary write(Path albumMediasFile, Path libraryMediasFile, OutputStream out) throws IOException {
+        try (ExternalSorter albumIds = new ExternalSorter(memoryLimitBytes, tempDir);
+                ExternalSorter libraryItems = new ExternalSorter(memoryLimitBytes, tempDir)) {
+            int totalAlbums = Files.exists(albumMediasFile)
+                    ? (int) readDump(albumMediasFile, albumIds, OrphanReport::readAlbumMedias)
+                    : 0;
+            long totalLibraryItems = readDump(libraryMediasFile, libraryItems, OrphanReport::readLibraryMedias);
+            logger.info("Sorting {} albums and {} library items ({} and {} runs spilled to disk)", totalAlbums,
+                    totalLibraryItems, albumIds.spilledRuns(), libraryItems.spilledRuns());
+
+            try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.useDefaultPrettyPrinter();
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("orphans");
+                JoinResult joined = join(albumIds.sorted(), libraryItems.sorted(), generator);
+                generator.writeEndArray();
+                Summary summary = new Summary(totalAlbums, totalLibraryItems, joined.uniqueAlbumIds(),
+                        joined.orphans());
+                generator.writeNumberField("totalAlbums", summary.totalAlbums());
+                generator.writeNumberField("totalLibraryItems", summary.totalLibraryItems());
+                generator.writeNumberField("totalUniqueItemsInAlbums", summary.totalUniqueItemsInAlbums());
+                generator.writeNumberField("orphanCount", summary.orphanCount());
+                generator.writeEndObject();
+                generator.flush();
+                return summary;
+            }
+        }
+    }
+
+    /**
+     * Merges the two sorted streams, writing library items missing from the album side.
+     */
+    private static JoinResult join(Iterator<ExternalSorter.Entry> albumIds,
+            Iterator<ExternalSorter.Entry> libraryItems, JsonGenerator generator) throws IOException {
+        long uniqueAlbumIds = 0;
+        long orphans = 0;
+        byte[] albumId = null;
+        byte[] lastLibraryId = null;
+        while (libraryItems.hasNext()) {
+            ExternalSorter.Entry item = libraryItems.next();
+            if (lastLibraryId != null && Arrays.equals(lastLibraryId, item.key())) {
+                continue;
+            }
+            lastLibraryId = item.key();
+            while (albumId == null || Arrays.compareUnsigned(albumId, item.key()) < 0) {
+                albumId = nextUnique(albumIds, albumId);
+                if (albumId == null) {
+                    break;
+                }
+                uniqueAlbumIds++;
+            }
+            if (albumId == null || !Arrays.equals(albumId, item.key())) {
+                generator.writeStartObject();
+                generator.writeStringField("id", MediaIdCodec.decode(item.key()));
+                generator.writeStringField("filename", new String(item.value(), StandardCharsets.UTF_8));
+                generator.writeEndObject();
+                orphans++;
+            }
+        }
+        while (albumId != null) {
+            albumId = nextUnique(albumIds, albumId);
+            if (albumId != null) {
+                uniqueAlbumIds++;
+            }
+        }
+        return new JoinResult(uniqueAlbumIds, orphans);
+    }
+
+    private static byte[] nextUnique(Iterator<ExternalSorter.Entry> sorted, byte[] previous) {
+        while (sorted.hasNext()) {
+            byte[] key = sorted.next().key();
+            if (previous == null || !Arrays.equals(previous, key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the object the parser is on, feeding the sorter only once the whole record was read.
+     */
+    @FunctionalInterface
+    private interface RecordReader {
+        void read(JsonParser parser, ExternalSorter sorter) throws IOException;
+    }
+
+    /**
+     * Feeds a dump to the sorter, whatever its format. Dumps whose segments cover the whole file
+     * are read one segment per task in parallel.
+     */
+    private long readDump(Path file, ExternalSorter sorter, RecordReader reader) throws IOException {
+        LongAdder records = new LongAdder();
+        List<SegmentedDump.Segment> segments = SegmentedDump.readSegments(file);
+        boolean segmented = segments != null && !segments.isEmpty()
+                && segments.get(segments.size() - 1).end() == Files.size(file);
+        if (!segmented || readerThreads <= 1) {
+            records.add(DumpRecords.read(file, () -> SegmentedDump.openRead(file),
+                    parser -> reader.read(parser, sorter)));
+            return records.sum();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(readerThreads, segments.size()));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (SegmentedDump.Segment segment : segments) {
+                tasks.add(pool.submit(() -> {
+                    records.add(DumpRecords.read(file, () -> SegmentedDump.openSegment(file, segment),
+                            parser -> reader.read(parser, sorter)));
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            return records.sum();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void readAlbumMedias(JsonParser parser, ExternalSorter albumIds) throws IOException {
+        List<byte[]> ids = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "files".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    String id = readStringFields(parser, "id")[0];
+                    if (id != null) {
+                        ids.add(MediaIdCodec.encode(id));
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        for (byte[] id : ids) {
+            albumIds.add(id, NO_VALUE);
+        }
+    }
+
+    private static void readLibraryMedias(JsonParser parser, ExternalSorter libraryItems) throws IOException {
+        String[] fields = readStringFields(parser, "id", "filename");
+        if (fields[0] != null) {
+            String filename = fields[1] != null ? fields[1] : "";
+            libraryItems.add(MediaIdCodec.encode(fields[0]), filename.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Reads the current object, keeping the requested string fields and skipping everything else.
+     */
+    private static String[] readStringFields(JsonParser parser, String... names) throws IOException {
+        String[] values = new String[names.length];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            int index = Arrays.asList(names).indexOf(field);
+            if (index >= 0 && value == JsonToken.VALUE_STRING) {
+                values[index] = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+}
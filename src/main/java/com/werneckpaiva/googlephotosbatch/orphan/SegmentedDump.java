@@ -0,0 +1,277 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only JSON Lines dump written in segments.
+ * A segment is a run of complete lines ended by commit(): in GZIP format each segment is one
+ * gzip member, so the file stays readable by zcat and any member can be decompressed on its own.
+ * Each commit is fsynced and recorded in a side file (offset, length, records), which lets
+ * readers split the work per segment and resumes cut the file back to a segment boundary.
+ * The format of an existing file is kept when appending and detected when reading.
+ */
+public class SegmentedDump implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedDump.class);
+
+    public enum Format {
+        JSONL, GZIP
+    }
+
+    public record Segment(long offset, long length, int records) {
+        public long end() {
+            return offset + length;
+        }
+    }
+
+    private final Path file;
+
+    private final Format format;
+
+    private final FileOutputStream out;
+
+    private BufferedWriter segmentWriter;
+
+    private long segmentStart;
+
+    private int segmentRecords;
+
+    private SegmentedDump(Path file, Format format) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.out = new FileOutputStream(file.toFile(), true);
+        this.segmentStart = out.getChannel().size();
+    }
+
+    /**
+     * Opens the dump for appending. A non-empty file keeps its format whatever is requested.
+     */
+    public static SegmentedDump openForAppend(Path file, Format requested) throws IOException {
+        Format existing = detect(file);
+        if (existing == null) {
+            Files.deleteIfExists(segmentsFile(file));
+        } else if (existing != requested) {
+            logger.info("{} is already in {} format, appending in that format", file, existing);
+        }
+        return new SegmentedDump(file, existing != null ? existing : requested);
+    }
+
+    /**
+     * Format of an existing dump, null if the file is missing or empty.
+     */
+    public static Format detect(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            int b1 = in.read();
+            int b2 = in.read();
+            return b1 == 0x1f && b2 == 0x8b ? Format.GZIP : Format.JSONL;
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void writeLine(String line) throws IOException {
+        if (segmentWriter == null) {
+            // The segment stream must not close the file when the segment ends
+            OutputStream segmentOut = new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            if (format == Format.GZIP) {
+                segmentOut = new GZIPOutputStream(segmentOut, 1 << 16);
+            }
+            segmentWriter = new BufferedWriter(new OutputStreamWriter(segmentOut, StandardCharsets.UTF_8), 1 << 16);
+        }
+        segmentWriter.write(line);
+        segmentWriter.newLine();
+        segmentRecords++;
+    }
+
+    /**
+     * Ends the current segment, fsyncs the file and records the segment. Returns the file length.
+     */
+    public long commit() throws IOException {
+        FileChannel channel = out.getChannel();
+        if (segmentWriter == null) {
+            return channel.size();
+        }
+        segmentWriter.close();
+        segmentWriter = null;
+        channel.force(false);
+        long end = channel.size();
+        Files.write(segmentsFile(file),
+                List.of(segmentStart + "\t" + (end - segmentStart) + "\t" + segmentRecords),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segmentStart = end;
+        segmentRecords = 0;
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            out.close();
+        }
+    }
+
+    public static Path segmentsFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".segments");
+    }
+
+    /**
+     * Committed segments that are fully present in the file, or null when the dump has no segment file
+     * (plain JSON Lines written by older versions).
+     */
+    public static List<Segment> readSegments(Path file) throws IOException {
+        Path segmentsFile = segmentsFile(file);
+        if (!Files.exists(segmentsFile)) {
+            return null;
+        }
+        long fileSize = Files.exists(file) ? Files.size(file) : 0;
+        List<Segment> segments = new ArrayList<>();
+        long expectedOffset = 0;
+        for (String line : Files.readAllLines(segmentsFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                break;
+            }
+            try {
+                Segment segment = new Segment(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        Integer.parseInt(fields[2]));
+                if (segment.end() > fileSize) {
+                    break;
+                }
+                if (segment.offset() == expectedOffset) {
+                    segments.add(segment);
+                    expectedOffset = segment.end();
+                } else if (segment.offset() > expectedOffset) {
+                    // Data written before the dump was segmented
+                    segments.add(new Segment(expectedOffset, segment.offset() - expectedOffset, -1));
+                    segments.add(segment);
+                    expectedOffset = segment.end();
+                }
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Cuts the dump and its segment file back to the given length.
+     */
+    public static void truncate(Path file, long length) throws IOException {
+        if (Files.exists(file) && Files.size(file) > length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+        Path segmentsFile = segmentsFile(file);
+        if (Files.exists(segmentsFile)) {
+            List<String> kept = new ArrayList<>();
+            for (String line : Files.readAllLines(segmentsFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                try {
+                    if (fields.length == 3 && Long.parseLong(fields[0]) + Long.parseLong(fields[1]) <= length) {
+                        kept.add(line);
+                    }
+                } catch (NumberFormatException e) {
+                    // Partially written last line
+                }
+            }
+            Files.write(segmentsFile, kept, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the whole dump as JSON Lines, whatever its format.
+     */
+    public static InputStream openRead(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        return detect(file) == Format.GZIP ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    /**
+     * Reads one segment as JSON Lines.
+     */
+    public static InputStream openSegment(Path file, Segment segment) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(segment.offset());
+        InputStream in = new BufferedInputStream(new BoundedInputStream(Channels.newInputStream(channel),
+                segment.length()), 1 << 16);
+        return detect(file) == Format.GZIP ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
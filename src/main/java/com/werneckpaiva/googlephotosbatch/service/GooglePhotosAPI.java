@@ -1,5 +1,7 @@
 package com.werneckpaiva.googlephotosbatch.service;
 
+import com.werneckpaiva.googlephotosbatch.exception.GooglePhotosServiceException;
+
 import java.io.File;
 import java.util.List;
 import java.util.Set;
@@ -12,16 +14,45 @@ public interface GooglePhotosAPI {
 
     void logout();
 
-    record MediaItemInfo(String id, String filename, String baseUrl) {
+    /**
+     * Refreshes the credentials of the running client, asking for a new
+     * authentication only if the refresh token is no longer valid.
+     */
+    void reauthenticate() throws GooglePhotosServiceException;
+
+    /**
+     * creationTime is the capture time as an ISO-8601 instant, null when unknown.
+     */
+    record MediaItemInfo(String id, String filename, String baseUrl, String creationTime) {
+        public MediaItemInfo(String id, String filename, String baseUrl) {
+            this(id, filename, baseUrl, null);
+        }
     }
 
     MediaItemInfo getMediaItem(String mediaId);
 
+    /**
+     * Looks up several media items at once, with fresh base URLs.
+     * Items that can't be found are left out of the result.
+     */
+    List<MediaItemInfo> getMediaItems(List<String> mediaIds);
+
     Set<MediaItemInfo> retrieveFilesFromAlbum(Album album);
 
     String uploadSingleFile(String name, File file);
 
-    void saveToAlbum(Album album, List<String> mediasUploaded);
+    /**
+     * Uploads sending chunkSize bytes per request. Implementations without chunked uploads ignore it.
+     */
+    default String uploadSingleFile(String name, File file, int chunkSize) {
+        return uploadSingleFile(name, file);
+    }
+
+    /**
+     * Creates the uploaded medias in the album. Returns how many of them weren't saved: rejected by
+     * the API, or in a batch given up after retries.
+     */
+    int saveToAlbum(Album album, List<String> mediasUploaded);
 
     Album createAlbum(String albumName);
 
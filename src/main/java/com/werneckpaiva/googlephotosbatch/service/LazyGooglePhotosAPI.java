@@ -0,0 +1,142 @@
+package com.werneckpaiva.googlephotosbatch.service;
+
+import com.werneckpaiva.googlephotosbatch.exception.GooglePhotosServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the real client on the first API call. Loading credentials, possibly asking for an
+ * authentication, and starting the gRPC transport only happen when there is work to do.
+ */
+public class LazyGooglePhotosAPI implements GooglePhotosAPI {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyGooglePhotosAPI.class);
+
+    @FunctionalInterface
+    public interface Factory {
+        GooglePhotosAPI create() throws GooglePhotosServiceException;
+    }
+
+    private final Factory factory;
+
+    private volatile GooglePhotosAPI delegate = null;
+
+    private volatile long initializationMs = -1;
+
+    public LazyGooglePhotosAPI(Factory factory) {
+        this.factory = factory;
+    }
+
+    public boolean isInitialized() {
+        return delegate != null;
+    }
+
+    /**
+     * Time taken to create the client, -1 if it wasn't needed.
+     */
+    public long getInitializationMs() {
+        return initializationMs;
+    }
+
+    private GooglePhotosAPI api() {
+        GooglePhotosAPI api = delegate;
+        if (api != null) {
+            return api;
+        }
+        try {
+            return initialize();
+        } catch (GooglePhotosServiceException e) {
+            throw new IllegalStateException("Can't initialize the Google Photos client", e);
+        }
+    }
+
+    private synchronized GooglePhotosAPI initialize() throws GooglePhotosServiceException {
+        if (delegate == null) {
+            long start = System.currentTimeMillis();
+            delegate = factory.create();
+            initializationMs = System.currentTimeMillis() - start;
+            logger.info("Google Photos client initialized in {} ms", initializationMs);
+        }
+        return delegate;
+    }
+
+    @Override
+    public void logout() {
+        if (delegate != null) {
+            delegate.logout();
+        }
+    }
+
+    @Override
+    public void reauthenticate() throws GooglePhotosServiceException {
+        if (delegate == null) {
+            initialize();
+        } else {
+            delegate.reauthenticate();
+        }
+    }
+
+    @Override
+    public MediaItemInfo getMediaItem(String mediaId) {
+        return api().getMediaItem(mediaId);
+    }
+
+    @Override
+    public List<MediaItemInfo> getMediaItems(List<String> mediaIds) {
+        return api().getMediaItems(mediaIds);
+    }
+
+    @Override
+    public Set<MediaItemInfo> retrieveFilesFromAlbum(Album album) {
+        return api().retrieveFilesFromAlbum(album);
+    }
+
+    @Override
+    public String uploadSingleFile(String name, File file) {
+        return api().uploadSingleFile(name, file);
+    }
+
+    @Override
+    public String uploadSingleFile(String name, File file, int chunkSize) {
+        return api().uploadSingleFile(name, file, chunkSize);
+    }
+
+    @Override
+    public int saveToAlbum(Album album, List<String> mediasUploaded) {
+        return api().saveToAlbum(album, mediasUploaded);
+    }
+
+    @Override
+    public Album createAlbum(String albumName) {
+        return api().createAlbum(albumName);
+    }
+
+    @Override
+    public Album getAlbum(String albumId) {
+        return api().getAlbum(albumId);
+    }
+
+    @Override
+    public Iterable<Album> getAllAlbums() {
+        return api().getAllAlbums();
+    }
+
+    @Override
+    public MediaItemsResult listMediaItems(String pageToken) {
+        return api().listMediaItems(pageToken);
+    }
+
+    @Override
+    public void batchAddMediaItems(String albumId, List<String> mediaItemIds) {
+        api().batchAddMediaItems(albumId, mediaItemIds);
+    }
+
+    @Override
+    public void updateMediaItemDescription(String mediaId, String description) {
+        api().updateMediaItemDescription(mediaId, description);
+    }
+}
@@ -0,0 +1,109 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the upload byte stream to a bytes per second rate shared by all uploaders.
+ * Uploaders reserve slices of at most SLICE_BYTES in turn, so concurrent uploads get equal
+ * shares. The rate follows a time-of-day schedule and can be replaced at runtime, through JMX
+ * as com.werneckpaiva.googlephotosbatch:type=BandwidthLimiter.
+ */
+public class BandwidthLimiter implements BandwidthLimiterMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+    public static final String OBJECT_NAME = "com.werneckpaiva.googlephotosbatch:type=BandwidthLimiter";
+
+    public static final int SLICE_BYTES = 64 * 1024;
+
+    private final Clock clock;
+
+    private volatile BandwidthSchedule schedule;
+
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    private long nextFreeNanos = System.nanoTime();
+
+    public BandwidthLimiter(BandwidthSchedule schedule) {
+        this(schedule, Clock.systemDefaultZone());
+    }
+
+    BandwidthLimiter(BandwidthSchedule schedule, Clock clock) {
+        this.schedule = schedule;
+        this.clock = clock;
+    }
+
+    /**
+     * Blocks until the caller may send this many bytes.
+     */
+    public void acquire(int bytes) {
+        bytesTransferred.addAndGet(bytes);
+        double bytesPerSecond = getCurrentBytesPerSecond();
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFreeNanos);
+            nextFreeNanos = slot + (long) (bytes * (TimeUnit.SECONDS.toNanos(1) / bytesPerSecond));
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public String getSchedule() {
+        return schedule.toString();
+    }
+
+    @Override
+    public void setSchedule(String schedule) {
+        this.schedule = BandwidthSchedule.parse(schedule);
+        synchronized (this) {
+            // Reservations made at the old rate don't delay the new one
+            nextFreeNanos = System.nanoTime();
+        }
+        logger.info("Upload bandwidth schedule set to {}", schedule);
+    }
+
+    @Override
+    public double getCurrentBytesPerSecond() {
+        return schedule.bytesPerSecond(LocalTime.now(clock));
+    }
+
+    @Override
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+    public void registerJmx() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+            logger.info("Upload bandwidth limiter registered in JMX as {}", OBJECT_NAME);
+        } catch (JMException e) {
+            logger.error("Couldn't register the upload bandwidth limiter in JMX", e);
+        }
+    }
+}
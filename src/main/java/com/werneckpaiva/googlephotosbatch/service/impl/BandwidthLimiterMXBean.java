@@ -0,0 +1,15 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+public interface BandwidthLimiterMXBean {
+
+    String getSchedule();
+
+    /**
+     * Replaces the schedule, see BandwidthSchedule for the syntax.
+     */
+    void setSchedule(String schedule);
+
+    double getCurrentBytesPerSecond();
+
+    long getBytesTransferred();
+}
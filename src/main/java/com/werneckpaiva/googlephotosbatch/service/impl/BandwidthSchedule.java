@@ -0,0 +1,106 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Upload bandwidth by time of day, parsed from comma separated rules: "HH:mm-HH:mm=RATE" for a
+ * time range, where the first matching range wins, and a bare "RATE" for the rest of the day.
+ * Rates are bytes per second with an optional K, M or G suffix (powers of 1000), 0 is unlimited.
+ * A range ending before it starts spans midnight.
+ * Example: "09:00-18:00=5M,20M" is 5 MB/s during office hours and 20 MB/s otherwise.
+ */
+public final class BandwidthSchedule {
+
+    public static final BandwidthSchedule UNLIMITED = new BandwidthSchedule(List.of(), 0, "0");
+
+    private static final Pattern RATE_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([KMG]?)(?:B(?:/S)?)?");
+
+    private record Rule(LocalTime start, LocalTime end, double bytesPerSecond) {
+        boolean matches(LocalTime time) {
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private final double defaultBytesPerSecond;
+
+    private final String spec;
+
+    private BandwidthSchedule(List<Rule> rules, double defaultBytesPerSecond, String spec) {
+        this.rules = rules;
+        this.defaultBytesPerSecond = defaultBytesPerSecond;
+        this.spec = spec;
+    }
+
+    public static BandwidthSchedule parse(String spec) {
+        List<Rule> rules = new ArrayList<>();
+        double defaultRate = 0;
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                defaultRate = parseRate(part);
+                continue;
+            }
+            String[] range = part.substring(0, equals).split("-");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Invalid time range: " + part);
+            }
+            try {
+                rules.add(new Rule(LocalTime.parse(range[0].trim()), LocalTime.parse(range[1].trim()),
+                        parseRate(part.substring(equals + 1))));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid time range: " + part);
+            }
+        }
+        return new BandwidthSchedule(List.copyOf(rules), defaultRate, spec.trim());
+    }
+
+    static double parseRate(String rate) {
+        String normalized = rate.trim().toUpperCase(Locale.ROOT);
+        if (normalized.equals("UNLIMITED")) {
+            return 0;
+        }
+        Matcher matcher = RATE_PATTERN.matcher(normalized);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid rate: " + rate);
+        }
+        double multiplier = switch (matcher.group(2)) {
+            case "K" -> 1e3;
+            case "M" -> 1e6;
+            case "G" -> 1e9;
+            default -> 1;
+        };
+        return Double.parseDouble(matcher.group(1)) * multiplier;
+    }
+
+    /**
+     * Bytes per second allowed at this time of day, 0 when unlimited.
+     */
+    public double bytesPerSecond(LocalTime time) {
+        for (Rule rule : rules) {
+            if (rule.matches(time)) {
+                return rule.bytesPerSecond();
+            }
+        }
+        return defaultBytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -11,13 +11,18 @@ import com.google.api.client.json.JsonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.core.ApiFuture;
 import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
 import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ResourceExhaustedException;
 import com.google.auth.Credentials;
 import com.google.auth.oauth2.UserCredentials;
 import com.google.common.collect.ImmutableList;
 import com.google.photos.library.v1.PhotosLibraryClient;
 import com.google.photos.library.v1.PhotosLibrarySettings;
 import com.google.photos.library.v1.internal.InternalPhotosLibraryClient;
+import com.google.photos.library.v1.internal.InternalPhotosLibrarySettings;
 import com.google.photos.library.v1.proto.*;
 import com.google.photos.library.v1.upload.UploadMediaItemRequest;
 import com.google.photos.library.v1.upload.UploadMediaItemResponse;
@@ -32,12 +37,15 @@ import com.werneckpaiva.googlephotosbatch.exception.GooglePhotosServiceException
 import java.io.*;
 import java.net.URL;
 import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,11 +55,29 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
 
     private final PhotosLibraryClient photosLibraryClient;
 
+    private final URL credentialsURL;
+
+    private final RefreshingCredentials credentials;
+
+    private final File credentialsDir;
+
+    private RequestRateLimiter rateLimiter = RequestRateLimiter.UNLIMITED;
+
+    private BandwidthLimiter bandwidthLimiter = null;
+
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
     private final int ALBUM_BATCH_SIZE = 10;
 
-    private static final File CREDENTIALS_DATA_FILE = new File("credentials");
+    // Largest page accepted by mediaItems.list
+    private static final int LIST_MEDIA_ITEMS_PAGE_SIZE = 100;
+
+    // Largest batches accepted by mediaItems.batchGet and albums.batchAddMediaItems
+    private static final int BATCH_GET_MEDIA_ITEMS_SIZE = 50;
+
+    private static final int BATCH_ADD_MEDIA_ITEMS_SIZE = 50;
+
+    public static final File DEFAULT_CREDENTIALS_DIR = new File("credentials");
 
     private static final Logger logger = LoggerFactory.getLogger(GooglePhotosAPIV1LibraryImpl.class);
 
@@ -60,25 +86,58 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
             "https://www.googleapis.com/auth/photoslibrary.appendonly");
 
     public GooglePhotosAPIV1LibraryImpl(PhotosLibraryClient photosLibraryClient) {
+        this(photosLibraryClient, null);
+    }
+
+    GooglePhotosAPIV1LibraryImpl(PhotosLibraryClient photosLibraryClient, RefreshingCredentials credentials) {
         this.photosLibraryClient = photosLibraryClient;
+        this.credentialsURL = null;
+        this.credentials = credentials;
+        this.credentialsDir = DEFAULT_CREDENTIALS_DIR;
     }
 
     public GooglePhotosAPIV1LibraryImpl(URL credentialsURL) throws GooglePhotosServiceException {
-        this.photosLibraryClient = GooglePhotosAPIV1LibraryImpl.createPhotosLibraryClient(credentialsURL);
+        this(credentialsURL, TransportSettings.DEFAULT);
+    }
+
+    public GooglePhotosAPIV1LibraryImpl(URL credentialsURL, TransportSettings transportSettings)
+            throws GooglePhotosServiceException {
+        this(credentialsURL, transportSettings, DEFAULT_CREDENTIALS_DIR);
+    }
+
+    /**
+     * Client storing its tokens in credentialsDir, so clients of several accounts can run side by side.
+     */
+    public GooglePhotosAPIV1LibraryImpl(URL credentialsURL, TransportSettings transportSettings, File credentialsDir)
+            throws GooglePhotosServiceException {
+        this.credentialsURL = credentialsURL;
+        this.credentialsDir = credentialsDir;
+        this.credentials = new RefreshingCredentials(loadCredentials(credentialsURL, credentialsDir));
+        this.photosLibraryClient = GooglePhotosAPIV1LibraryImpl.createPhotosLibraryClient(credentials,
+                transportSettings);
     }
 
-    private static PhotosLibraryClient createPhotosLibraryClient(URL credentialsURL)
+    private static Credentials loadCredentials(URL credentialsURL, File credentialsDir)
             throws GooglePhotosServiceException {
+        try {
+            return GooglePhotosAPIV1LibraryImpl.loadUserCredentials(credentialsURL, credentialsDir);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new GooglePhotosServiceException("Can't create Google Photos credential", e);
+        }
+    }
+
+    private static PhotosLibraryClient createPhotosLibraryClient(Credentials credentials,
+            TransportSettings transportSettings) throws GooglePhotosServiceException {
         PhotosLibrarySettings settings = null;
         try {
-            Credentials credentials = GooglePhotosAPIV1LibraryImpl.loadUserCredentials(credentialsURL);
-            settings = PhotosLibrarySettings
+            PhotosLibrarySettings.Builder settingsBuilder = PhotosLibrarySettings
                     .newBuilder()
                     .setCredentialsProvider(
-                            FixedCredentialsProvider.create(credentials))
-                    .build();
-        } catch (IOException | GeneralSecurityException e) {
-            throw new GooglePhotosServiceException("Can't create Google Photos credential", e);
+                            FixedCredentialsProvider.create(credentials));
+            applyTransportSettings(settingsBuilder, transportSettings);
+            settings = settingsBuilder.build();
+        } catch (IOException e) {
+            throw new GooglePhotosServiceException("Can't create Google Photos settings", e);
         }
         try {
             return PhotosLibraryClient.initialize(settings);
@@ -87,18 +146,93 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         }
     }
 
+    private static void applyTransportSettings(PhotosLibrarySettings.Builder settingsBuilder,
+            TransportSettings transportSettings) {
+        if (transportSettings.hasChannelSettings()) {
+            InstantiatingGrpcChannelProvider.Builder channelBuilder = InternalPhotosLibrarySettings
+                    .defaultGrpcTransportProviderBuilder();
+            if (transportSettings.channelPoolSize() > 0) {
+                // Spread concurrent calls over several HTTP/2 connections instead of multiplexing on one
+                channelBuilder.setChannelPoolSettings(
+                        ChannelPoolSettings.staticallySized(transportSettings.channelPoolSize()));
+            }
+            if (transportSettings.keepAliveTime() != null) {
+                channelBuilder.setKeepAliveTimeDuration(transportSettings.keepAliveTime());
+                channelBuilder.setKeepAliveWithoutCalls(true);
+            }
+            if (transportSettings.keepAliveTimeout() != null) {
+                channelBuilder.setKeepAliveTimeoutDuration(transportSettings.keepAliveTimeout());
+            }
+            if (transportSettings.maxInboundMessageSize() > 0) {
+                channelBuilder.setMaxInboundMessageSize(transportSettings.maxInboundMessageSize());
+            }
+            settingsBuilder.setTransportChannelProvider(channelBuilder.build());
+        }
+        if (transportSettings.executorThreads() > 0) {
+            settingsBuilder.setBackgroundExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+                    .setExecutorThreadCount(transportSettings.executorThreads())
+                    .build());
+        }
+        if (transportSettings.maxUploadConnections() > 0) {
+            // Uploads go through an HTTP client built from system properties, keep its connections alive
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(transportSettings.maxUploadConnections()));
+        }
+        logger.info("Transport settings: {}", transportSettings);
+    }
+
+    /**
+     * Limits the requests of this client, one permit per request: album scans, library listings,
+     * batch lookups or edits, uploads, album creations and saves.
+     */
+    public void setRateLimiter(RequestRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Limits the bytes per second read from files being uploaded, shared by all uploaders.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
     public void logout() {
         if (photosLibraryClient != null) {
             photosLibraryClient.close();
         }
-        if (CREDENTIALS_DATA_FILE.exists()) {
-            deleteFolder(CREDENTIALS_DATA_FILE);
+        if (credentials != null) {
+            credentials.close();
+        }
+        deleteStoredCredentials();
+    }
+
+    private void deleteStoredCredentials() {
+        if (credentialsDir.exists()) {
+            deleteFolder(credentialsDir);
             logger.info("Logged out successfully. Credentials deleted.");
         } else {
             logger.info("No credentials found to delete.");
         }
     }
 
+    @Override
+    public void reauthenticate() throws GooglePhotosServiceException {
+        if (credentials == null) {
+            throw new GooglePhotosServiceException("Client was created without credentials",
+                    new IllegalStateException());
+        }
+        if (credentials.tryRefresh()) {
+            return;
+        }
+        logger.info("Refresh token is no longer valid. New authentication required");
+        deleteStoredCredentials();
+        credentials.swap(loadCredentials(credentialsURL, credentialsDir));
+    }
+
+    private boolean refreshAfterAuthError(Throwable e) {
+        return isAuthError(e) && credentials != null && credentials.tryRefresh();
+    }
+
     private void deleteFolder(File folder) {
         File[] files = folder.listFiles();
         if (files != null) {
@@ -113,7 +247,8 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         folder.delete();
     }
 
-    private static Credentials loadUserCredentials(URL credentialsURL) throws IOException, GeneralSecurityException {
+    private static Credentials loadUserCredentials(URL credentialsURL, File credentialsDir)
+            throws IOException, GeneralSecurityException {
         InputStream credentialsInputStream = credentialsURL.openStream();
         assert credentialsInputStream != null;
         GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY,
@@ -121,7 +256,7 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         String clientId = clientSecrets.getDetails().getClientId();
         String clientSecret = clientSecrets.getDetails().getClientSecret();
 
-        FileDataStoreFactory credentialsDataStore = new FileDataStoreFactory(CREDENTIALS_DATA_FILE);
+        FileDataStoreFactory credentialsDataStore = new FileDataStoreFactory(credentialsDir);
         GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
                 GoogleNetHttpTransport.newTrustedTransport(),
                 JSON_FACTORY,
@@ -155,29 +290,74 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         byte retry = 0;
         while (retry++ < 100) {
             try {
-                InternalPhotosLibraryClient.SearchMediaItemsPagedResponse response = photosLibraryClient
-                        .searchMediaItems(album.id());
-                return StreamSupport.stream(response.iterateAll().spliterator(), false)
-                        .map(mediaItem -> new MediaItemInfo(mediaItem.getId(), mediaItem.getFilename(),
-                                mediaItem.getBaseUrl()))
-                        .collect(Collectors.toSet());
+                Set<MediaItemInfo> medias = new HashSet<>();
+                rateLimiter.acquire();
+                InternalPhotosLibraryClient.SearchMediaItemsPage page = photosLibraryClient
+                        .searchMediaItems(album.id()).getPage();
+                while (true) {
+                    for (MediaItem mediaItem : page.getValues()) {
+                        medias.add(toMediaItemInfo(mediaItem));
+                    }
+                    if (!page.hasNextPage()) {
+                        return medias;
+                    }
+                    rateLimiter.acquire();
+                    page = page.getNextPage();
+                }
             } catch (RuntimeException e) {
-                if (isAuthError(e)) {
+                if (isAuthError(e) && !refreshAfterAuthError(e)) {
                     throw e;
                 }
                 logger.error("Error: {} retry {}", e.getMessage(), retry);
+                if (e instanceof ResourceExhaustedException) {
+                    backOff(retry);
+                }
             }
         }
         throw new RuntimeException("Couldn't retrieve medias from album " + album.title());
     }
 
+    /**
+     * Quota errors don't go away by retrying right away: wait 1s, 2s, 4s... up to a minute.
+     */
+    private static void backOff(int retry) {
+        try {
+            Thread.sleep(Math.min(60000L, 1000L << Math.min(retry - 1, 6)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
     public String uploadSingleFile(String mediaName, File file) {
-        logger.info("Uploading {}", mediaName);
+        return uploadSingleFile(mediaName, file, 0);
+    }
+
+    @Override
+    public String uploadSingleFile(String mediaName, File file, int chunkSize) {
         try {
-            UploadMediaItemRequest uploadRequest = UploadMediaItemRequest.newBuilder()
+            return uploadSingleFileOnce(mediaName, file, chunkSize);
+        } catch (RuntimeException e) {
+            if (refreshAfterAuthError(e)) {
+                logger.info("Retrying upload of {} with refreshed credentials", mediaName);
+                return uploadSingleFileOnce(mediaName, file, chunkSize);
+            }
+            throw e;
+        }
+    }
+
+    private String uploadSingleFileOnce(String mediaName, File file, int chunkSize) {
+        logger.info("Uploading {}", mediaName);
+        rateLimiter.acquire();
+        try (RandomAccessFile dataFile = bandwidthLimiter == null ? new RandomAccessFile(file, "r")
+                : new ThrottledRandomAccessFile(file, bandwidthLimiter)) {
+            UploadMediaItemRequest.Builder uploadRequestBuilder = UploadMediaItemRequest.newBuilder()
                     .setFileName(mediaName)
-                    .setDataFile(new RandomAccessFile(file, "r"))
-                    .build();
+                    .setDataFile(dataFile);
+            if (chunkSize > 0) {
+                uploadRequestBuilder.setChunkSize(chunkSize);
+            }
+            UploadMediaItemRequest uploadRequest = uploadRequestBuilder.build();
             UploadMediaItemResponse uploadResponse = photosLibraryClient.uploadMediaItem(uploadRequest);
             if (uploadResponse.getError().isPresent()) {
                 UploadMediaItemResponse.Error error = uploadResponse.getError().get();
@@ -200,6 +380,7 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         while (retries++ < 3) {
             try {
                 try {
+                    rateLimiter.acquire();
                     com.google.photos.types.proto.Album googleAlbum = photosLibraryClient.createAlbum(albumName)
                             .toBuilder().setIsWriteable(true).build();
                     return googleAlbum2Album(googleAlbum);
@@ -218,25 +399,26 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
         return null;
     }
 
-    public void saveToAlbum(Album album, List<String> uploadedTokens) {
-        if (uploadedTokens.isEmpty())
-            return;
-        for (int i = 0; i <= uploadedTokens.size() / ALBUM_BATCH_SIZE; i++) {
-            int fromIndex = i * ALBUM_BATCH_SIZE;
-            if (fromIndex >= uploadedTokens.size())
-                return;
-            int toIndex = Math.min((i + 1) * ALBUM_BATCH_SIZE, uploadedTokens.size());
-            saveToAlbumInIdealBatchSize(album, uploadedTokens.subList(fromIndex, toIndex));
+    public int saveToAlbum(Album album, List<String> uploadedTokens) {
+        int failed = 0;
+        for (int fromIndex = 0; fromIndex < uploadedTokens.size(); fromIndex += ALBUM_BATCH_SIZE) {
+            int toIndex = Math.min(fromIndex + ALBUM_BATCH_SIZE, uploadedTokens.size());
+            failed += saveToAlbumInIdealBatchSize(album, uploadedTokens.subList(fromIndex, toIndex));
         }
+        return failed;
     }
 
-    private void saveToAlbumInIdealBatchSize(Album album, List<String> uploadedTokens) {
+    /**
+     * Returns how many of the medias weren't saved.
+     */
+    private int saveToAlbumInIdealBatchSize(Album album, List<String> uploadedTokens) {
         int retries = 0;
         List<NewMediaItem> mediasUploaded = uploadedTokens.stream()
                 .map(token -> NewMediaItemFactory.createNewMediaItem(token)).collect(Collectors.toList());
         while (retries++ < 3) {
             try {
                 try {
+                    rateLimiter.acquire();
                     BatchCreateMediaItemsRequest albumMediaItemsRequest = BatchCreateMediaItemsRequest.newBuilder()
                             .setAlbumId(album.id())
                             .addAllNewMediaItems(mediasUploaded)
@@ -247,13 +429,15 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
                     BatchCreateMediaItemsResponse mediasToAlbumResponse = apiFuture.get();
                     List<NewMediaItemResult> newMediaItemResultsList = mediasToAlbumResponse
                             .getNewMediaItemResultsList();
+                    int failed = 0;
                     for (NewMediaItemResult itemsResponse : newMediaItemResultsList) {
                         Status status = itemsResponse.getStatus();
                         if (status.getCode() != Code.OK_VALUE) {
                             logger.error("Error setting item to album: {} - {}", status.getCode(), status.getMessage());
+                            failed++;
                         }
                     }
-                    break;
+                    return failed;
                 } catch (ExecutionException e) {
                     if (isAuthError(e)) {
                         throw new RuntimeException(e);
@@ -263,13 +447,15 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
                 }
             } catch (InterruptedException ex) {
                 logger.error("Retry waiting interrupted");
-                return;
+                return uploadedTokens.size();
             }
         }
+        return uploadedTokens.size();
     }
 
     public Album getAlbum(String albumId) {
         try {
+            rateLimiter.acquire();
             com.google.photos.types.proto.Album googleAlbum = photosLibraryClient.getAlbum(albumId);
             return googleAlbum2Album(googleAlbum);
         } catch (ApiException e) {
@@ -286,38 +472,57 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
                 .setExcludeNonAppCreatedData(false)
                 .setPageSize(50)
                 .build();
-        InternalPhotosLibraryClient.ListAlbumsPagedResponse listAlbumsResponse = photosLibraryClient
-                .listAlbums(listAlbumsRequest);
-        Iterable<com.google.photos.types.proto.Album> albumsIterable = listAlbumsResponse.iterateAll();
-        return () -> {
-            Iterator<com.google.photos.types.proto.Album> iterator = albumsIterable.iterator();
-
-            return new Iterator<Album>() {
-
-                @Override
-                public boolean hasNext() {
-                    return iterator.hasNext();
+        rateLimiter.acquire();
+        InternalPhotosLibraryClient.ListAlbumsPage firstPage = photosLibraryClient
+                .listAlbums(listAlbumsRequest).getPage();
+        return () -> new Iterator<Album>() {
+
+            private InternalPhotosLibraryClient.ListAlbumsPage page = firstPage;
+
+            private Iterator<com.google.photos.types.proto.Album> iterator = firstPage.getValues().iterator();
+
+            @Override
+            public boolean hasNext() {
+                // Pages are fetched as the albums are read, each one taking a permit
+                while (!iterator.hasNext() && page.hasNextPage()) {
+                    rateLimiter.acquire();
+                    page = page.getNextPage();
+                    iterator = page.getValues().iterator();
                 }
+                return iterator.hasNext();
+            }
 
-                @Override
-                public Album next() {
-                    com.google.photos.types.proto.Album googleAlbum = iterator.next();
-                    return googleAlbum2Album(googleAlbum);
+            @Override
+            public Album next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
-            };
+                return googleAlbum2Album(iterator.next());
+            }
         };
     }
 
+    private static MediaItemInfo toMediaItemInfo(MediaItem mediaItem) {
+        String creationTime = null;
+        if (mediaItem.hasMediaMetadata() && mediaItem.getMediaMetadata().hasCreationTime()) {
+            com.google.protobuf.Timestamp timestamp = mediaItem.getMediaMetadata().getCreationTime();
+            creationTime = Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos()).toString();
+        }
+        return new MediaItemInfo(mediaItem.getId(), mediaItem.getFilename(), mediaItem.getBaseUrl(), creationTime);
+    }
+
     public static Album googleAlbum2Album(com.google.photos.types.proto.Album googleAlbum) {
         return new Album(googleAlbum.getTitle(), googleAlbum.getId(), googleAlbum.getIsWriteable());
     }
 
     @Override
     public MediaItemsResult listMediaItems(String pageToken) {
-        ListMediaItemsRequest.Builder requestBuilder = ListMediaItemsRequest.newBuilder();
+        ListMediaItemsRequest.Builder requestBuilder = ListMediaItemsRequest.newBuilder()
+                .setPageSize(LIST_MEDIA_ITEMS_PAGE_SIZE);
         if (pageToken != null && !pageToken.isEmpty()) {
             requestBuilder.setPageToken(pageToken);
         }
+        rateLimiter.acquire();
         InternalPhotosLibraryClient.ListMediaItemsPagedResponse response = photosLibraryClient
                 .listMediaItems(requestBuilder.build());
 
@@ -335,7 +540,7 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
                 @Override
                 public MediaItemInfo next() {
                     MediaItem mediaItem = iterator.next();
-                    return new MediaItemInfo(mediaItem.getId(), mediaItem.getFilename(), mediaItem.getBaseUrl());
+                    return toMediaItemInfo(mediaItem);
                 }
             };
         };
@@ -345,48 +550,88 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
     @Override
     public MediaItemInfo getMediaItem(String mediaId) {
         try {
+            rateLimiter.acquire();
             MediaItem mediaItem = photosLibraryClient.getMediaItem(mediaId);
-            return new MediaItemInfo(mediaItem.getId(), mediaItem.getFilename(), mediaItem.getBaseUrl());
+            return toMediaItemInfo(mediaItem);
         } catch (Exception e) {
             logger.error("Error getting media item {}", mediaId, e);
             throw new RuntimeException("Could not retrieve media item " + mediaId, e);
         }
     }
 
+    @Override
+    public List<MediaItemInfo> getMediaItems(List<String> mediaIds) {
+        List<MediaItemInfo> items = new ArrayList<>(mediaIds.size());
+        for (int i = 0; i < mediaIds.size(); i += BATCH_GET_MEDIA_ITEMS_SIZE) {
+            List<String> batch = mediaIds.subList(i, Math.min(i + BATCH_GET_MEDIA_ITEMS_SIZE, mediaIds.size()));
+            for (MediaItemResult result : batchGetMediaItems(batch).getMediaItemResultsList()) {
+                if (result.hasMediaItem()) {
+                    items.add(toMediaItemInfo(result.getMediaItem()));
+                } else {
+                    logger.warn("Media item not found: {} - {}", result.getStatus().getCode(),
+                            result.getStatus().getMessage());
+                }
+            }
+        }
+        return items;
+    }
+
+    private BatchGetMediaItemsResponse batchGetMediaItems(List<String> mediaIds) {
+        int retry = 0;
+        while (true) {
+            try {
+                rateLimiter.acquire();
+                return photosLibraryClient.batchGetMediaItems(mediaIds);
+            } catch (ApiException e) {
+                if (isAuthError(e) && !refreshAfterAuthError(e)) {
+                    throw e;
+                }
+                if (++retry >= 5) {
+                    throw e;
+                }
+                logger.error("Error getting media items: {} retry {}", e.getMessage(), retry);
+                backOff(retry);
+            }
+        }
+    }
+
+    /**
+     * Adds existing media items to an album, 50 per request.
+     * Throws when a batch still fails after the retries: items of earlier batches stay added.
+     */
     @Override
     public void batchAddMediaItems(String albumId, List<String> mediaItemIds) {
         if (mediaItemIds.isEmpty())
             return;
 
-        for (int i = 0; i < mediaItemIds.size(); i += ALBUM_BATCH_SIZE) {
-            int toIndex = Math.min(i + ALBUM_BATCH_SIZE, mediaItemIds.size());
+        for (int i = 0; i < mediaItemIds.size(); i += BATCH_ADD_MEDIA_ITEMS_SIZE) {
+            int toIndex = Math.min(i + BATCH_ADD_MEDIA_ITEMS_SIZE, mediaItemIds.size());
             List<String> batch = mediaItemIds.subList(i, toIndex);
             batchAddMediaItemsBatch(albumId, batch);
         }
     }
 
     private void batchAddMediaItemsBatch(String albumId, List<String> mediaItemIds) {
-        int retries = 0;
-        while (retries++ < 3) {
+        int retry = 0;
+        while (true) {
             try {
-                try {
-                    BatchAddMediaItemsToAlbumRequest request = BatchAddMediaItemsToAlbumRequest.newBuilder()
-                            .setAlbumId(albumId)
-                            .addAllMediaItemIds(mediaItemIds)
-                            .build();
-                    photosLibraryClient.batchAddMediaItemsToAlbum(request);
-                    break;
-                } catch (ApiException e) {
-                    if (isAuthError(e)) {
-                        throw e;
-                    }
-                    logger.error("Error adding items to album {}, retrying after 5s...", albumId, e);
-                    Thread.sleep(5000);
-                }
-            } catch (InterruptedException ex) {
-                logger.error("Retry waiting interrupted");
-                Thread.currentThread().interrupt();
+                BatchAddMediaItemsToAlbumRequest request = BatchAddMediaItemsToAlbumRequest.newBuilder()
+                        .setAlbumId(albumId)
+                        .addAllMediaItemIds(mediaItemIds)
+                        .build();
+                rateLimiter.acquire();
+                photosLibraryClient.batchAddMediaItemsToAlbum(request);
                 return;
+            } catch (ApiException e) {
+                if (isAuthError(e) && !refreshAfterAuthError(e)) {
+                    throw e;
+                }
+                if (++retry >= 3) {
+                    throw new RuntimeException("Couldn't add " + mediaItemIds.size() + " items to album " + albumId,
+                            e);
+                }
+                logger.error("Error adding items to album {}: {} retry {}", albumId, e.getMessage(), retry);
+                backOff(retry);
             }
         }
     }
@@ -403,19 +648,32 @@ public class GooglePhotosAPIV1LibraryImpl implements GooglePhotosAPI {
 
     @Override
     public void updateMediaItemDescription(String mediaId, String description) {
-        try {
-            MediaItem mediaItem = MediaItem.newBuilder()
-                    .setId(mediaId)
-                    .setDescription(description)
-                    .build();
-            com.google.protobuf.FieldMask fieldMask = com.google.protobuf.FieldMask.newBuilder()
-                    .addPaths("description")
-                    .build();
-            photosLibraryClient.updateMediaItem(mediaItem, fieldMask);
-            logger.info("Updated description for media item {}", mediaId);
-        } catch (ApiException e) {
-            logger.error("Error updating media item description for {}", mediaId, e);
-            throw new RuntimeException("Could not update description for media item " + mediaId, e);
+        MediaItem mediaItem = MediaItem.newBuilder()
+                .setId(mediaId)
+                .setDescription(description)
+                .build();
+        com.google.protobuf.FieldMask fieldMask = com.google.protobuf.FieldMask.newBuilder()
+                .addPaths("description")
+                .build();
+        int retry = 0;
+        while (true) {
+            try {
+                rateLimiter.acquire();
+                photosLibraryClient.updateMediaItem(mediaItem, fieldMask);
+                logger.info("Updated description for media item {}", mediaId);
+                return;
+            } catch (ApiException e) {
+                boolean refreshed = refreshAfterAuthError(e);
+                if ((!refreshed && !e.isRetryable()) || ++retry >= 3) {
+                    logger.error("Error updating media item description for {}", mediaId, e);
+                    throw new RuntimeException("Could not update description for media item " + mediaId, e);
+                }
+                logger.warn("Error updating media item description for {}: {} retry {}", mediaId, e.getMessage(),
+                        retry);
+                if (!refreshed) {
+                    backOff(retry);
+                }
+            }
         }
     }
 
@@ -0,0 +1,158 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import com.google.auth.Credentials;
+import com.google.auth.RequestMetadataCallback;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credentials handed once to the PhotosLibraryClient.
+ * Refreshes the access token before it expires and lets the underlying
+ * credentials be swapped after a re-authentication, without rebuilding the client.
+ * Once the refresh token is rejected (invalid_grant), nothing is refreshed anymore until
+ * the credentials are swapped.
+ */
+public class RefreshingCredentials extends Credentials {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshingCredentials.class);
+
+    private static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long CHECK_INTERVAL_SECONDS = 60;
+
+    private volatile Credentials delegate;
+
+    private final transient ScheduledExecutorService refreshScheduler;
+
+    private final long checkIntervalMillis;
+
+    private transient ScheduledFuture<?> refreshTask = null;
+
+    public RefreshingCredentials(Credentials delegate) {
+        this(delegate, TimeUnit.SECONDS.toMillis(CHECK_INTERVAL_SECONDS));
+    }
+
+    RefreshingCredentials(Credentials delegate, long checkIntervalMillis) {
+        this.delegate = delegate;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "credentials-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRefresh();
+    }
+
+    public void swap(Credentials newDelegate) {
+        logger.info("Swapping credentials");
+        this.delegate = newDelegate;
+        scheduleRefresh();
+    }
+
+    private synchronized void scheduleRefresh() {
+        if ((refreshTask == null || refreshTask.isDone()) && !refreshScheduler.isShutdown()) {
+            refreshTask = refreshScheduler.scheduleWithFixedDelay(this::refreshIfExpiring,
+                    checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized boolean isRefreshScheduled() {
+        return refreshTask != null && !refreshTask.isDone();
+    }
+
+    /**
+     * Forces a new access token.
+     * Returns false when the refresh token can't be used anymore (e.g. revoked).
+     */
+    public boolean tryRefresh() {
+        try {
+            delegate.refresh();
+            logger.info("Access token refreshed");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            if (isInvalidGrant(e) && stopRefreshing()) {
+                logger.error("Refresh token is no longer valid, access tokens won't be refreshed until a new "
+                        + "authentication: {}", e.getMessage());
+            } else {
+                logger.warn("Couldn't refresh access token: {}", e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    // True if the scheduled refresh was running
+    private synchronized boolean stopRefreshing() {
+        if (!isRefreshScheduled()) {
+            return false;
+        }
+        refreshTask.cancel(false);
+        return true;
+    }
+
+    private static boolean isInvalidGrant(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("invalid_grant")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void refreshIfExpiring() {
+        if (!(delegate instanceof OAuth2Credentials oauth2Credentials)) {
+            return;
+        }
+        AccessToken accessToken = oauth2Credentials.getAccessToken();
+        Date expirationTime = accessToken != null ? accessToken.getExpirationTime() : null;
+        if (expirationTime == null || expirationTime.getTime() - System.currentTimeMillis() < REFRESH_MARGIN_MS) {
+            tryRefresh();
+        }
+    }
+
+    public void close() {
+        refreshScheduler.shutdownNow();
+    }
+
+    @Override
+    public String getAuthenticationType() {
+        return delegate.getAuthenticationType();
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestMetadata(URI uri) throws IOException {
+        return delegate.getRequestMetadata(uri);
+    }
+
+    @Override
+    public void getRequestMetadata(URI uri, Executor executor, RequestMetadataCallback callback) {
+        delegate.getRequestMetadata(uri, executor, callback);
+    }
+
+    @Override
+    public boolean hasRequestMetadata() {
+        return delegate.hasRequestMetadata();
+    }
+
+    @Override
+    public boolean hasRequestMetadataOnly() {
+        return delegate.hasRequestMetadataOnly();
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        delegate.refresh();
+    }
+}
@@ -0,0 +1,44 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces API requests so that no more than a given number start per second,
+ * across all threads sharing the limiter. A rate of 0 means unlimited.
+ */
+public class RequestRateLimiter {
+
+    public static final RequestRateLimiter UNLIMITED = new RequestRateLimiter(0);
+
+    private final long intervalNanos;
+
+    private long nextFreeNanos = System.nanoTime();
+
+    public RequestRateLimiter(double requestsPerSecond) {
+        this.intervalNanos = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    }
+
+    /**
+     * Blocks until the caller may send one request.
+     */
+    public void acquire() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFreeNanos);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
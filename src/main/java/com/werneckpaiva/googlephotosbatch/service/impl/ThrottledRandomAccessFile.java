@@ -0,0 +1,52 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Read-only RandomAccessFile handed to the upload client, reading no faster than the bandwidth
+ * limiter allows. Reads are split in slices, but always fill the buffer as a plain file would:
+ * the client takes a short read for the end of the file.
+ */
+class ThrottledRandomAccessFile extends RandomAccessFile {
+
+    private final BandwidthLimiter limiter;
+
+    ThrottledRandomAccessFile(File file, BandwidthLimiter limiter) throws FileNotFoundException {
+        super(file, "r");
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            limiter.acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < len) {
+            int read = super.read(b, off + total, Math.min(BandwidthLimiter.SLICE_BYTES, len - total));
+            if (read < 0) {
+                break;
+            }
+            limiter.acquire(read);
+            total += read;
+        }
+        return total == 0 ? -1 : total;
+    }
+}
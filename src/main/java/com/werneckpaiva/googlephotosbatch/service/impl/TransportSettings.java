@@ -0,0 +1,22 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import java.time.Duration;
+
+/**
+ * Transport tuning for the PhotosLibraryClient.
+ * Zero / null values keep the library defaults.
+ */
+public record TransportSettings(
+        int channelPoolSize,
+        Duration keepAliveTime,
+        Duration keepAliveTimeout,
+        int maxInboundMessageSize,
+        int executorThreads,
+        int maxUploadConnections) {
+
+    public static final TransportSettings DEFAULT = new TransportSettings(0, null, null, 0, 0, 0);
+
+    public boolean hasChannelSettings() {
+        return channelPoolSize > 0 || keepAliveTime != null || keepAliveTimeout != null || maxInboundMessageSize > 0;
+    }
+}
@@ -8,14 +8,23 @@ import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
 import org.apache.commons.io.IOUtils;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import org.slf4j.Logger;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.regex.Pattern;
 
 public class ImageUtils {
@@ -24,6 +33,8 @@ public class ImageUtils {
 
     private static final Pattern JPEG_PATTERN = Pattern.compile("\\.jpe?g$", Pattern.CASE_INSENSITIVE);
 
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
     public static File resizeJPGImage(File inputFile, int maxDimension) {
         try{
             FileInputStream fileInputStream = new FileInputStream(inputFile);
@@ -70,7 +81,7 @@ public class ImageUtils {
         }
     }
 
-    private static TiffImageMetadata readExifMetadata(byte[] jpegData) throws ImageReadException, IOException {
+    static TiffImageMetadata readExifMetadata(byte[] jpegData) throws ImageReadException, IOException {
         ImageMetadata imageMetadata = Imaging.getMetadata(jpegData);
         if (imageMetadata == null) {
             return null;
@@ -80,7 +91,7 @@ public class ImageUtils {
         return exif;
     }
 
-    private static byte[] writeExifMetadata(TiffImageMetadata metadata, byte[] jpegData)
+    static byte[] writeExifMetadata(TiffImageMetadata metadata, byte[] jpegData)
             throws ImageReadException, ImageWriteException, IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         ExifRewriter exifRewriter = new ExifRewriter();
@@ -89,13 +100,62 @@ public class ImageUtils {
         return out.toByteArray();
     }
 
-    private static byte[] writeJPEG(BufferedImage image) throws IOException {
+    static byte[] writeJPEG(BufferedImage image) throws IOException {
         ByteArrayOutputStream jpegOut = new ByteArrayOutputStream();
         ImageIO.write(image, "JPEG", jpegOut);
         jpegOut.close();
         return jpegOut.toByteArray();
     }
 
+    /**
+     * EXIF DateTimeOriginal of a JPEG, in the camera's local time. Null when missing or unreadable.
+     */
+    public static LocalDateTime readCaptureTime(File mediaFile) {
+        if (!isJPEG(mediaFile)) {
+            return null;
+        }
+        try {
+            ImageMetadata imageMetadata = Imaging.getMetadata(mediaFile);
+            if (!(imageMetadata instanceof JpegImageMetadata jpegMetadata)) {
+                return null;
+            }
+            TiffField dateTimeOriginal = jpegMetadata
+                    .findEXIFValueWithExactMatch(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+            if (dateTimeOriginal == null) {
+                return null;
+            }
+            return LocalDateTime.parse(dateTimeOriginal.getStringValue().trim(), EXIF_DATE_TIME);
+        } catch (IOException | ImageReadException | DateTimeParseException e) {
+            logger.debug("Can't read capture time of {}: {}", mediaFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Width and height of an image, read from its header without decoding it. Null when unreadable.
+     */
+    public static Dimension readDimensions(File imageFile) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageFile)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            logger.debug("Can't read dimensions of {}: {}", imageFile, e.getMessage());
+            return null;
+        }
+    }
+
     public static boolean isJPEG(File mediaFile) {
         return ImageUtils.JPEG_PATTERN.matcher(mediaFile.getName()).find();
     }
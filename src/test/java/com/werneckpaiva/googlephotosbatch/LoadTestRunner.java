@@ -0,0 +1,155 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * End-to-end throughput harness: generates a folder tree and syncs it through
+ * GooglePhotoAlbumManager against SimulatedGooglePhotosAPI.
+ * Run with: ./gradlew loadTest --args="--albums=2000 --files-per-album=5"
+ */
+@CommandLine.Command(name = "load-test", mixinStandardHelpOptions = true, description = "Measures sync throughput against a simulated Google Photos API.")
+public class LoadTestRunner implements Callable<Integer> {
+
+    @CommandLine.Option(names = "--albums", defaultValue = "1000", description = "Number of album folders")
+    private int numAlbums;
+
+    @CommandLine.Option(names = "--files-per-album", defaultValue = "5", description = "Media files per album")
+    private int filesPerAlbum;
+
+    @CommandLine.Option(names = "--file-size", defaultValue = "262144", description = "Size of generated videos in bytes")
+    private int fileSize;
+
+    @CommandLine.Option(names = "--jpeg", description = "Use the test JPEG instead of generated videos (exercises the resizer)")
+    private boolean jpeg;
+
+    @CommandLine.Option(names = "--existing-albums", defaultValue = "0", description = "Albums already present remotely")
+    private int existingAlbums;
+
+    @CommandLine.Option(names = "--latency-ms", defaultValue = "50", description = "Median API call latency")
+    private double latencyMs;
+
+    @CommandLine.Option(names = "--latency-sigma", defaultValue = "0.5", description = "Log-normal latency spread")
+    private double latencySigma;
+
+    @CommandLine.Option(names = "--bandwidth", defaultValue = "10485760", description = "Upload link bytes per second (0 = unlimited)")
+    private long bandwidth;
+
+    @CommandLine.Option(names = "--unavailable-rate", defaultValue = "0.01", description = "Probability of UNAVAILABLE per call")
+    private double unavailableRate;
+
+    @CommandLine.Option(names = "--resource-exhausted-rate", defaultValue = "0.005", description = "Probability of RESOURCE_EXHAUSTED per call")
+    private double resourceExhaustedRate;
+
+    @CommandLine.Option(names = "--token-ttl-ms", defaultValue = "86400000", description = "Upload token lifetime")
+    private long tokenTtlMs;
+
+    @CommandLine.Option(names = "--uploaders", defaultValue = "1", description = "Concurrent photo uploaders")
+    private int uploaders;
+
+    @CommandLine.Option(names = "--video-uploaders", defaultValue = "1", description = "Concurrent video uploaders")
+    private int videoUploaders;
+
+    @CommandLine.Option(names = "--schedule", defaultValue = "SHORTEST_FIRST", description = "Media scheduling policy: ${COMPLETION-CANDIDATES}")
+    private MediaScheduler.Policy schedule;
+
+    @CommandLine.Option(names = "--seed", defaultValue = "42", description = "Random seed")
+    private long seed;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new LoadTestRunner()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        Path baseFolder = Files.createTempDirectory("loadtest");
+        System.out.println("Generating " + numAlbums + " albums x " + filesPerAlbum + " files in " + baseFolder);
+        List<File> albumFolders = generateTree(baseFolder);
+
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(seed);
+        api.setLatency(latencyMs, latencySigma);
+        api.setBandwidthBytesPerSecond(bandwidth);
+        api.setErrorRates(unavailableRate, resourceExhaustedRate);
+        api.setUploadTokenTtlMs(tokenTtlMs);
+        for (int i = 0; i < Math.min(existingAlbums, albumFolders.size()); i++) {
+            api.addAlbum(AlbumUtils.file2AlbumName(baseFolder.toString(), albumFolders.get(i)), 2);
+        }
+
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setNumUploaders(uploaders);
+        manager.setNumVideoUploaders(videoUploaders);
+        manager.setSchedulingPolicy(schedule);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+
+        long totalFiles = 0;
+        long totalBytes = 0;
+        long start = System.currentTimeMillis();
+        for (File albumFolder : albumFolders) {
+            List<File> files = List.of(albumFolder.listFiles());
+            String albumName = AlbumUtils.file2AlbumName(baseFolder.toString(), albumFolder);
+            Album album = manager.getAlbum(albumName);
+            if (album == null) {
+                album = manager.createAlbum(albumName);
+            }
+            manager.batchUploadFiles(album, files);
+            totalFiles += files.size();
+            totalBytes += files.stream().mapToLong(File::length).sum();
+        }
+        double elapsedSeconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        SimulatedGooglePhotosAPI.Stats stats = api.getStats();
+        System.out.printf("Synced %d files (%.1f MB) in %.1f s%n", totalFiles, totalBytes / 1048576.0, elapsedSeconds);
+        System.out.printf("Throughput: %.1f files/s, %.1f MB/s%n", totalFiles / elapsedSeconds,
+                stats.uploadedBytes() / 1048576.0 / elapsedSeconds);
+        System.out.println("API: " + stats);
+        deleteTree(baseFolder.toFile());
+        return 0;
+    }
+
+    private List<File> generateTree(Path baseFolder) throws IOException {
+        Random random = new Random(seed);
+        byte[] videoContent = new byte[fileSize];
+        random.nextBytes(videoContent);
+        List<File> albumFolders = new ArrayList<>();
+        for (int a = 0; a < numAlbums; a++) {
+            File albumFolder = baseFolder.resolve(String.valueOf(2000 + a % 25))
+                    .resolve("Album_" + a).toFile();
+            albumFolder.mkdirs();
+            for (int f = 0; f < filesPerAlbum; f++) {
+                if (jpeg) {
+                    try (InputStream in = getClass().getClassLoader().getResourceAsStream("photo_portrait_small.JPG")) {
+                        Files.copy(in, new File(albumFolder, "IMG_" + f + ".jpg").toPath(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } else {
+                    Files.write(new File(albumFolder, "VID_" + f + ".mp4").toPath(), videoContent);
+                }
+            }
+            albumFolders.add(albumFolder);
+        }
+        return albumFolders;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
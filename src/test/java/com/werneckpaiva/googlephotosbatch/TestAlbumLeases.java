@@ -0,0 +1,115 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestAlbumLeases {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testOneWorkerHoldsAnAlbum() throws IOException {
+        try (AlbumLeases worker1 = new AlbumLeases(tempDir, Duration.ofMinutes(1));
+                AlbumLeases worker2 = new AlbumLeases(tempDir, Duration.ofMinutes(1))) {
+            AlbumLeases.Lease lease = worker1.tryAcquire("2023 / Trip");
+            Assertions.assertNotNull(lease);
+            Assertions.assertNull(worker2.tryAcquire("2023 / Trip"));
+            Assertions.assertNotNull(worker2.tryAcquire("2024 / Trip"));
+
+            lease.close();
+            Assertions.assertNotNull(worker2.tryAcquire("2023 / Trip"));
+        }
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() throws IOException {
+        try (AlbumLeases worker1 = new AlbumLeases(tempDir, Duration.ofMinutes(1));
+                AlbumLeases worker2 = new AlbumLeases(tempDir, Duration.ofMinutes(1))) {
+            AlbumLeases.Lease lease = worker1.tryAcquire("2023 / Trip");
+            Path leaseFile = worker1.leaseFile("2023 / Trip");
+            // Worker 1 stopped renewing two minutes ago
+            Files.setLastModifiedTime(leaseFile, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+            Assertions.assertNotNull(worker2.tryAcquire("2023 / Trip"));
+            Assertions.assertEquals(worker2.getOwner(), Files.readString(leaseFile));
+
+            // Releasing the lost lease leaves the new owner's file
+            lease.close();
+            Assertions.assertTrue(Files.exists(leaseFile));
+        }
+    }
+
+    @Test
+    public void testExpiredLeaseHasOneNewOwner() throws Exception {
+        try (AlbumLeases worker1 = new AlbumLeases(tempDir, Duration.ofMinutes(1))) {
+            Assertions.assertNotNull(worker1.tryAcquire("2023 / Trip"));
+            Files.setLastModifiedTime(worker1.leaseFile("2023 / Trip"),
+                    FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+            // Workers finding the expired lease at once, only one of them takes it over
+            List<AlbumLeases> workers = new ArrayList<>();
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<AlbumLeases.Lease>> attempts = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    AlbumLeases worker = new AlbumLeases(tempDir, Duration.ofMinutes(1));
+                    workers.add(worker);
+                    attempts.add(pool.submit(() -> worker.tryAcquire("2023 / Trip")));
+                }
+                int owners = 0;
+                for (Future<AlbumLeases.Lease> attempt : attempts) {
+                    owners += attempt.get() != null ? 1 : 0;
+                }
+                Assertions.assertEquals(1, owners);
+            } finally {
+                pool.shutdownNow();
+                workers.forEach(AlbumLeases::close);
+            }
+        }
+    }
+
+    @Test
+    public void testRenewalNoticesLostLease() throws Exception {
+        try (AlbumLeases worker1 = new AlbumLeases(tempDir, Duration.ofMillis(300));
+                AlbumLeases worker2 = new AlbumLeases(tempDir, Duration.ofMinutes(1))) {
+            AlbumLeases.Lease lease = worker1.tryAcquire("2023 / Trip");
+            Path leaseFile = worker1.leaseFile("2023 / Trip");
+            Files.writeString(leaseFile, worker2.getOwner());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lease.isHeld()) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "Lost lease not noticed");
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(worker2.getOwner(), Files.readString(leaseFile));
+        }
+    }
+
+    @Test
+    public void testShardsSplitAlbums() {
+        Shard[] shards = { Shard.parse("0/3"), Shard.parse("1/3"), Shard.parse(" 2 / 3 ") };
+        for (int i = 0; i < 100; i++) {
+            String albumName = "2023 / Album " + i;
+            int owners = 0;
+            for (Shard shard : shards) {
+                owners += shard.owns(albumName) ? 1 : 0;
+            }
+            Assertions.assertEquals(1, owners, albumName);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Shard.parse("3/3"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Shard.parse("1"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestFolderSnapshot {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path stateDir;
+
+    private Path createFolder(String name, int medias) throws IOException {
+        Path folder = Files.createDirectories(tempDir.resolve(name));
+        for (int i = 0; i < medias; i++) {
+            Files.write(folder.resolve("IMG_" + i + ".jpg"), new byte[100 + i]);
+        }
+        return folder;
+    }
+
+    // Moves every directory out of the racy window, as if the files were written long ago
+    private void age() throws IOException {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            for (Path path : paths.filter(Files::isDirectory).toList()) {
+                Files.setLastModifiedTime(path, past);
+            }
+        }
+    }
+
+    private List<FolderScanner.Folder> scan(FolderSnapshot snapshot) {
+        return snapshot.scan(tempDir.toString(), tempDir.toFile(), 2);
+    }
+
+    @Test
+    public void testUnchangedSubtreesAreNotListed() throws IOException {
+        createFolder("2005/Beach", 2);
+        createFolder("2005/Mountains", 3);
+        createFolder("2024/Birthday", 2);
+        age();
+        Path snapshotFile = stateDir.resolve("snapshot.jsonl");
+
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            List<FolderScanner.Folder> folders = scan(snapshot);
+            Assertions.assertEquals(3, folders.size());
+            folders.forEach(snapshot::markSynced);
+        }
+
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            Assertions.assertTrue(scan(snapshot).isEmpty());
+            Assertions.assertEquals(0, snapshot.getListedDirectories());
+        }
+
+        // A new photo under the current year lists that folder only
+        Path birthday = tempDir.resolve("2024/Birthday");
+        Files.write(birthday.resolve("IMG_9.jpg"), new byte[10]);
+        Files.setLastModifiedTime(birthday, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            List<FolderScanner.Folder> folders = scan(snapshot);
+            Assertions.assertEquals(1, folders.size());
+            Assertions.assertEquals("2024 / Birthday", folders.get(0).albumName());
+            Assertions.assertEquals(3, folders.get(0).files().size());
+            Assertions.assertEquals(1, snapshot.getListedDirectories());
+            folders.forEach(snapshot::markSynced);
+        }
+    }
+
+    @Test
+    public void testSnapshotWithTreeHashesIsRead() throws IOException {
+        createFolder("2024/Trip", 2);
+        age();
+        Path snapshotFile = stateDir.resolve("snapshot.jsonl");
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            scan(snapshot).forEach(snapshot::markSynced);
+        }
+        // As written by earlier versions
+        List<String> lines = Files.readAllLines(snapshotFile).stream()
+                .map(line -> line.replaceFirst("}$", ",\"treeHash\":\"0a1b\"}"))
+                .toList();
+        Files.write(snapshotFile, lines);
+
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            Assertions.assertTrue(scan(snapshot).isEmpty());
+            Assertions.assertEquals(0, snapshot.getListedDirectories());
+        }
+    }
+
+    @Test
+    public void testFolderNotSyncedIsScannedAgain() throws IOException {
+        createFolder("2024/Trip", 2);
+        age();
+        Path snapshotFile = stateDir.resolve("snapshot.jsonl");
+
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            Assertions.assertEquals(1, scan(snapshot).size());
+            // Upload failed, the folder isn't marked
+        }
+        try (FolderSnapshot snapshot = new FolderSnapshot(snapshotFile)) {
+            Assertions.assertEquals(1, scan(snapshot).size());
+        }
+    }
+}
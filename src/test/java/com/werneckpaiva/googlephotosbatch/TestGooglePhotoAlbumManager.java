@@ -15,6 +15,7 @@ import java.util.HashSet;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestGooglePhotoAlbumManager {
 
@@ -144,6 +145,35 @@ public class TestGooglePhotoAlbumManager {
         verify(googlePhotoService, times(1)).saveToAlbum(eq(album), anyList());
     }
 
+    @Test
+    public void testBatchUploadWithConcurrentUploaders() throws Exception {
+        // Setup
+        AtomicInteger activeUploads = new AtomicInteger();
+        AtomicInteger maxActiveUploads = new AtomicInteger();
+        GooglePhotosAPI googlePhotoService = mock(GooglePhotosAPI.class);
+        when(googlePhotoService.uploadSingleFile(anyString(), any())).thenAnswer(invocation -> {
+            maxActiveUploads.accumulateAndGet(activeUploads.incrementAndGet(), Math::max);
+            Thread.sleep(200);
+            activeUploads.decrementAndGet();
+            return "some-token";
+        });
+        when(googlePhotoService.retrieveFilesFromAlbum(any())).thenReturn(new HashSet<>());
+
+        Album album = new Album("My Album", "123", true);
+        File smallImage = getImageFile("photo_portrait_small.JPG");
+        List<File> files = Arrays.asList(smallImage, smallImage, smallImage, smallImage);
+
+        // Execute
+        GooglePhotoAlbumManager googlePhotoAlbumManager = new GooglePhotoAlbumManager(googlePhotoService);
+        googlePhotoAlbumManager.setNumUploaders(4);
+        googlePhotoAlbumManager.batchUploadFiles(album, files);
+
+        // Verify
+        verify(googlePhotoService, times(4)).uploadSingleFile(anyString(), any());
+        verify(googlePhotoService, times(1)).saveToAlbum(eq(album), anyList());
+        Assertions.assertTrue(maxActiveUploads.get() > 1, "Uploads should run concurrently");
+    }
+
     private File getImageFile(String imageName) {
         URL resourceURL = getClass().getClassLoader().getResource(imageName);
         File imageFile = new File(resourceURL.getPath());
@@ -120,4 +120,30 @@ public class TestGooglePhotoAlbumManagerCache {
         Assertions.assertTrue(lines.get(1).contains("New Album"));
         Assertions.assertTrue(lines.get(1).contains("new-id"));
     }
+
+    @Test
+    public void testCreateAlbumReusesAlbumCreatedByAnotherWorker() throws PermissionDeniedToLoadAlbumsException {
+        // Setup
+        File cacheFile = tempDir.resolve("shared_cache.json").toFile();
+        Album newAlbum = new Album("New Album", "new-id", true);
+        GooglePhotosAPI googlePhotosAPI = mock(GooglePhotosAPI.class);
+        when(googlePhotosAPI.getAllAlbums()).thenReturn(Collections.emptyList());
+        when(googlePhotosAPI.createAlbum("New Album")).thenReturn(newAlbum);
+
+        GooglePhotoAlbumManager worker1 = new GooglePhotoAlbumManager(googlePhotosAPI);
+        worker1.setAlbumsCache(cacheFile);
+        GooglePhotoAlbumManager worker2 = new GooglePhotoAlbumManager(googlePhotosAPI);
+        worker2.setAlbumsCache(cacheFile);
+        Assertions.assertNull(worker1.getAlbum("New Album"));
+        Assertions.assertNull(worker2.getAlbum("New Album"));
+
+        // Execute
+        worker1.createAlbum("New Album");
+        Album album = worker2.createAlbum("New Album");
+
+        // Verify
+        Assertions.assertEquals("new-id", album.id());
+        verify(googlePhotosAPI, times(1)).getAllAlbums();
+        verify(googlePhotosAPI, times(1)).createAlbum("New Album");
+    }
 }
@@ -0,0 +1,221 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.werneckpaiva.googlephotosbatch.exception.PermissionDeniedToLoadAlbumsException;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGooglePhotoAlbumManagerSimulated {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBatchUploadAgainstSimulator() throws PermissionDeniedToLoadAlbumsException, IOException {
+        // Setup
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(1);
+        api.setLatency(1, 0.1);
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setNumUploaders(4);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        Album album = manager.createAlbum("Simulated Album");
+
+        // Execute
+        manager.batchUploadFiles(album, createVideos(25));
+
+        // Verify
+        SimulatedGooglePhotosAPI.Stats stats = api.getStats();
+        Assertions.assertEquals(25, stats.uploads());
+        Assertions.assertEquals(25, stats.itemsCreated());
+        Assertions.assertEquals(25 * 1024, stats.uploadedBytes());
+        Assertions.assertEquals(25, api.retrieveFilesFromAlbum(album).size());
+    }
+
+    @Test
+    public void testBatchUploadWithInjectedErrors() throws PermissionDeniedToLoadAlbumsException, IOException {
+        // Setup
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(7);
+        api.setLatency(1, 0.1);
+        api.setErrorRates(0.2, 0.1);
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setNumUploaders(2);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        Album album = manager.createAlbum("Flaky Album");
+
+        // Execute
+        manager.batchUploadFiles(album, createVideos(40));
+
+        // Verify: every media either failed to upload, was dropped on save or ended up in the album
+        SimulatedGooglePhotosAPI.Stats stats = api.getStats();
+        Assertions.assertTrue(stats.failedUploads() > 0);
+        Assertions.assertEquals(40, stats.failedUploads() + stats.droppedItems() + stats.itemsCreated());
+    }
+
+    @Test
+    public void testAlbumListedAgainOnlyWhenSaveReportsFailures() throws Exception {
+        // Setup: the first save reports an item as failed although it was created
+        AtomicInteger listings = new AtomicInteger();
+        AtomicInteger falseFailures = new AtomicInteger(1);
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(5) {
+            @Override
+            public Set<MediaItemInfo> retrieveFilesFromAlbum(Album album) {
+                listings.incrementAndGet();
+                return super.retrieveFilesFromAlbum(album);
+            }
+
+            @Override
+            public int saveToAlbum(Album album, List<String> mediasUploaded) {
+                return super.saveToAlbum(album, mediasUploaded) + Math.max(0, falseFailures.getAndDecrement());
+            }
+        };
+        api.setLatency(1, 0.1);
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        Album album = manager.createAlbum("Checked Album");
+        List<File> files = createVideos(5);
+
+        // Execute, verify: listed before uploading and again to check the reported failure
+        Assertions.assertTrue(manager.batchUploadFiles(album, files.subList(0, 3)));
+        Assertions.assertEquals(2, listings.get());
+
+        // A clean save is trusted
+        Assertions.assertTrue(manager.batchUploadFiles(album, files));
+        Assertions.assertEquals(3, listings.get());
+        Assertions.assertEquals(5, api.retrieveFilesFromAlbum(album).size());
+    }
+
+    @Test
+    public void testExpiredTokensFailTheUpload() throws Exception {
+        // Setup: tokens expire before the save call gets through
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(6);
+        api.setLatency(5, 0.1);
+        api.setUploadTokenTtlMs(0);
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        Album album = manager.createAlbum("Expired Album");
+
+        Assertions.assertFalse(manager.batchUploadFiles(album, createVideos(3)));
+        Assertions.assertEquals(3, api.getStats().expiredTokens());
+    }
+
+    @Test
+    public void testPhotosAndVideosInSeparateLanes() throws PermissionDeniedToLoadAlbumsException, IOException {
+        // Setup: record the chunk size of each upload and the resize events
+        Map<String, Integer> chunkSizes = new ConcurrentHashMap<>();
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(3) {
+            @Override
+            public String uploadSingleFile(String name, File file, int chunkSize) {
+                chunkSizes.put(file.getName(), chunkSize);
+                return super.uploadSingleFile(name, file, chunkSize);
+            }
+        };
+        api.setLatency(1, 0.1);
+        List<String> resized = new CopyOnWriteArrayList<>();
+        RunReport report = new RunReport(tempDir.resolve("report.jsonl").toFile()) {
+            @Override
+            public synchronized void onEvent(String albumName, SyncStatusWatcher.MediaTaskLog log) {
+                if (log.status() == SyncStatusWatcher.MediaTaskLog.Status.RESIZE_STARTED) {
+                    resized.add(log.media().file().getName());
+                }
+                super.onEvent(albumName, log);
+            }
+        };
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setNumUploaders(2);
+        manager.setNumVideoUploaders(2);
+        manager.setVideoChunkSize(512);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        manager.setRunReport(report);
+        Album album = manager.createAlbum("Mixed Album");
+        List<File> files = createVideos(10);
+        File photo = new File(getClass().getClassLoader().getResource("photo_portrait_small.JPG").getPath());
+        for (int i = 0; i < 3; i++) {
+            Path copy = tempDir.resolve("IMG_" + i + ".jpg");
+            Files.copy(photo.toPath(), copy);
+            files.add(copy.toFile());
+        }
+
+        // Execute
+        manager.batchUploadFiles(album, files);
+        report.close();
+
+        // Verify: only the photos go through the resizers, only the videos are chunked
+        SimulatedGooglePhotosAPI.Stats stats = api.getStats();
+        Assertions.assertEquals(13, stats.uploads());
+        Assertions.assertEquals(13, api.retrieveFilesFromAlbum(album).size());
+        Assertions.assertEquals(Set.of("IMG_0.jpg", "IMG_1.jpg", "IMG_2.jpg"), Set.copyOf(resized));
+        Assertions.assertEquals(10, chunkSizes.size());
+        chunkSizes.forEach((name, chunkSize) -> {
+            Assertions.assertTrue(name.startsWith("VID_"), name);
+            Assertions.assertEquals(512, chunkSize.intValue(), name);
+        });
+    }
+
+    @Test
+    public void testAccountsShareResizePool() throws Exception {
+        // Setup: two accounts, each with its own client, resizing on one shared thread
+        ExecutorService resizePool = Executors.newFixedThreadPool(1);
+        File photo = new File(getClass().getClassLoader().getResource("photo_portrait_small.JPG").getPath());
+        List<SimulatedGooglePhotosAPI> apis = new ArrayList<>();
+        List<Future<Boolean>> syncs = new ArrayList<>();
+        ExecutorService accounts = Executors.newFixedThreadPool(2);
+        try {
+            for (int account = 0; account < 2; account++) {
+                SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(account);
+                api.setLatency(1, 0.1);
+                apis.add(api);
+                GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+                manager.setResizeExecutor(resizePool);
+                manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+                Album album = manager.createAlbum("Account " + account);
+                Path folder = Files.createDirectories(tempDir.resolve("account" + account));
+                List<File> files = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    Path copy = folder.resolve("IMG_" + i + ".jpg");
+                    Files.copy(photo.toPath(), copy);
+                    files.add(copy.toFile());
+                }
+
+                // Execute
+                syncs.add(accounts.submit(() -> manager.batchUploadFiles(album, files)));
+            }
+
+            // Verify
+            for (int account = 0; account < 2; account++) {
+                Assertions.assertTrue(syncs.get(account).get(1, TimeUnit.MINUTES));
+                Assertions.assertEquals(3, apis.get(account).getStats().uploads());
+            }
+        } finally {
+            accounts.shutdownNow();
+            resizePool.shutdownNow();
+        }
+    }
+
+    private List<File> createVideos(int count) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = tempDir.resolve("VID_" + i + ".mp4").toFile();
+            Files.write(file.toPath(), new byte[1024]);
+            files.add(file);
+        }
+        return files;
+    }
+}
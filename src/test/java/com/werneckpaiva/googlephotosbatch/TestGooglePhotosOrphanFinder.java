@@ -0,0 +1,83 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGooglePhotosOrphanFinder {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testAlbumsAreScannedInParallelAndResumed() throws Throwable {
+        // Setup: each album listing takes 20 ms
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger listings = new AtomicInteger();
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(1) {
+            @Override
+            public Set<MediaItemInfo> retrieveFilesFromAlbum(Album album) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                listings.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                    return super.retrieveFilesFromAlbum(album);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            expected.put(api.addAlbum("Album " + i, i).id(), i);
+        }
+        Path albumMedias = tempDir.resolve("album_medias.json");
+        GooglePhotosOrphanFinder finder = new GooglePhotosOrphanFinder();
+        new CommandLine(finder).parseArgs("--album-medias=" + albumMedias);
+
+        // Execute
+        finder.processAlbums(api, new GooglePhotoAlbumManager(api), 4);
+
+        // Verify: one line per album, with all of its medias
+        Map<String, Integer> found = new HashMap<>();
+        for (String line : Files.readAllLines(albumMedias)) {
+            GooglePhotosOrphanFinder.AlbumMedias entry = objectMapper.readValue(line,
+                    GooglePhotosOrphanFinder.AlbumMedias.class);
+            Assertions.assertFalse(found.containsKey(entry.albumId()), "Album written twice");
+            found.put(entry.albumId(), entry.files().size());
+        }
+        Assertions.assertEquals(expected, found);
+        Assertions.assertTrue(maxInFlight.get() > 1, "Albums scanned one at a time");
+        Assertions.assertTrue(maxInFlight.get() <= 4, "More scans than the concurrency: " + maxInFlight.get());
+        Assertions.assertEquals(12, listings.get());
+
+        // A new album is the only one scanned on resume
+        Album added = api.addAlbum("Album 12", 3);
+        finder.processAlbums(api, new GooglePhotoAlbumManager(api), 4);
+        Assertions.assertEquals(13, listings.get());
+        Set<String> ids = new HashSet<>();
+        for (String line : Files.readAllLines(albumMedias)) {
+            Assertions.assertTrue(ids.add(objectMapper.readValue(line,
+                    GooglePhotosOrphanFinder.AlbumMedias.class).albumId()));
+        }
+        Assertions.assertTrue(ids.contains(added.id()));
+        Assertions.assertEquals(13, ids.size());
+    }
+}
@@ -0,0 +1,27 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+public class TestGooglePhotosSync {
+
+    private static int execute(String... args) {
+        return new CommandLine(new GooglePhotosSync()).execute(args);
+    }
+
+    @Test
+    public void testExecuteRejectsFoldersToProcess() {
+        Assertions.assertEquals(1, execute("--execute", "plan.json", "/photos", "/photos/2024"));
+    }
+
+    @Test
+    public void testProfilesRejectFolders() {
+        Assertions.assertEquals(1, execute("--profiles", "profiles.json", "/photos", "/photos/2024"));
+    }
+
+    @Test
+    public void testFoldersMustBeInsideBaseFolder() {
+        Assertions.assertEquals(1, execute("/photos", "/other/2024"));
+    }
+}
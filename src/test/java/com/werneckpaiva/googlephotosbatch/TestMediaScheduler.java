@@ -0,0 +1,74 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestMediaScheduler {
+
+    @TempDir
+    Path tempDir;
+
+    private List<MediaWithName> createMedias() throws IOException {
+        List<MediaWithName> medias = new ArrayList<>();
+        int[] sizes = { 5000, 100, 300, 100 };
+        for (int i = 0; i < sizes.length; i++) {
+            File file = tempDir.resolve("VID_" + i + ".mp4").toFile();
+            Files.write(file.toPath(), new byte[sizes[i]]);
+            medias.add(new MediaWithName("VID " + i, file));
+        }
+        return medias;
+    }
+
+    private static List<String> drain(MediaScheduler.CostQueue queue) {
+        List<String> names = new ArrayList<>();
+        MediaWithName media;
+        while ((media = queue.poll()) != null) {
+            names.add(media.name());
+        }
+        return names;
+    }
+
+    @Test
+    public void testResizeQueueOrder() throws IOException {
+        List<MediaWithName> medias = createMedias();
+        Assertions.assertEquals(List.of("VID 0", "VID 1", "VID 2", "VID 3"),
+                drain(new MediaScheduler(MediaScheduler.Policy.FILENAME, 4608).resizeQueue(medias)));
+        // Ties keep filename order
+        Assertions.assertEquals(List.of("VID 1", "VID 3", "VID 2", "VID 0"),
+                drain(new MediaScheduler(MediaScheduler.Policy.SHORTEST_FIRST, 4608).resizeQueue(medias)));
+        Assertions.assertEquals(List.of("VID 0", "VID 2", "VID 1", "VID 3"),
+                drain(new MediaScheduler(MediaScheduler.Policy.LARGEST_FIRST, 4608).resizeQueue(medias)));
+    }
+
+    @Test
+    public void testUploadersTakeBothEnds() throws Exception {
+        MediaScheduler scheduler = new MediaScheduler(MediaScheduler.Policy.SHORTEST_FIRST, 4608);
+        MediaScheduler.CostQueue queue = scheduler.uploadQueue();
+        createMedias().forEach(queue::offer);
+
+        Assertions.assertTrue(scheduler.takesOppositeEnd(0, 2));
+        Assertions.assertFalse(scheduler.takesOppositeEnd(1, 2));
+        Assertions.assertFalse(scheduler.takesOppositeEnd(0, 1));
+        Assertions.assertEquals("VID 0", queue.takeOpposite().name());
+        Assertions.assertEquals("VID 1", queue.take().name());
+        Assertions.assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testEstimateCostOfLargeJpeg() throws IOException {
+        File photo = new File("src/test/resources/photo_landscape_big.JPG");
+        MediaScheduler scheduler = new MediaScheduler(MediaScheduler.Policy.SHORTEST_FIRST, 100);
+        double uploadOnly = photo.length() / MediaScheduler.UPLOAD_BYTES_PER_SECOND;
+        double cost = scheduler.estimateCost(photo);
+        Assertions.assertTrue(cost > 0);
+        Assertions.assertTrue(cost < uploadOnly, "Resizing shrinks the upload");
+    }
+}
@@ -0,0 +1,58 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class TestRemoteLibraryIndex {
+
+    @TempDir
+    Path tempDir;
+
+    private RemoteLibraryIndex loadIndex() throws IOException {
+        Path dump = tempDir.resolve("library_medias.json");
+        Files.write(dump, List.of(
+                "{\"id\":\"m1\",\"filename\":\"IMG 0001\",\"creationTime\":\"2023-07-01T15:30:00Z\"}",
+                "{\"id\":\"m2\",\"filename\":\"IMG_0001.JPG\",\"creationTime\":\"2019-01-02T03:04:05Z\"}",
+                "{\"id\":\"m3\",\"filename\":\"IMG 0002\"}",
+                "{\"id\":\"m6\",\"filename\":\"IMG 0004\",\"creat",
+                "{\"id\":\"m7\",\"filename\":\"IMG 0005\",\"creationTime\":\"2020-05-05T10:00:00Z\"}",
+                "{\"id\":\"m4\",\"filename\":\"IMG 0003\",\"creationTime\":\"not a date\"}",
+                "{\"id\":\"m5\",\"filename\":\"IMG 00"), StandardCharsets.UTF_8);
+        return RemoteLibraryIndex.load(dump);
+    }
+
+    @Test
+    public void testLoadsItemsWithCaptureTime() throws IOException {
+        // The torn record doesn't hide the ones after it
+        Assertions.assertEquals(3, loadIndex().size());
+    }
+
+    @Test
+    public void testMatchesFilenameAndCaptureTimeInAnyTimeZone() throws IOException {
+        RemoteLibraryIndex index = loadIndex();
+
+        // Same instant seen from UTC, UTC-3 and UTC+5:30
+        Assertions.assertEquals("m1", index.find(List.of("IMG 0001"), LocalDateTime.of(2023, 7, 1, 15, 30, 0)));
+        Assertions.assertEquals("m1", index.find(List.of("IMG 0001"), LocalDateTime.of(2023, 7, 1, 12, 30, 0)));
+        Assertions.assertEquals("m1", index.find(List.of("IMG 0001"), LocalDateTime.of(2023, 7, 1, 21, 0, 0)));
+        // Original filename of an item uploaded by another tool
+        Assertions.assertEquals("m2",
+                index.find(List.of("IMG 0001", "IMG_0001.JPG"), LocalDateTime.of(2019, 1, 2, 3, 4, 5)));
+
+        Assertions.assertEquals("m7", index.find(List.of("IMG 0005"), LocalDateTime.of(2020, 5, 5, 10, 0, 0)));
+
+        Assertions.assertNull(index.find(List.of("IMG 0001"), LocalDateTime.of(2023, 7, 1, 15, 30, 1)));
+        Assertions.assertNull(index.find(List.of("IMG 0001"), LocalDateTime.of(2023, 7, 3, 15, 30, 0)));
+        Assertions.assertNull(index.find(List.of("IMG 0002"), LocalDateTime.of(2023, 7, 1, 15, 30, 0)));
+        Assertions.assertNull(index.find(new File(tempDir.toFile(), "OTHER.JPG"), "OTHER"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.MediaTaskLog;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.MediaTaskLog.Status;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.utils.AlbumUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestRunReport {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MediaWithName media(String fileName, int size) throws IOException {
+        File file = Files.write(tempDir.resolve(fileName), new byte[size]).toFile();
+        return new MediaWithName(AlbumUtils.file2MediaName(file), file);
+    }
+
+    private List<JsonNode> read(Path reportFile) throws IOException {
+        List<JsonNode> records = new ArrayList<>();
+        for (String line : Files.readAllLines(reportFile)) {
+            records.add(objectMapper.readTree(line));
+        }
+        return records;
+    }
+
+    private static Map<String, JsonNode> mediasByFile(List<JsonNode> records) {
+        Map<String, JsonNode> medias = new HashMap<>();
+        records.stream().filter(record -> record.get("type").asText().equals("media"))
+                .forEach(record -> medias.put(new File(record.get("file").asText()).getName(), record));
+        return medias;
+    }
+
+    @Test
+    public void testMediasWithTheSameNameAreReportedApart() throws IOException {
+        MediaWithName photo = media("IMG_1.jpg", 1000);
+        MediaWithName video = media("IMG_1.mp4", 3000);
+        MediaWithName resized = new MediaWithName(photo.name(), media("resized42.jpg", 400).file());
+        Path reportFile = tempDir.resolve("report.jsonl");
+
+        try (RunReport report = new RunReport(reportFile.toFile())) {
+            report.startAlbum("Trip", List.of(photo, video), 5);
+            report.onEvent("Trip", new MediaTaskLog(Status.RESIZE_STARTED, 0, photo));
+            report.onEvent("Trip", new MediaTaskLog(Status.RESIZE_COMPLETED, 0, resized));
+            report.onEvent("Trip", new MediaTaskLog(Status.UPLOAD_STARTED, 1, video));
+            report.onEvent("Trip", new MediaTaskLog(Status.UPLOAD_STARTED, 0, resized));
+            report.onEvent("Trip", new MediaTaskLog(Status.UPLOAD_COMPLETED, 0, resized));
+            report.onEvent("Trip", new MediaTaskLog(Status.UPLOAD_FAILED, 1, video));
+            report.onEvent("Trip", MediaTaskLog.forSave(Status.SAVE_STARTED, 1));
+            report.onEvent("Trip", MediaTaskLog.forSave(Status.SAVE_COMPLETED, 1));
+        }
+
+        List<JsonNode> records = read(reportFile);
+        Map<String, JsonNode> medias = mediasByFile(records);
+        Assertions.assertEquals(3, records.size());
+        Assertions.assertEquals("UPLOADED", medias.get("IMG_1.jpg").get("status").asText());
+        Assertions.assertEquals(1000, medias.get("IMG_1.jpg").get("sourceBytes").asLong());
+        Assertions.assertEquals(400, medias.get("IMG_1.jpg").get("uploadBytes").asLong());
+        Assertions.assertEquals("FAILED", medias.get("IMG_1.mp4").get("status").asText());
+        Assertions.assertEquals(3000, medias.get("IMG_1.mp4").get("uploadBytes").asLong());
+        JsonNode album = records.get(2);
+        Assertions.assertEquals("album", album.get("type").asText());
+        Assertions.assertEquals(2, album.get("medias").asInt());
+        Assertions.assertEquals(1, album.get("failed").asInt());
+        Assertions.assertTrue(album.get("error").isNull());
+    }
+
+    @Test
+    public void testAlbumWhoseUploadFailedIsRecorded() throws Exception {
+        // Setup: uploads work, saving to the album throws
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(3) {
+            @Override
+            public int saveToAlbum(Album album, List<String> mediasUploaded) {
+                throw new IllegalStateException("Album was deleted");
+            }
+        };
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        Album album = manager.createAlbum("Trip");
+        List<File> files = List.of(media("VID_1.mp4", 1024).file(), media("VID_2.mp4", 1024).file());
+        Path reportFile = tempDir.resolve("report.jsonl");
+
+        // Execute
+        try (RunReport report = new RunReport(reportFile.toFile())) {
+            manager.setRunReport(report);
+            Assertions.assertThrows(RuntimeException.class, () -> manager.batchUploadFiles(album, files));
+        }
+
+        // Verify
+        List<JsonNode> records = read(reportFile);
+        Assertions.assertEquals(3, records.size());
+        Assertions.assertEquals("UPLOADED", mediasByFile(records).get("VID_1.mp4").get("status").asText());
+        Assertions.assertEquals(0, mediasByFile(records).get("VID_1.mp4").get("commitMs").asLong());
+        JsonNode albumRecord = records.get(2);
+        Assertions.assertEquals("Trip", albumRecord.get("album").asText());
+        Assertions.assertEquals(2, albumRecord.get("medias").asInt());
+        Assertions.assertTrue(albumRecord.get("error").asText().contains("Album was deleted"),
+                albumRecord.toString());
+    }
+}
@@ -0,0 +1,166 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyncDaemon {
+
+    @TempDir
+    Path tempDir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonNode send(SyncDaemon daemon, String method, String path, String body, int expectedStatus)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + daemon.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(expectedStatus, response.statusCode(), response.body());
+        return objectMapper.readTree(response.body());
+    }
+
+    private String job(Path folder, int priority) {
+        return "{\"folders\": [\"" + folder.toString().replace("\\", "\\\\") + "\"], \"priority\": " + priority + "}";
+    }
+
+    @Test
+    public void testJobsRunByPriority() throws Exception {
+        Path first = Files.createDirectories(tempDir.resolve("first"));
+        Path low = Files.createDirectories(tempDir.resolve("low"));
+        Path high = Files.createDirectories(tempDir.resolve("high"));
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<String> synced = Collections.synchronizedList(new ArrayList<>());
+        try (SyncDaemon daemon = new SyncDaemon(0, tempDir.toString(), (folders, albumId) -> {
+            if (folders.get(0).endsWith("first")) {
+                firstStarted.countDown();
+                releaseFirst.await();
+            }
+            synced.addAll(folders);
+        })) {
+            daemon.start();
+            send(daemon, "POST", "/jobs", job(first, 0), 201);
+            Assertions.assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            // Queued behind the running job, the higher priority one goes first
+            String lowId = send(daemon, "POST", "/jobs", job(low, 0), 201).get("id").asText();
+            String highId = send(daemon, "POST", "/jobs", job(high, 5), 201).get("id").asText();
+            Assertions.assertEquals("QUEUED", send(daemon, "GET", "/jobs/" + lowId, null, 200).get("status").asText());
+            Assertions.assertEquals(2, daemon.queuedJobs());
+            releaseFirst.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!send(daemon, "GET", "/jobs/" + lowId, null, 200).get("status").asText().equals("DONE")) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "Job not finished");
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(List.of(first.toString(), high.toString(), low.toString()), synced);
+            Assertions.assertEquals("DONE", send(daemon, "GET", "/jobs/" + highId, null, 200).get("status").asText());
+            Assertions.assertEquals(3, send(daemon, "GET", "/jobs", null, 200).size());
+        }
+    }
+
+    @Test
+    public void testInvalidJobsAreRejected() throws Exception {
+        Path other = Files.createDirectories(tempDir.resolve("other"));
+        Path base = Files.createDirectories(tempDir.resolve("base"));
+        try (SyncDaemon daemon = new SyncDaemon(0, base.toString(), (folders, albumId) -> {
+            throw new IllegalStateException("No job should run");
+        })) {
+            daemon.start();
+            send(daemon, "POST", "/jobs", job(other, 0), 400);
+            send(daemon, "POST", "/jobs", job(base.resolve("missing"), 0), 400);
+            // Out of the base folder, although the path starts with it
+            send(daemon, "POST", "/jobs", job(Path.of(base + "/../other"), 0), 400);
+            send(daemon, "POST", "/jobs", job(Files.createDirectories(tempDir.resolve("base2")), 0), 400);
+            send(daemon, "POST", "/jobs", "{\"folders\": ", 400);
+            send(daemon, "GET", "/jobs/job-42", null, 404);
+            Assertions.assertEquals(0, send(daemon, "GET", "/jobs", null, 200).size());
+        }
+    }
+
+    @Test
+    public void testFailedJobReportsError() throws Exception {
+        try (SyncDaemon daemon = new SyncDaemon(0, tempDir.toString(), (folders, albumId) -> {
+            throw new IllegalArgumentException("Album not found: " + albumId);
+        })) {
+            daemon.start();
+            String id = send(daemon, "POST", "/jobs",
+                    "{\"folders\": [\"" + tempDir + "\"], \"albumId\": \"abc\"}", 201).get("id").asText();
+            long deadline = System.currentTimeMillis() + 5000;
+            JsonNode status;
+            while ((status = send(daemon, "GET", "/jobs/" + id, null, 200)).get("status").asText().equals("QUEUED")
+                    || status.get("status").asText().equals("RUNNING")) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "Job not finished");
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("FAILED", status.get("status").asText());
+            Assertions.assertEquals("Album not found: abc", status.get("error").asText());
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForRunningJob() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        SyncDaemon daemon = new SyncDaemon(0, tempDir.toString(), (folders, albumId) -> {
+            started.countDown();
+            Thread.sleep(200);
+            finished.addAll(folders);
+        });
+        daemon.start();
+        send(daemon, "POST", "/jobs", job(tempDir, 0), 201);
+        send(daemon, "POST", "/jobs", job(tempDir, 0), 201);
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        daemon.close();
+
+        // The running job completed, the queued one was dropped
+        Assertions.assertEquals(List.of(tempDir.toString()), finished);
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> daemon.submit(new SyncDaemon.JobRequest(List.of(tempDir.toString()), null, 0)));
+    }
+
+    @Test
+    public void testOnlyLatestFinishedJobsAreKept() throws Exception {
+        try (SyncDaemon daemon = new SyncDaemon(0, tempDir.toString(), (folders, albumId) -> {
+        })) {
+            daemon.setMaxFinishedJobs(2);
+            daemon.start();
+            String lastId = null;
+            for (int i = 0; i < 5; i++) {
+                lastId = send(daemon, "POST", "/jobs", job(tempDir, 0), 201).get("id").asText();
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (send(daemon, "GET", "/jobs/" + lastId, null, 200).get("status").asText().equals("QUEUED")
+                    || send(daemon, "GET", "/jobs/" + lastId, null, 200).get("status").asText().equals("RUNNING")) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "Job not finished");
+                Thread.sleep(10);
+            }
+            JsonNode jobs = send(daemon, "GET", "/jobs", null, 200);
+            Assertions.assertEquals(2, jobs.size());
+            Assertions.assertEquals(lastId, jobs.get(1).get("id").asText());
+            send(daemon, "GET", "/jobs/job-1", null, 404);
+        }
+    }
+}
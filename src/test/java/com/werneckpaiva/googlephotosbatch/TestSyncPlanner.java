@@ -0,0 +1,109 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public class TestSyncPlanner {
+
+    @TempDir
+    Path tempDir;
+
+    private static void createVideos(Path folder, String... names) throws IOException {
+        Files.createDirectories(folder);
+        for (String name : names) {
+            Files.write(folder.resolve(name), new byte[1000]);
+        }
+    }
+
+    private GooglePhotoAlbumManager createManager(SimulatedGooglePhotosAPI api) {
+        GooglePhotoAlbumManager manager = new GooglePhotoAlbumManager(api);
+        manager.setProgressMode(SyncStatusWatcher.Mode.NONE);
+        return manager;
+    }
+
+    @Test
+    public void testPlanThenExecute() throws Exception {
+        Path base = tempDir.resolve("Pictures");
+        createVideos(base.resolve("2023/Trip"), "VID_1.mp4", "VID_2.mp4", "VID_3.mp4", "notes.txt");
+        createVideos(base.resolve("2024"), "VID_4.mp4", "VID_5.mp4");
+        createVideos(base.resolve("2025"));
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(4);
+        api.setLatency(1, 0.1);
+        Album trip = api.createAlbum("2023 / Trip");
+        GooglePhotoAlbumManager manager = createManager(api);
+        manager.batchUploadFiles(trip, List.of(base.resolve("2023/Trip/VID_1.mp4").toFile()));
+
+        SyncPlanner planner = new SyncPlanner(createManager(api));
+        planner.setUploadBytesPerSecond(1000);
+        SyncPlanner.SyncPlan plan = planner.plan(base.toString(), List.of(base.toString()));
+
+        Assertions.assertEquals(1, plan.albumsToCreate());
+        Assertions.assertEquals(4, plan.filesToUpload());
+        Assertions.assertEquals(4000, plan.bytesToUpload());
+        Assertions.assertEquals(4, plan.estimatedSeconds());
+        Map<String, SyncPlanner.AlbumPlan> albums = plan.albums().stream()
+                .collect(Collectors.toMap(SyncPlanner.AlbumPlan::albumName, album -> album));
+        Assertions.assertEquals(trip.id(), albums.get("2023 / Trip").albumId());
+        Assertions.assertEquals(2, albums.get("2023 / Trip").files().size());
+        Assertions.assertTrue(albums.get("2024").create());
+
+        Path planFile = tempDir.resolve("plan.json");
+        SyncPlanner.write(plan, planFile);
+        SyncPlanner executor = new SyncPlanner(createManager(api));
+        executor.execute(SyncPlanner.read(planFile), SyncPlanner.progressFile(planFile));
+
+        Assertions.assertEquals(3, api.retrieveFilesFromAlbum(trip).size());
+        Album created = createManager(api).getAlbum("2024");
+        Assertions.assertEquals(2, api.retrieveFilesFromAlbum(created).size());
+        Assertions.assertEquals(5, api.getStats().uploads());
+
+        // A finished plan is not uploaded again
+        executor.execute(SyncPlanner.read(planFile), SyncPlanner.progressFile(planFile));
+        Assertions.assertEquals(5, api.getStats().uploads());
+    }
+
+    @Test
+    public void testAlbumWithFailedUploadIsExecutedAgain() throws Exception {
+        Path base = tempDir.resolve("Pictures");
+        createVideos(base.resolve("2023"), "VID_1.mp4", "VID_2.mp4");
+        createVideos(base.resolve("2024"), "VID_3.mp4");
+        Set<String> failing = ConcurrentHashMap.newKeySet();
+        failing.add("VID_2.mp4");
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(4) {
+            @Override
+            public String uploadSingleFile(String name, File file) {
+                return failing.contains(file.getName()) ? null : super.uploadSingleFile(name, file);
+            }
+        };
+        api.setLatency(1, 0.1);
+        SyncPlanner.SyncPlan plan = new SyncPlanner(createManager(api)).plan(base.toString(),
+                List.of(base.toString()));
+        Path planFile = tempDir.resolve("plan.json");
+        SyncPlanner.write(plan, planFile);
+        Path progressFile = SyncPlanner.progressFile(planFile);
+
+        new SyncPlanner(createManager(api)).execute(SyncPlanner.read(planFile), progressFile);
+
+        Assertions.assertEquals(List.of("2024"), Files.readAllLines(progressFile));
+
+        // Once the upload works, only the unfinished album is executed again
+        failing.clear();
+        int uploads = api.getStats().uploads();
+        new SyncPlanner(createManager(api)).execute(SyncPlanner.read(planFile), progressFile);
+        Assertions.assertEquals(List.of("2024", "2023"), Files.readAllLines(progressFile));
+        Assertions.assertEquals(uploads + 2, api.getStats().uploads());
+    }
+}
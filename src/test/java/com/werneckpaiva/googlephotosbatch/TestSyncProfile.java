@@ -0,0 +1,32 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestSyncProfile {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testEachProfileHasItsOwnStateFiles() throws IOException {
+        Path profilesFile = Files.writeString(tempDir.resolve("profiles.json"), """
+                [{"name": "alice", "credentialsDir": "credentials-alice", "baseFolder": "/photos/alice",
+                  "libraryIndex": "alice-library.json", "runReport": "alice-report.jsonl"},
+                 {"name": "bob", "credentialsDir": "credentials-bob", "baseFolder": "/photos/bob"}]
+                """);
+
+        List<SyncProfile> profiles = SyncProfile.load(profilesFile);
+
+        Assertions.assertEquals("alice-library.json", profiles.get(0).libraryIndex());
+        Assertions.assertEquals("alice-report.jsonl", profiles.get(0).runReport());
+        Assertions.assertFalse(profiles.get(1).libraryIndex() != null || profiles.get(1).runReport() != null);
+        Assertions.assertEquals(List.of("/photos/bob"), profiles.get(1).foldersToProcess());
+    }
+}
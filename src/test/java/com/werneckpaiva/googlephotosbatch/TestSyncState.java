@@ -0,0 +1,56 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestSyncState {
+
+    @TempDir
+    Path tempDir;
+
+    private File createFile(String name, int size) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+
+    @Test
+    public void testFingerprintChangesWithFiles() throws IOException {
+        File first = createFile("VID_1.mp4", 100);
+        File second = createFile("VID_2.mp4", 100);
+        String fingerprint = SyncState.fingerprint(List.of(first, second));
+
+        Assertions.assertEquals(fingerprint, SyncState.fingerprint(List.of(second, first)));
+        Assertions.assertNotEquals(fingerprint, SyncState.fingerprint(List.of(first)));
+        Assertions.assertTrue(second.setLastModified(second.lastModified() - 60_000));
+        Assertions.assertNotEquals(fingerprint, SyncState.fingerprint(List.of(first, second)));
+    }
+
+    @Test
+    public void testStateSurvivesRestartsAndIsCompacted() throws IOException {
+        Path stateFile = tempDir.resolve("sync_state.json");
+        try (SyncState state = new SyncState(stateFile)) {
+            state.markSynced("2023 / Trip", "aaa");
+            state.markSynced("2024", "bbb");
+            state.markSynced("2024", "ccc");
+            state.markSynced("2024", "ddd");
+            state.markSynced("2024", "eee");
+            Assertions.assertTrue(state.isUpToDate("2024", "eee"));
+        }
+        Assertions.assertEquals(2, Files.readAllLines(stateFile).size());
+
+        try (SyncState state = new SyncState(stateFile)) {
+            Assertions.assertTrue(state.isUpToDate("2023 / Trip", "aaa"));
+            Assertions.assertTrue(state.isUpToDate("2024", "eee"));
+            Assertions.assertFalse(state.isUpToDate("2024", "bbb"));
+            Assertions.assertFalse(state.isUpToDate("2025", "aaa"));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.werneckpaiva.googlephotosbatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.MediaTaskLog;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.MediaTaskLog.Status;
+import com.werneckpaiva.googlephotosbatch.SyncStatusWatcher.Mode;
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyncStatusWatcher {
+
+    @TempDir
+    Path tempDir;
+
+    private final Album album = new Album("Trip", "album-1", true);
+
+    private MediaWithName media(String name) throws IOException {
+        return new MediaWithName(name, Files.write(tempDir.resolve(name + ".jpg"), new byte[100]).toFile());
+    }
+
+    @Test
+    public void testEtaIsEstimatedFromBytes() {
+        SyncStatusWatcher.SyncProgress progress = new SyncStatusWatcher.SyncProgress(1000);
+
+        // Nothing uploaded yet, no throughput to estimate from
+        Assertions.assertEquals(0, progress.bytesPerSecond(1000));
+        Assertions.assertFalse(progress.etaMs(1000) != null, "No ETA without bytes");
+
+        // A quarter of the bytes in 1 s, the rest takes 3 s
+        progress.completedBytes = 250;
+        Assertions.assertEquals(250, progress.bytesPerSecond(1000));
+        Assertions.assertEquals(Long.valueOf(3000), progress.etaMs(1000));
+
+        progress.completedBytes = 1000;
+        Assertions.assertEquals(Long.valueOf(0), progress.etaMs(4000));
+    }
+
+    @Test
+    public void testJsonIsPrintedWithoutTerminal() throws Exception {
+        Assertions.assertEquals(Mode.JSON, Mode.AUTO.resolve(false));
+        Assertions.assertEquals(Mode.ANSI, Mode.AUTO.resolve(true));
+        Assertions.assertEquals(Mode.NONE, Mode.NONE.resolve(false));
+
+        BlockingQueue<MediaTaskLog> progressLog = new LinkedBlockingQueue<>();
+        for (MediaWithName media : List.of(media("IMG_1"), media("IMG_2"))) {
+            progressLog.add(new MediaTaskLog(Status.UPLOAD_STARTED, 0, media));
+            progressLog.add(new MediaTaskLog(Status.UPLOAD_COMPLETED, 0, media));
+        }
+        progressLog.add(MediaTaskLog.forSave(Status.SAVE_STARTED, 2));
+        progressLog.add(MediaTaskLog.forSave(Status.SAVE_COMPLETED, 2));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        SyncStatusWatcher.getWatcherTask(album, progressLog, 2, 200, Mode.AUTO.resolve(false),
+                new PrintStream(output, true, StandardCharsets.UTF_8)).call();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        Assertions.assertEquals(2, lines.size(), lines.toString());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        Assertions.assertEquals("syncing", first.get("phase").asText());
+        Assertions.assertTrue(first.get("etaMs").isNull());
+        JsonNode last = objectMapper.readTree(lines.get(1));
+        Assertions.assertEquals("Trip", last.get("album").asText());
+        Assertions.assertEquals("completed", last.get("phase").asText());
+        Assertions.assertEquals(2, last.get("completed").asInt());
+        Assertions.assertEquals(200, last.get("bytesCompleted").asLong());
+        Assertions.assertEquals(0, last.get("etaMs").asLong());
+    }
+
+    @Test
+    public void testRedrawsAreCapped() throws Exception {
+        BlockingQueue<MediaTaskLog> progressLog = new LinkedBlockingQueue<>();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MediaWithName media = media("IMG_1");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> watcher = executor.submit(SyncStatusWatcher.getWatcherTask(album, progressLog, 100,
+                    10_000, Mode.ANSI, new PrintStream(output, true, StandardCharsets.UTF_8)));
+
+            // An event every 5 ms for 600 ms
+            for (int i = 0; i < 60; i++) {
+                progressLog.add(new MediaTaskLog(Status.UPLOAD_STARTED, 0, media));
+                Thread.sleep(5);
+                progressLog.add(new MediaTaskLog(Status.UPLOAD_COMPLETED, 0, media));
+                Thread.sleep(5);
+            }
+            progressLog.add(MediaTaskLog.forSave(Status.SAVE_COMPLETED, 60));
+            watcher.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String display = output.toString(StandardCharsets.UTF_8);
+        int frames = display.split("/s - Album Trip", -1).length - 1;
+        Assertions.assertTrue(frames >= 2 && frames <= 5, frames + " frames for 120 events");
+        Assertions.assertTrue(display.contains("Album Trip completed."));
+    }
+}
@@ -0,0 +1,115 @@
+package com.werneckpaiva.googlephotosbatch.bulk;
+
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestBulkAlbumAdder {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> libraryIds(GooglePhotosAPI api) {
+        List<String> ids = new ArrayList<>();
+        api.listMediaItems(null).items().forEach(item -> ids.add(item.id()));
+        return ids;
+    }
+
+    private static BulkOperation.Summary run(GooglePhotosAPI api, Path results, String defaultAlbumId, String input)
+            throws IOException, InterruptedException {
+        try (BulkOperation operation = new BulkOperation(results, 3)) {
+            new BulkAlbumAdder(api, operation, defaultAlbumId).add(new BufferedReader(new StringReader(input)));
+            return operation.await();
+        }
+    }
+
+    @Test
+    public void testAddsToSeveralAlbumsInBatches() throws Exception {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(3);
+        api.setLatency(1, 0.1);
+        api.setPageSize(200);
+        api.addAlbum("Source", 120);
+        Album target = api.addAlbum("Target", 0);
+        Album other = api.addAlbum("Other", 0);
+        List<String> ids = libraryIds(api);
+        StringBuilder input = new StringBuilder();
+        ids.forEach(id -> input.append(id).append('\n'));
+        input.append(other.id()).append(',').append(ids.get(0)).append('\n');
+        input.append(ids.get(1)).append('\n');
+
+        BulkOperation.Summary summary = run(api, tempDir.resolve("results.jsonl"), target.id(), input.toString());
+
+        Assertions.assertEquals(new BulkOperation.Summary(121, 0, 1), summary);
+        Assertions.assertEquals(120, api.retrieveFilesFromAlbum(target).size());
+        Assertions.assertEquals(1, api.retrieveFilesFromAlbum(other).size());
+        Assertions.assertEquals(121, Files.readAllLines(tempDir.resolve("results.jsonl")).size());
+    }
+
+    @Test
+    public void testBadItemDoesNotFailItsBatch() throws Exception {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(5);
+        api.setLatency(1, 0.1);
+        api.setPageSize(100);
+        api.addAlbum("Source", 49);
+        Album target = api.addAlbum("Target", 0);
+        List<String> ids = libraryIds(api);
+        ids.add(20, "deleted-item");
+        Path results = tempDir.resolve("results.jsonl");
+
+        BulkOperation.Summary summary = run(api, results, target.id(), String.join("\n", ids));
+
+        Assertions.assertEquals(new BulkOperation.Summary(49, 1, 0), summary);
+        Assertions.assertEquals(49, api.retrieveFilesFromAlbum(target).size());
+        List<String> failed = Files.readAllLines(results).stream()
+                .filter(line -> line.contains("\"FAILED\""))
+                .toList();
+        Assertions.assertEquals(1, failed.size());
+        Assertions.assertTrue(failed.get(0).contains("\"deleted-item\""), failed.get(0));
+    }
+
+    @Test
+    public void testDefaultResultsFileIsNextToInput() {
+        Assertions.assertEquals(Path.of("lists", "ids.txt.results.jsonl"),
+                BulkOperation.defaultResultsFile(Path.of("lists", "ids.txt").toString(), "fallback.jsonl"));
+        Assertions.assertEquals(Path.of("fallback.jsonl"), BulkOperation.defaultResultsFile("-", "fallback.jsonl"));
+        Assertions.assertEquals(Path.of("fallback.jsonl"), BulkOperation.defaultResultsFile(null, "fallback.jsonl"));
+    }
+
+    @Test
+    public void testRerunOnlyRetriesFailedItems() throws Exception {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(11);
+        api.setLatency(1, 0.1);
+        api.setPageSize(500);
+        api.addAlbum("Source", 400);
+        Album target = api.addAlbum("Target", 0);
+        List<String> ids = libraryIds(api);
+        String input = String.join("\n", ids);
+        Path results = tempDir.resolve("results.jsonl");
+
+        api.setErrorRates(0.8, 0);
+        BulkOperation.Summary first = run(api, results, target.id(), input);
+        Assertions.assertTrue(first.failed() > 0, "expected some batches to fail");
+        Assertions.assertEquals(400, first.succeeded() + first.failed());
+        // Killed while writing a result
+        Files.write(results, "{\"id\":\"trunc".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        api.setErrorRates(0, 0);
+        BulkOperation.Summary second = run(api, results, target.id(), input);
+
+        Assertions.assertEquals(new BulkOperation.Summary(first.failed(), 0, first.succeeded()), second);
+        Assertions.assertEquals(400, api.retrieveFilesFromAlbum(target).size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.werneckpaiva.googlephotosbatch.bulk;
+
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestBulkDescriptionUpdater {
+
+    @TempDir
+    Path tempDir;
+
+    private static BulkOperation.Summary run(SimulatedGooglePhotosAPI api, Path results, String input)
+            throws IOException, InterruptedException {
+        try (BulkOperation operation = new BulkOperation(results, 4)) {
+            new BulkDescriptionUpdater(api, operation).update(new BufferedReader(new StringReader(input)));
+            return operation.await();
+        }
+    }
+
+    @Test
+    public void testReadsCsvWithQuotedFields() throws IOException {
+        String csv = "\"a, b\",\"said \"\"hi\"\"\nnext line\"";
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        Assertions.assertEquals(List.of("a, b", "said \"hi\"\nnext line"),
+                BulkDescriptionUpdater.readCsvRecord(reader.readLine(), reader));
+        Assertions.assertEquals(List.of("id1", "Beach, 2019"),
+                BulkDescriptionUpdater.readCsvRecord("id1,Beach, 2019", new BufferedReader(new StringReader(""))));
+    }
+
+    @Test
+    public void testUpdatesFromMixedFeedAndResumes() throws Exception {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(7);
+        api.setLatency(1, 0.1);
+        api.addAlbum("Album", 60);
+        List<String> ids = new ArrayList<>();
+        api.listMediaItems(null).items().forEach(item -> ids.add(item.id()));
+        StringBuilder input = new StringBuilder("mediaId,description\n");
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 2 == 0) {
+                input.append("{\"id\":\"").append(ids.get(i)).append("\",\"description\":\"Photo ").append(i)
+                        .append("\"}\n");
+            } else {
+                input.append(ids.get(i)).append(",\"Photo, ").append(i).append("\"\n");
+            }
+        }
+        Path results = tempDir.resolve("results.jsonl");
+
+        api.setErrorRates(0.7, 0);
+        BulkOperation.Summary first = run(api, results, input.toString());
+        Assertions.assertTrue(first.failed() > 0, "expected some updates to fail");
+        Assertions.assertEquals(60, first.succeeded() + first.failed());
+
+        api.setErrorRates(0, 0);
+        BulkOperation.Summary second = run(api, results, input.toString());
+
+        Assertions.assertEquals(new BulkOperation.Summary(first.failed(), 0, first.succeeded()), second);
+        Assertions.assertEquals("Photo 0", api.getDescription(ids.get(0)));
+        Assertions.assertEquals("Photo, 1", api.getDescription(ids.get(1)));
+        for (String id : ids) {
+            Assertions.assertNotNull(api.getDescription(id));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import com.werneckpaiva.googlephotosbatch.service.Album;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+
+public class TestInstrumentedGooglePhotosAPI {
+
+    @Test
+    public void testAlbumListingIsTimedWhileIterating() {
+        // Setup: each album takes 20 ms to arrive, as if fetched page by page
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(1) {
+            @Override
+            public Iterable<Album> getAllAlbums() {
+                List<Album> albums = List.of(createAlbum("A"), createAlbum("B"), createAlbum("C"));
+                return () -> new Iterator<>() {
+                    private final Iterator<Album> iterator = albums.iterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Album next() {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return iterator.next();
+                    }
+                };
+            }
+        };
+        MetricsRegistry metrics = new MetricsRegistry();
+        InstrumentedGooglePhotosAPI instrumented = new InstrumentedGooglePhotosAPI(api, metrics);
+
+        // Execute
+        int albums = 0;
+        for (Album ignored : instrumented.getAllAlbums()) {
+            albums++;
+        }
+
+        // Verify: one observation covering the whole listing
+        MetricsRegistry.Histogram latency = metrics.histogram("googlephotos_api_call_seconds",
+                "Latency of Google Photos API calls", MetricsRegistry.LATENCY_BUCKETS, "method", "getAllAlbums");
+        Assertions.assertEquals(3, albums);
+        Assertions.assertEquals(1, latency.count());
+        Assertions.assertTrue(latency.sum() >= 0.06, "Listing took " + latency.sum());
+    }
+}
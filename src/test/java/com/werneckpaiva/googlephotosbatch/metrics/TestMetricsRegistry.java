@@ -0,0 +1,62 @@
+package com.werneckpaiva.googlephotosbatch.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class TestMetricsRegistry {
+
+    @Test
+    public void testCounterWithLabels() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("api_errors_total", "Errors", "method", "createAlbum").inc();
+        registry.counter("api_errors_total", "Errors", "method", "createAlbum").inc();
+
+        String text = registry.toPrometheusText();
+
+        Assertions.assertTrue(text.contains("# TYPE api_errors_total counter\n"));
+        Assertions.assertTrue(text.contains("api_errors_total{method=\"createAlbum\"} 2\n"));
+    }
+
+    @Test
+    public void testHistogramBucketsAreCumulative() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Histogram histogram = registry.histogram("resize_seconds", "Resize", new double[] { 1, 5 });
+        histogram.observe(0.5);
+        histogram.observe(2);
+        histogram.observe(10);
+
+        String text = registry.toPrometheusText();
+
+        Assertions.assertTrue(text.contains("resize_seconds_bucket{le=\"1\"} 1\n"));
+        Assertions.assertTrue(text.contains("resize_seconds_bucket{le=\"5\"} 2\n"));
+        Assertions.assertTrue(text.contains("resize_seconds_bucket{le=\"+Inf\"} 3\n"));
+        Assertions.assertTrue(text.contains("resize_seconds_sum 12.5\n"));
+        Assertions.assertTrue(text.contains("resize_seconds_count 3\n"));
+    }
+
+    @Test
+    public void testSnapshotIncludesGauges() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("queue_depth", "Queue", () -> 7, "queue", "upload");
+
+        Map<String, Double> snapshot = registry.snapshot();
+
+        Assertions.assertEquals(7.0, snapshot.get("queue_depth{queue=\"upload\"}"));
+    }
+
+    @Test
+    public void testSumGaugeAddsEveryInstance() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.sumGauge("queue_depth", "Queue", () -> 7, "queue", "upload");
+        registry.sumGauge("queue_depth", "Queue", () -> 5, "queue", "upload");
+        registry.sumGauge("queue_depth", "Queue", () -> 2, "queue", "resize");
+
+        Map<String, Double> snapshot = registry.snapshot();
+
+        Assertions.assertEquals(12.0, snapshot.get("queue_depth{queue=\"upload\"}"));
+        Assertions.assertEquals(2.0, snapshot.get("queue_depth{queue=\"resize\"}"));
+        Assertions.assertTrue(registry.toPrometheusText().contains("queue_depth{queue=\"upload\"} 12\n"));
+    }
+}
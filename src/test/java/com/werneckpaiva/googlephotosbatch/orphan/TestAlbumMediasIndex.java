@@ -0,0 +1,83 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+public class TestAlbumMediasIndex {
+
+    @TempDir
+    Path tempDir;
+
+    private static String albumLine(String albumId) {
+        return "{\"albumName\":\"Album " + albumId + "\",\"albumId\":\"" + albumId
+                + "\",\"files\":[{\"id\":\"m1\",\"filename\":\"a.jpg\",\"baseUrl\":\"u\"},"
+                + "{\"id\":\"m2\",\"filename\":\"b.jpg\",\"baseUrl\":\"u\"}]}";
+    }
+
+    private static void append(Path file, String... lines) throws IOException {
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void testBuildsIndexFromExistingDump() throws IOException {
+        Path data = tempDir.resolve("album_medias.json");
+        append(data, albumLine("a1"), albumLine("a2"));
+
+        AlbumMediasIndex index = new AlbumMediasIndex(data);
+
+        Assertions.assertEquals(Set.of("a1", "a2"), index.load());
+        Assertions.assertEquals(2, Files.readAllLines(index.getIndexFile()).size());
+        // Second load only reads the index
+        Assertions.assertEquals(Set.of("a1", "a2"), new AlbumMediasIndex(data).load());
+        Assertions.assertEquals(2, Files.readAllLines(index.getIndexFile()).size());
+    }
+
+    @Test
+    public void testCatchesUpWithUnindexedAppends() throws IOException {
+        Path data = tempDir.resolve("album_medias.json");
+        AlbumMediasIndex index = new AlbumMediasIndex(data);
+        append(data, albumLine("a1"));
+        index.append("a1");
+        // Crashed after the data append, before the index append
+        append(data, albumLine("a2"));
+
+        Assertions.assertEquals(Set.of("a1", "a2"), new AlbumMediasIndex(data).load());
+    }
+
+    @Test
+    public void testSkipsMalformedLinesAndCutsPartialLastLine() throws IOException {
+        Path data = tempDir.resolve("album_medias.json");
+        append(data, albumLine("a1"), "{\"albumName\": oops", albumLine("a2"));
+        String partial = albumLine("a3").substring(0, 40);
+        Files.write(data, partial.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        AlbumMediasIndex index = new AlbumMediasIndex(data);
+        Assertions.assertEquals(Set.of("a1", "a2"), index.load());
+
+        // New records appended after the cut are read back
+        append(data, albumLine("a4"));
+        index.append("a4");
+        Assertions.assertEquals(Set.of("a1", "a2", "a4"), new AlbumMediasIndex(data).load());
+        Assertions.assertFalse(Files.readString(data).contains(partial));
+    }
+
+    @Test
+    public void testRebuildsIndexWhenDumpWasReplaced() throws IOException {
+        Path data = tempDir.resolve("album_medias.json");
+        append(data, albumLine("a1"), albumLine("a2"));
+        new AlbumMediasIndex(data).load();
+        Files.write(data, List.of(albumLine("b1")), StandardCharsets.UTF_8);
+
+        Assertions.assertEquals(Set.of("b1"), new AlbumMediasIndex(data).load());
+    }
+}
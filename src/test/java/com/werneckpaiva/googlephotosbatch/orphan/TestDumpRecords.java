@@ -0,0 +1,77 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class TestDumpRecords {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMalformedRecordsAreSkippedWithoutReopening() throws IOException {
+        // Every third record is torn, and a record longer than the read buffer sits in the middle
+        Path dump = tempDir.resolve("library_medias.json.gz");
+        List<String> expected = new ArrayList<>();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(dump)),
+                StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 3000; i++) {
+                String filename = i == 1500 ? "IMG_" + "9".repeat(200_000) : "IMG_" + i;
+                if (i % 3 == 2) {
+                    writer.write("{\"id\":\"m" + i + "\",\"filen\n");
+                } else {
+                    writer.write("{\"id\":\"m" + i + "\",\"filename\":\"" + filename + "\"}\n");
+                    expected.add("m" + i);
+                }
+            }
+        }
+        AtomicInteger opens = new AtomicInteger();
+        List<String> ids = new ArrayList<>();
+
+        long records = DumpRecords.read(dump, () -> {
+            opens.incrementAndGet();
+            return new GZIPInputStream(Files.newInputStream(dump));
+        }, parser -> {
+            String id = null;
+            while (parser.nextToken() != JsonToken.END_OBJECT) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("id".equals(field)) {
+                    id = parser.getText();
+                }
+            }
+            ids.add(id);
+        });
+
+        Assertions.assertEquals(1, opens.get());
+        Assertions.assertEquals(2000, records);
+        Assertions.assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testTruncatedTailStopsReading() throws IOException {
+        Path dump = tempDir.resolve("library_medias.json");
+        try (OutputStream out = Files.newOutputStream(dump)) {
+            out.write("{\"id\":\"m1\"}\n\n{\"id\":\"m2\"}\n{\"id\":\"m3\",\"fil".getBytes(StandardCharsets.UTF_8));
+        }
+
+        long records = DumpRecords.read(dump, () -> Files.newInputStream(dump), parser -> parser.skipChildren());
+
+        Assertions.assertEquals(2, records);
+    }
+}
@@ -0,0 +1,74 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class TestExternalSorter {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> sortAll(ExternalSorter sorter) throws IOException {
+        List<String> keys = new ArrayList<>();
+        Iterator<ExternalSorter.Entry> sorted = sorter.sorted();
+        while (sorted.hasNext()) {
+            ExternalSorter.Entry entry = sorted.next();
+            String key = new String(entry.key(), StandardCharsets.UTF_8);
+            Assertions.assertEquals("v" + key, new String(entry.value(), StandardCharsets.UTF_8));
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static List<String> randomKeys(int count) {
+        Random random = new Random(3);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testSortsInMemory() throws IOException {
+        List<String> keys = randomKeys(1000);
+        try (ExternalSorter sorter = new ExternalSorter(1 << 20, tempDir)) {
+            for (String key : keys) {
+                sorter.add(key.getBytes(StandardCharsets.UTF_8), ("v" + key).getBytes(StandardCharsets.UTF_8));
+            }
+            List<String> sorted = sortAll(sorter);
+
+            Assertions.assertEquals(0, sorter.spilledRuns());
+            keys.sort(null);
+            Assertions.assertEquals(keys, sorted);
+        }
+    }
+
+    @Test
+    public void testSpillsAndMergesRuns() throws IOException {
+        List<String> keys = randomKeys(5000);
+        try (ExternalSorter sorter = new ExternalSorter(4096, tempDir)) {
+            for (String key : keys) {
+                sorter.add(key.getBytes(StandardCharsets.UTF_8), ("v" + key).getBytes(StandardCharsets.UTF_8));
+            }
+            List<String> sorted = sortAll(sorter);
+
+            Assertions.assertTrue(sorter.spilledRuns() > 1);
+            keys.sort(null);
+            Assertions.assertEquals(keys, sorted);
+        }
+        try (var files = Files.list(tempDir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+}
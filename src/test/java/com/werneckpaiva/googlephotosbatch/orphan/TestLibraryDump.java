@@ -0,0 +1,98 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLibraryDump {
+
+    @TempDir
+    Path tempDir;
+
+    private SimulatedGooglePhotosAPI createLibrary(int items) {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(5);
+        api.setLatency(1, 0.1);
+        api.setPageSize(10);
+        api.addAlbum("Album", items);
+        return api;
+    }
+
+    @Test
+    public void testDumpsWholeLibrary() throws IOException {
+        Path data = tempDir.resolve("library_medias.json");
+        Path checkpoint = tempDir.resolve("library_page_token.txt");
+        LibraryDump dump = new LibraryDump(data, checkpoint);
+        dump.setCheckpointPages(2);
+
+        long written = dump.run(createLibrary(95));
+
+        Assertions.assertEquals(95, written);
+        List<String> lines = Files.readAllLines(data);
+        Assertions.assertEquals(95, lines.size());
+        Assertions.assertEquals(95, new HashSet<>(lines).size());
+        Assertions.assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    public void testResumeDiscardsLinesAfterCheckpoint() throws IOException {
+        SimulatedGooglePhotosAPI api = createLibrary(95);
+        Path data = tempDir.resolve("library_medias.json");
+        Path checkpoint = tempDir.resolve("library_page_token.txt");
+        new LibraryDump(data, checkpoint).run(api);
+        List<String> expected = Files.readAllLines(data);
+
+        // Crash after the checkpoint at item 30, with 5 more lines and a partial one written
+        List<String> firstPages = expected.subList(0, 30);
+        Files.write(data, firstPages, StandardCharsets.UTF_8);
+        long checkpointLength = Files.size(data);
+        Files.write(data, expected.subList(30, 35), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Files.write(data, "{\"id\":\"med".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(checkpoint, List.of("30", String.valueOf(checkpointLength)), StandardCharsets.UTF_8);
+
+        long written = new LibraryDump(data, checkpoint).run(api);
+
+        Assertions.assertEquals(65, written);
+        Assertions.assertEquals(expected, Files.readAllLines(data));
+    }
+
+    @Test
+    public void testResumeBeforeFirstCheckpointDoesNotDuplicate() throws IOException {
+        Path data = tempDir.resolve("library_medias.json");
+        Path checkpoint = tempDir.resolve("library_page_token.txt");
+        // Crash while listing the 4th page, before the checkpoint every 10 pages
+        SimulatedGooglePhotosAPI crashing = new SimulatedGooglePhotosAPI(5) {
+            private final AtomicInteger pages = new AtomicInteger();
+
+            @Override
+            public MediaItemsResult listMediaItems(String pageToken) {
+                if (pages.incrementAndGet() == 4) {
+                    throw new IllegalStateException("Killed");
+                }
+                return super.listMediaItems(pageToken);
+            }
+        };
+        crashing.setPageSize(10);
+        crashing.addAlbum("Album", 95);
+        LibraryDump dump = new LibraryDump(data, checkpoint);
+        dump.setCheckpointPages(10);
+        dump.setCheckpointIntervalMs(Long.MAX_VALUE);
+        Assertions.assertThrows(IllegalStateException.class, () -> dump.run(crashing));
+        Assertions.assertEquals(30, Files.readAllLines(data).size());
+
+        new LibraryDump(data, checkpoint).run(createLibrary(95));
+
+        List<String> lines = Files.readAllLines(data);
+        Assertions.assertEquals(95, lines.size());
+        Assertions.assertEquals(95, new HashSet<>(lines).size());
+    }
+}
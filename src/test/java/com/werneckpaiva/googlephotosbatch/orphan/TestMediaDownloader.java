@@ -0,0 +1,149 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.werneckpaiva.googlephotosbatch.service.GooglePhotosAPI;
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TestMediaDownloader {
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+
+    private final Map<String, String> rangeRequests = new ConcurrentHashMap<>();
+
+    private final Set<String> expiredOnce = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private static byte[] content(String id) {
+        return (id + " ").repeat(5000).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1, path.lastIndexOf('='));
+        if (expiredOnce.remove(id)) {
+            exchange.sendResponseHeaders(403, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = content(id);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        if (range != null) {
+            rangeRequests.put(id, range);
+            int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (body.length - 1) + "/"
+                    + body.length);
+            body = Arrays.copyOfRange(body, from, body.length);
+            status = 206;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private SimulatedGooglePhotosAPI createLibrary(int items) {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(9);
+        api.setLatency(1, 0.1);
+        api.setBaseUrlPrefix("http://localhost:" + server.getAddress().getPort() + "/media/");
+        api.addAlbum("Album", items);
+        return api;
+    }
+
+    private static List<String> libraryIds(GooglePhotosAPI api) {
+        List<String> ids = new ArrayList<>();
+        api.listMediaItems(null).items().forEach(item -> ids.add(item.id()));
+        return ids;
+    }
+
+    @Test
+    public void testReadsIdsFromPlainListAndOrphanReport() throws IOException {
+        String plain = "id1\n\n# comment\n id2 \n";
+        String report = "{\n  \"orphans\" : [ {\"id\" : \"id1\", \"filename\" : \"a.jpg\"},"
+                + " {\"id\" : \"id2\", \"filename\" : \"b.jpg\"} ],\n  \"totalAlbums\" : 3,\n  \"orphanCount\" : 2\n}";
+        String dump = "{\"id\":\"id1\",\"filename\":\"a.jpg\"}\n{\"id\":\"id2\",\"filename\":\"b.jpg\"}\n";
+
+        for (String input : List.of(plain, report, dump)) {
+            Assertions.assertEquals(List.of("id1", "id2"),
+                    MediaDownloader.readIds(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    @Test
+    public void testDownloadsAndSkipsDoneItemsOnRerun() throws IOException {
+        SimulatedGooglePhotosAPI api = createLibrary(12);
+        List<String> ids = libraryIds(api);
+        Path output = tempDir.resolve("out");
+        Path done = tempDir.resolve("done.txt");
+        MediaDownloader downloader = new MediaDownloader(output, done);
+        downloader.setConcurrency(3);
+
+        MediaDownloader.Result result = downloader.download(api, ids);
+
+        Assertions.assertEquals(new MediaDownloader.Result(12, 0, 0), result);
+        Assertions.assertEquals(12, Files.readAllLines(done).size());
+        for (GooglePhotosAPI.MediaItemInfo item : api.getMediaItems(ids)) {
+            Assertions.assertArrayEquals(content(item.id()), Files.readAllBytes(output.resolve(item.filename())));
+        }
+
+        List<String> withUnknown = new ArrayList<>(ids);
+        withUnknown.add("unknown");
+        Assertions.assertEquals(new MediaDownloader.Result(0, 12, 1),
+                new MediaDownloader(output, done).download(api, withUnknown));
+    }
+
+    @Test
+    public void testResumesPartialFileAndRefreshesRejectedUrl() throws IOException {
+        SimulatedGooglePhotosAPI api = createLibrary(2);
+        List<String> ids = libraryIds(api);
+        Path output = tempDir.resolve("out");
+        Files.createDirectories(output);
+        byte[] expected = content(ids.get(0));
+        Files.write(output.resolve(ids.get(0) + ".part"), Arrays.copyOf(expected, 1000));
+        expiredOnce.add(ids.get(1));
+        MediaDownloader downloader = new MediaDownloader(output, tempDir.resolve("done.txt"));
+        downloader.setRetryDelayMs(0);
+
+        Assertions.assertEquals(new MediaDownloader.Result(2, 0, 0), downloader.download(api, ids));
+
+        Assertions.assertEquals("bytes=1000-", rangeRequests.get(ids.get(0)));
+        GooglePhotosAPI.MediaItemInfo first = api.getMediaItem(ids.get(0));
+        Assertions.assertArrayEquals(expected, Files.readAllBytes(output.resolve(first.filename())));
+        Assertions.assertFalse(Files.exists(output.resolve(ids.get(0) + ".part")));
+    }
+}
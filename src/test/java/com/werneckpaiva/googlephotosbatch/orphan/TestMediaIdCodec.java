@@ -0,0 +1,23 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class TestMediaIdCodec {
+
+    @Test
+    public void testRoundTrip() {
+        for (String id : List.of("AF1QipN8z3fGx-_Qw12A", "AF1QipN8z3fGx-_Qw1", "AF1QipN8z3fGx-_Qw12", "with space",
+                "a", "")) {
+            Assertions.assertEquals(id, MediaIdCodec.decode(MediaIdCodec.encode(id)));
+        }
+    }
+
+    @Test
+    public void testBase64IdsAreStoredDecoded() {
+        Assertions.assertEquals(16, MediaIdCodec.encode("AF1QipN8z3fGx-_Qw12A").length);
+        Assertions.assertEquals(11, MediaIdCodec.encode("with space").length);
+    }
+}
@@ -0,0 +1,91 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestOrphanReport {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReportsLibraryItemsInNoAlbum() throws IOException {
+        Path albumMedias = tempDir.resolve("album_medias.json");
+        Files.write(albumMedias, List.of(
+                "{\"albumName\":\"A\",\"albumId\":\"a1\",\"files\":[{\"id\":\"m1\",\"filename\":\"1.jpg\",\"baseUrl\":\"u\"},{\"id\":\"m2\",\"filename\":\"2.jpg\",\"baseUrl\":\"u\"}]}",
+                "{\"albumName\":\"B\",\"albumId\":\"a2\",\"files\":[{\"id\":\"m2\",\"filename\":\"2.jpg\",\"baseUrl\":\"u\"},{\"id\":\"m9\",\"filename\":\"9.jpg\",\"baseUrl\":\"u\"}]}"));
+        Path libraryMedias = tempDir.resolve("library_medias.json");
+        List<String> libraryLines = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            libraryLines.add("{\"id\":\"m" + i + "\",\"filename\":\"" + i + ".jpg\",\"baseUrl\":\"u\"}");
+        }
+        Files.write(libraryMedias, libraryLines);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OrphanReport.Summary summary = new OrphanReport(1 << 20, tempDir).write(albumMedias, libraryMedias, out);
+
+        Assertions.assertEquals(new OrphanReport.Summary(2, 5, 3, 3), summary);
+        JsonNode report = new ObjectMapper().readTree(out.toByteArray());
+        Assertions.assertEquals(3, report.get("orphanCount").asInt());
+        Assertions.assertEquals(3, report.get("orphans").size());
+        Assertions.assertEquals("m3", report.get("orphans").get(0).get("id").asText());
+        Assertions.assertEquals("3.jpg", report.get("orphans").get(0).get("filename").asText());
+        Assertions.assertEquals("m5", report.get("orphans").get(2).get("id").asText());
+    }
+
+    @Test
+    public void testSpilledJoinMatchesInMemoryJoin() throws IOException {
+        Path albumMedias = tempDir.resolve("album_medias.json");
+        Path libraryMedias = tempDir.resolve("library_medias.json");
+        List<String> albumLines = new ArrayList<>();
+        List<String> libraryLines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String id = "AF1Qip" + Integer.toString(i * 7919, 36);
+            libraryLines.add("{\"id\":\"" + id + "\",\"filename\":\"IMG_" + i + ".jpg\"}");
+            if (i % 3 != 0) {
+                albumLines.add("{\"albumId\":\"a" + i + "\",\"files\":[{\"id\":\"" + id + "\"}]}");
+            }
+        }
+        Files.write(albumMedias, albumLines);
+        Files.write(libraryMedias, libraryLines);
+
+        OrphanReport.Summary inMemory = new OrphanReport(1 << 24, tempDir)
+                .write(albumMedias, libraryMedias, new ByteArrayOutputStream());
+        OrphanReport.Summary spilled = new OrphanReport(2048, tempDir)
+                .write(albumMedias, libraryMedias, new ByteArrayOutputStream());
+
+        Assertions.assertEquals(1000, inMemory.orphanCount());
+        Assertions.assertEquals(inMemory, spilled);
+    }
+
+    @Test
+    public void testMalformedRecordsAreSkipped() throws IOException {
+        Path albumMedias = tempDir.resolve("album_medias.json");
+        Files.write(albumMedias, List.of(
+                "{\"albumName\":\"A\",\"albumId\":\"a1\",\"files\":[{\"id\":\"AAAA\",\"filename\":\"a.jpg\"}]}",
+                "{\"albumName\":\"B\",\"albumId\":\"a2\",\"files\":[{\"id\":\"BBBB\",\"filen",
+                "{\"albumName\":\"C\",\"albumId\":\"a3\",\"files\":[{\"id\":\"CCCC\",\"filename\":\"c.jpg\"}]}",
+                "{\"albumName\":\"D\",\"albumId\":\"a4\",\"files\":[{\"id\":\"DDDD\""));
+        Path libraryMedias = tempDir.resolve("library_medias.json");
+        Files.write(libraryMedias, List.of(
+                "{\"id\":\"AAAA\",\"filename\":\"a.jpg\"}",
+                "{\"id\":\"XXXX\",\"filen",
+                "{\"id\":\"CCCC\",\"filename\":\"c.jpg\"}"));
+
+        OrphanReport.Summary summary = new OrphanReport(1 << 20, tempDir)
+                .write(albumMedias, libraryMedias, new ByteArrayOutputStream());
+
+        // B and the truncated tail D are dropped whole, C is still read
+        Assertions.assertEquals(new OrphanReport.Summary(2, 2, 2, 0), summary);
+    }
+}
@@ -0,0 +1,130 @@
+package com.werneckpaiva.googlephotosbatch.orphan;
+
+import com.werneckpaiva.googlephotosbatch.service.SimulatedGooglePhotosAPI;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class TestSegmentedDump {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> readLines(InputStream in) throws IOException {
+        try (in) {
+            String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return content.isEmpty() ? List.of() : List.of(content.split("\n"));
+        }
+    }
+
+    private static String albumLine(String albumId, String mediaId) {
+        return "{\"albumName\":\"Album\",\"albumId\":\"" + albumId + "\",\"files\":[{\"id\":\"" + mediaId
+                + "\",\"filename\":\"a.jpg\"}]}";
+    }
+
+    @Test
+    public void testGzipSegmentsReadWholeAndOneByOne() throws IOException {
+        Path file = tempDir.resolve("dump.json");
+        try (SegmentedDump dump = SegmentedDump.openForAppend(file, SegmentedDump.Format.GZIP)) {
+            dump.writeLine("{\"id\":\"1\"}");
+            dump.writeLine("{\"id\":\"2\"}");
+            dump.commit();
+            dump.writeLine("{\"id\":\"3\"}");
+        }
+        // Appending keeps the existing format
+        try (SegmentedDump dump = SegmentedDump.openForAppend(file, SegmentedDump.Format.JSONL)) {
+            Assertions.assertEquals(SegmentedDump.Format.GZIP, dump.getFormat());
+            dump.writeLine("{\"id\":\"4\"}");
+        }
+
+        Assertions.assertEquals(SegmentedDump.Format.GZIP, SegmentedDump.detect(file));
+        Assertions.assertEquals(List.of("{\"id\":\"1\"}", "{\"id\":\"2\"}", "{\"id\":\"3\"}", "{\"id\":\"4\"}"),
+                readLines(SegmentedDump.openRead(file)));
+        List<SegmentedDump.Segment> segments = SegmentedDump.readSegments(file);
+        Assertions.assertEquals(3, segments.size());
+        Assertions.assertEquals(2, segments.get(0).records());
+        Assertions.assertEquals(Files.size(file), segments.get(2).end());
+        Assertions.assertEquals(List.of("{\"id\":\"3\"}"),
+                readLines(SegmentedDump.openSegment(file, segments.get(1))));
+    }
+
+    @Test
+    public void testTruncateDropsLaterSegments() throws IOException {
+        Path file = tempDir.resolve("dump.json");
+        long firstEnd;
+        try (SegmentedDump dump = SegmentedDump.openForAppend(file, SegmentedDump.Format.GZIP)) {
+            dump.writeLine("{\"id\":\"1\"}");
+            firstEnd = dump.commit();
+            dump.writeLine("{\"id\":\"2\"}");
+        }
+
+        SegmentedDump.truncate(file, firstEnd);
+
+        Assertions.assertEquals(1, SegmentedDump.readSegments(file).size());
+        Assertions.assertEquals(List.of("{\"id\":\"1\"}"), readLines(SegmentedDump.openRead(file)));
+    }
+
+    @Test
+    public void testAlbumIndexDropsUncommittedGzipTail() throws IOException {
+        Path file = tempDir.resolve("album_medias.json");
+        try (SegmentedDump dump = SegmentedDump.openForAppend(file, SegmentedDump.Format.GZIP)) {
+            dump.writeLine(albumLine("a1", "m1"));
+            dump.writeLine(albumLine("a2", "m2"));
+            dump.commit();
+            dump.writeLine(albumLine("a3", "m3"));
+            dump.commit();
+        }
+        long committed = Files.size(file);
+        // Half of a gzip member written by a crashed run
+        byte[] last = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOfRange(last, 0, 20), StandardOpenOption.APPEND);
+
+        Assertions.assertEquals(Set.of("a1", "a2", "a3"), new AlbumMediasIndex(file).load());
+        Assertions.assertEquals(committed, Files.size(file));
+    }
+
+    @Test
+    public void testGzipLibraryDumpWithoutBaseUrlFeedsTheReport() throws IOException {
+        SimulatedGooglePhotosAPI api = new SimulatedGooglePhotosAPI(11);
+        api.setLatency(1, 0.1);
+        api.setPageSize(7);
+        api.addAlbum("Album", 40);
+        Path library = tempDir.resolve("library_medias.json");
+        LibraryDump libraryDump = new LibraryDump(library, tempDir.resolve("token.txt"));
+        libraryDump.setFormat(SegmentedDump.Format.GZIP);
+        libraryDump.setDropBaseUrl(true);
+        libraryDump.setCheckpointPages(1);
+        libraryDump.run(api);
+
+        List<String> lines = readLines(SegmentedDump.openRead(library));
+        Assertions.assertEquals(40, lines.size());
+        Assertions.assertFalse(lines.get(0).contains("baseUrl"));
+        Assertions.assertTrue(SegmentedDump.readSegments(library).size() > 1);
+
+        List<String> albumLines = new ArrayList<>();
+        for (int i = 0; i < 40; i += 2) {
+            String mediaId = lines.get(i).substring(7, lines.get(i).indexOf('"', 7));
+            albumLines.add(albumLine("a" + i, mediaId));
+        }
+        Path albums = tempDir.resolve("album_medias.json");
+        Files.write(albums, albumLines);
+
+        OrphanReport report = new OrphanReport(1 << 20, tempDir);
+        report.setReaderThreads(4);
+        OrphanReport.Summary summary = report.write(albums, library, new ByteArrayOutputStream());
+
+        Assertions.assertEquals(new OrphanReport.Summary(20, 40, 20, 20), summary);
+    }
+}
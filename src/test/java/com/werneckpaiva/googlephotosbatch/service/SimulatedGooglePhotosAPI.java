@@ -0,0 +1,401 @@
+package com.werneckpaiva.googlephotosbatch.service;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ResourceExhaustedException;
+import com.google.api.gax.rpc.UnavailableException;
+import io.grpc.Status;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fake of the Google Photos API.
+ * Simulates per-call latency (log-normal), a shared upload link with limited bandwidth,
+ * paged listings, injected UNAVAILABLE / RESOURCE_EXHAUSTED errors and upload token expiry.
+ * Errors surface the way GooglePhotosAPIV1LibraryImpl surfaces them: failed uploads return
+ * a null token, album listings and saves are retried internally, getAllAlbums throws and so
+ * do batch adds and description updates once their retries are exhausted.
+ * Album creation and lookups never fail.
+ */
+public class SimulatedGooglePhotosAPI implements GooglePhotosAPI {
+
+    public record Stats(int calls, int errors, int uploads, int failedUploads, long uploadedBytes,
+            int itemsCreated, int expiredTokens, int droppedItems) {
+    }
+
+    private record UploadToken(String name, long issuedAt) {
+    }
+
+    private static final int LIST_ALBUMS_PAGE_SIZE = 50;
+
+    private static final int BATCH_GET_SIZE = 50;
+
+    private static final int BATCH_ADD_SIZE = 50;
+
+    // Same batching and retries as GooglePhotosAPIV1LibraryImpl.saveToAlbum
+    private static final int SAVE_BATCH_SIZE = 10;
+
+    private static final int SAVE_RETRIES = 3;
+
+    private final Random random;
+
+    private double latencyMedianMs = 50;
+
+    private double latencySigma = 0.5;
+
+    private long bandwidthBytesPerSecond = 0;
+
+    private int pageSize = 100;
+
+    private String baseUrlPrefix = "https://simulated/";
+
+    private double unavailableRate = 0;
+
+    private double resourceExhaustedRate = 0;
+
+    private long uploadTokenTtlMs = Long.MAX_VALUE;
+
+    private final Map<String, Album> albumsById = new ConcurrentHashMap<>();
+
+    private final Map<String, List<MediaItemInfo>> albumItems = new ConcurrentHashMap<>();
+
+    private final List<MediaItemInfo> libraryItems = Collections.synchronizedList(new ArrayList<>());
+
+    private final Map<String, UploadToken> uploadTokens = new ConcurrentHashMap<>();
+
+    private final Map<String, String> descriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong idSequence = new AtomicLong();
+
+    private long linkFreeAt = 0;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger uploads = new AtomicInteger();
+    private final AtomicInteger failedUploads = new AtomicInteger();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicInteger itemsCreated = new AtomicInteger();
+    private final AtomicInteger expiredTokens = new AtomicInteger();
+    private final AtomicInteger droppedItems = new AtomicInteger();
+
+    public SimulatedGooglePhotosAPI(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public void setLatency(double medianMs, double sigma) {
+        this.latencyMedianMs = medianMs;
+        this.latencySigma = sigma;
+    }
+
+    public void setBandwidthBytesPerSecond(long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Base URLs of items created from now on are this prefix followed by the item ID.
+     */
+    public void setBaseUrlPrefix(String baseUrlPrefix) {
+        this.baseUrlPrefix = baseUrlPrefix;
+    }
+
+    public void setErrorRates(double unavailableRate, double resourceExhaustedRate) {
+        this.unavailableRate = unavailableRate;
+        this.resourceExhaustedRate = resourceExhaustedRate;
+    }
+
+    public void setUploadTokenTtlMs(long uploadTokenTtlMs) {
+        this.uploadTokenTtlMs = uploadTokenTtlMs;
+    }
+
+    public Album addAlbum(String title, int numItems) {
+        Album album = createAlbumInternal(title);
+        for (int i = 0; i < numItems; i++) {
+            addItemToAlbum(album.id(), "existing_" + i);
+        }
+        return album;
+    }
+
+    public Stats getStats() {
+        return new Stats(calls.get(), errors.get(), uploads.get(), failedUploads.get(), uploadedBytes.get(),
+                itemsCreated.get(), expiredTokens.get(), droppedItems.get());
+    }
+
+    private void call(int pages) {
+        delay(pages);
+        double draw;
+        synchronized (random) {
+            draw = random.nextDouble();
+        }
+        if (draw < unavailableRate) {
+            errors.incrementAndGet();
+            throw new UnavailableException("Simulated UNAVAILABLE", null,
+                    GrpcStatusCode.of(Status.Code.UNAVAILABLE), true);
+        }
+        if (draw < unavailableRate + resourceExhaustedRate) {
+            errors.incrementAndGet();
+            throw new ResourceExhaustedException("Simulated RESOURCE_EXHAUSTED", null,
+                    GrpcStatusCode.of(Status.Code.RESOURCE_EXHAUSTED), true);
+        }
+    }
+
+    private void delay(int pages) {
+        calls.incrementAndGet();
+        for (int i = 0; i < Math.max(1, pages); i++) {
+            sleep(sampleLatencyMs());
+        }
+    }
+
+    private long sampleLatencyMs() {
+        double gaussian;
+        synchronized (random) {
+            gaussian = random.nextGaussian();
+        }
+        return (long) (latencyMedianMs * Math.exp(latencySigma * gaussian));
+    }
+
+    /**
+     * Uploads share one link: each transfer starts when the previous one left the link.
+     */
+    private void transfer(long bytes) {
+        if (bandwidthBytesPerSecond <= 0) {
+            return;
+        }
+        long finishAt;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, linkFreeAt);
+            finishAt = start + bytes * 1000 / bandwidthBytesPerSecond;
+            linkFreeAt = finishAt;
+        }
+        sleep(finishAt - System.currentTimeMillis());
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int pages(int numItems, int size) {
+        return (numItems + size - 1) / size;
+    }
+
+    private Album createAlbumInternal(String title) {
+        Album album = new Album(title, "album-" + idSequence.incrementAndGet(), true);
+        albumsById.put(album.id(), album);
+        albumItems.put(album.id(), Collections.synchronizedList(new ArrayList<>()));
+        return album;
+    }
+
+    private MediaItemInfo addItemToAlbum(String albumId, String filename) {
+        String id = "media-" + idSequence.incrementAndGet();
+        MediaItemInfo item = new MediaItemInfo(id, filename, baseUrlPrefix + id);
+        albumItems.get(albumId).add(item);
+        libraryItems.add(item);
+        return item;
+    }
+
+    @Override
+    public void logout() {
+    }
+
+    @Override
+    public void reauthenticate() {
+    }
+
+    @Override
+    public MediaItemInfo getMediaItem(String mediaId) {
+        delay(1);
+        synchronized (libraryItems) {
+            return libraryItems.stream().filter(item -> item.id().equals(mediaId)).findFirst().orElse(null);
+        }
+    }
+
+    @Override
+    public List<MediaItemInfo> getMediaItems(List<String> mediaIds) {
+        delay(pages(mediaIds.size(), BATCH_GET_SIZE));
+        Set<String> wanted = new HashSet<>(mediaIds);
+        synchronized (libraryItems) {
+            return libraryItems.stream().filter(item -> wanted.contains(item.id())).toList();
+        }
+    }
+
+    @Override
+    public Set<MediaItemInfo> retrieveFilesFromAlbum(Album album) {
+        List<MediaItemInfo> items = albumItems.getOrDefault(album.id(), List.of());
+        int retry = 0;
+        while (true) {
+            try {
+                call(pages(items.size(), pageSize));
+                synchronized (items) {
+                    return new HashSet<>(items);
+                }
+            } catch (ApiException e) {
+                if (++retry >= 100) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String uploadSingleFile(String name, File file) {
+        uploads.incrementAndGet();
+        try {
+            call(1);
+        } catch (ApiException e) {
+            failedUploads.incrementAndGet();
+            return null;
+        }
+        transfer(file.length());
+        uploadedBytes.addAndGet(file.length());
+        String token = "token-" + idSequence.incrementAndGet();
+        uploadTokens.put(token, new UploadToken(name, System.currentTimeMillis()));
+        return token;
+    }
+
+    @Override
+    public int saveToAlbum(Album album, List<String> mediasUploaded) {
+        int failed = 0;
+        for (int i = 0; i < mediasUploaded.size(); i += SAVE_BATCH_SIZE) {
+            List<String> batch = mediasUploaded.subList(i, Math.min(i + SAVE_BATCH_SIZE, mediasUploaded.size()));
+            int batchFailed = saveBatch(album, batch);
+            if (batchFailed < 0) {
+                droppedItems.addAndGet(batch.size());
+                batchFailed = batch.size();
+            }
+            failed += batchFailed;
+        }
+        return failed;
+    }
+
+    /**
+     * Returns how many items had expired tokens, -1 when the batch was given up.
+     */
+    private int saveBatch(Album album, List<String> batch) {
+        for (int retry = 0; retry < SAVE_RETRIES; retry++) {
+            try {
+                call(1);
+            } catch (ApiException e) {
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            int expired = 0;
+            for (String token : batch) {
+                UploadToken uploadToken = uploadTokens.remove(token);
+                if (uploadToken == null || now - uploadToken.issuedAt() > uploadTokenTtlMs) {
+                    expiredTokens.incrementAndGet();
+                    expired++;
+                    continue;
+                }
+                addItemToAlbum(album.id(), uploadToken.name());
+                itemsCreated.incrementAndGet();
+            }
+            return expired;
+        }
+        return -1;
+    }
+
+    @Override
+    public Album createAlbum(String albumName) {
+        delay(1);
+        return createAlbumInternal(albumName);
+    }
+
+    @Override
+    public Album getAlbum(String albumId) {
+        delay(1);
+        return albumsById.get(albumId);
+    }
+
+    @Override
+    public Iterable<Album> getAllAlbums() {
+        call(pages(albumsById.size(), LIST_ALBUMS_PAGE_SIZE));
+        return new ArrayList<>(albumsById.values());
+    }
+
+    @Override
+    public MediaItemsResult listMediaItems(String pageToken) {
+        call(1);
+        int from = pageToken == null || pageToken.isEmpty() ? 0 : Integer.parseInt(pageToken);
+        List<MediaItemInfo> page;
+        synchronized (libraryItems) {
+            int to = Math.min(from + pageSize, libraryItems.size());
+            page = new ArrayList<>(libraryItems.subList(Math.min(from, to), to));
+            return new MediaItemsResult(page, to < libraryItems.size() ? String.valueOf(to) : null);
+        }
+    }
+
+    @Override
+    public void batchAddMediaItems(String albumId, List<String> mediaItemIds) {
+        for (int i = 0; i < mediaItemIds.size(); i += BATCH_ADD_SIZE) {
+            List<String> batch = mediaItemIds.subList(i, Math.min(i + BATCH_ADD_SIZE, mediaItemIds.size()));
+            Set<String> ids = new HashSet<>(batch);
+            synchronized (libraryItems) {
+                // The whole batch is rejected when one of its items is unknown
+                Set<String> unknown = new HashSet<>(ids);
+                libraryItems.forEach(item -> unknown.remove(item.id()));
+                if (!unknown.isEmpty()) {
+                    throw new IllegalArgumentException("Media items not found: " + unknown);
+                }
+            }
+            for (int retry = 1; ; retry++) {
+                try {
+                    call(1);
+                    break;
+                } catch (ApiException e) {
+                    if (retry >= SAVE_RETRIES) {
+                        throw new RuntimeException("Couldn't add " + batch.size() + " items to album " + albumId, e);
+                    }
+                }
+            }
+            List<MediaItemInfo> items = albumItems.get(albumId);
+            synchronized (libraryItems) {
+                for (MediaItemInfo item : libraryItems) {
+                    if (ids.contains(item.id())) {
+                        items.add(item);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateMediaItemDescription(String mediaId, String description) {
+        for (int retry = 1; ; retry++) {
+            try {
+                call(1);
+                break;
+            } catch (ApiException e) {
+                if (retry >= SAVE_RETRIES) {
+                    throw new RuntimeException("Could not update description for media item " + mediaId, e);
+                }
+            }
+        }
+        descriptions.put(mediaId, description);
+    }
+
+    public String getDescription(String mediaId) {
+        return descriptions.get(mediaId);
+    }
+}
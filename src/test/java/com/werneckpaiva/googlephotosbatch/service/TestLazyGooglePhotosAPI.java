@@ -0,0 +1,40 @@
+package com.werneckpaiva.googlephotosbatch.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLazyGooglePhotosAPI {
+
+    @Test
+    public void testClientCreatedOnFirstCallOnly() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        SimulatedGooglePhotosAPI simulated = new SimulatedGooglePhotosAPI(1);
+        simulated.setLatency(1, 0.1);
+        LazyGooglePhotosAPI api = new LazyGooglePhotosAPI(() -> {
+            created.incrementAndGet();
+            return simulated;
+        });
+        api.logout();
+        Assertions.assertFalse(api.isInitialized());
+        Assertions.assertEquals(-1, api.getInitializationMs());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> api.getAllAlbums());
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        api.createAlbum("Album");
+
+        Assertions.assertTrue(api.isInitialized());
+        Assertions.assertEquals(1, created.get());
+        Assertions.assertTrue(api.getInitializationMs() >= 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+public class TestBandwidthLimiter {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSchedule() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("09:00-18:00=5M, 22:00-06:00=500KB/s, 20M");
+        Assertions.assertEquals(5_000_000, schedule.bytesPerSecond(LocalTime.of(9, 0)));
+        Assertions.assertEquals(5_000_000, schedule.bytesPerSecond(LocalTime.of(17, 59)));
+        Assertions.assertEquals(20_000_000, schedule.bytesPerSecond(LocalTime.of(18, 0)));
+        Assertions.assertEquals(500_000, schedule.bytesPerSecond(LocalTime.of(23, 30)));
+        Assertions.assertEquals(500_000, schedule.bytesPerSecond(LocalTime.of(5, 0)));
+
+        Assertions.assertEquals(0, BandwidthSchedule.parse("09:00-18:00=5M").bytesPerSecond(LocalTime.of(8, 0)));
+        Assertions.assertEquals(1500, BandwidthSchedule.parse("1.5k").bytesPerSecond(LocalTime.NOON));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("5 MB per second"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("9h-18h=5M"));
+    }
+
+    @Test
+    public void testScheduleChangedAtRuntime() {
+        Clock tenAM = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneOffset.UTC);
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("09:00-18:00=5M,0"), tenAM);
+        Assertions.assertEquals(5_000_000, limiter.getCurrentBytesPerSecond());
+
+        limiter.setSchedule("unlimited");
+        Assertions.assertEquals(0, limiter.getCurrentBytesPerSecond());
+        Assertions.assertEquals("unlimited", limiter.getSchedule());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> limiter.setSchedule("fast"));
+    }
+
+    @Test
+    public void testUploadersShareTheLimit() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("1M"));
+        Runnable uploader = () -> {
+            for (int i = 0; i < 4; i++) {
+                limiter.acquire(BandwidthLimiter.SLICE_BYTES);
+            }
+        };
+        long start = System.nanoTime();
+        Thread first = new Thread(uploader);
+        Thread second = new Thread(uploader);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 8 slices at 1 MB/s, the first one sent right away
+        Assertions.assertTrue(seconds >= 7 * BandwidthLimiter.SLICE_BYTES / 1e6 * 0.9, "Took " + seconds + "s");
+        Assertions.assertEquals(8L * BandwidthLimiter.SLICE_BYTES, limiter.getBytesTransferred());
+    }
+
+    @Test
+    public void testThrottledFileFillsReads() throws IOException {
+        File file = tempDir.resolve("video.mp4").toFile();
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(file.toPath(), content);
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.UNLIMITED);
+
+        try (RandomAccessFile throttled = new ThrottledRandomAccessFile(file, limiter)) {
+            byte[] chunk = new byte[150_000];
+            Assertions.assertEquals(150_000, throttled.read(chunk));
+            byte[] rest = new byte[150_000];
+            Assertions.assertEquals(50_000, throttled.read(rest));
+            Assertions.assertEquals(-1, throttled.read(rest));
+            Assertions.assertEquals(content[150_000], rest[0]);
+        }
+        Assertions.assertEquals(200_000, limiter.getBytesTransferred());
+    }
+}
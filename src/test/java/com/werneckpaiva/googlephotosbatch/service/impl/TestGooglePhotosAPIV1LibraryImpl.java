@@ -0,0 +1,137 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import static org.mockito.Mockito.*;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.UnauthenticatedException;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.internal.InternalPhotosLibraryClient;
+import com.google.photos.library.v1.proto.ListAlbumsRequest;
+import com.google.photos.library.v1.upload.UploadMediaItemRequest;
+import com.google.photos.library.v1.upload.UploadMediaItemResponse;
+import io.grpc.Status;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGooglePhotosAPIV1LibraryImpl {
+
+    @TempDir
+    Path tempDir;
+
+    private static UnauthenticatedException unauthenticated() {
+        return new UnauthenticatedException("UNAUTHENTICATED: Request had invalid authentication credentials",
+                null, GrpcStatusCode.of(Status.Code.UNAUTHENTICATED), false);
+    }
+
+    private static RequestRateLimiter countingLimiter(AtomicInteger permits) {
+        return new RequestRateLimiter(0) {
+            @Override
+            public void acquire() {
+                permits.incrementAndGet();
+            }
+        };
+    }
+
+    private File photo() throws IOException {
+        return Files.write(tempDir.resolve("IMG_1.jpg"), new byte[100]).toFile();
+    }
+
+    @Test
+    public void testUploadIsRetriedWithRefreshedCredentials() throws IOException {
+        PhotosLibraryClient client = mock(PhotosLibraryClient.class);
+        when(client.uploadMediaItem(any(UploadMediaItemRequest.class)))
+                .thenThrow(unauthenticated())
+                .thenReturn(UploadMediaItemResponse.newBuilder().setUploadToken("upload-token").build());
+        TestRefreshingCredentials.TokenCredentials token = new TestRefreshingCredentials.TokenCredentials(
+                TimeUnit.HOURS.toMillis(1), null);
+        RefreshingCredentials credentials = new RefreshingCredentials(token);
+        try {
+            GooglePhotosAPIV1LibraryImpl api = new GooglePhotosAPIV1LibraryImpl(client, credentials);
+
+            Assertions.assertEquals("upload-token", api.uploadSingleFile("IMG_1", photo(), 0));
+            Assertions.assertEquals(1, token.refreshes.get());
+            verify(client, times(2)).uploadMediaItem(any(UploadMediaItemRequest.class));
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testUploadIsRetriedOnlyOnce() throws IOException {
+        PhotosLibraryClient client = mock(PhotosLibraryClient.class);
+        when(client.uploadMediaItem(any(UploadMediaItemRequest.class))).thenThrow(unauthenticated());
+        TestRefreshingCredentials.TokenCredentials token = new TestRefreshingCredentials.TokenCredentials(
+                TimeUnit.HOURS.toMillis(1), null);
+        RefreshingCredentials credentials = new RefreshingCredentials(token);
+        try {
+            GooglePhotosAPIV1LibraryImpl api = new GooglePhotosAPIV1LibraryImpl(client, credentials);
+            File photo = photo();
+
+            Assertions.assertThrows(RuntimeException.class, () -> api.uploadSingleFile("IMG_1", photo, 0));
+            Assertions.assertEquals(1, token.refreshes.get());
+            verify(client, times(2)).uploadMediaItem(any(UploadMediaItemRequest.class));
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testUploadIsNotRetriedWhenRefreshTokenIsRevoked() throws IOException {
+        PhotosLibraryClient client = mock(PhotosLibraryClient.class);
+        when(client.uploadMediaItem(any(UploadMediaItemRequest.class))).thenThrow(unauthenticated());
+        TestRefreshingCredentials.TokenCredentials token = new TestRefreshingCredentials.TokenCredentials(
+                TimeUnit.HOURS.toMillis(1), TestRefreshingCredentials.invalidGrant());
+        RefreshingCredentials credentials = new RefreshingCredentials(token);
+        try {
+            GooglePhotosAPIV1LibraryImpl api = new GooglePhotosAPIV1LibraryImpl(client, credentials);
+            File photo = photo();
+
+            Assertions.assertThrows(RuntimeException.class, () -> api.uploadSingleFile("IMG_1", photo, 0));
+            verify(client, times(1)).uploadMediaItem(any(UploadMediaItemRequest.class));
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testEveryAlbumPageTakesAPermit() {
+        PhotosLibraryClient client = mock(PhotosLibraryClient.class);
+        InternalPhotosLibraryClient.ListAlbumsPagedResponse response = mock(
+                InternalPhotosLibraryClient.ListAlbumsPagedResponse.class);
+        InternalPhotosLibraryClient.ListAlbumsPage first = mock(InternalPhotosLibraryClient.ListAlbumsPage.class);
+        InternalPhotosLibraryClient.ListAlbumsPage second = mock(InternalPhotosLibraryClient.ListAlbumsPage.class);
+        when(client.listAlbums(any(ListAlbumsRequest.class))).thenReturn(response);
+        when(response.getPage()).thenReturn(first);
+        when(first.getValues()).thenReturn(List.of());
+        when(first.hasNextPage()).thenReturn(true);
+        when(first.getNextPage()).thenReturn(second);
+        when(second.getValues()).thenReturn(List.of());
+        AtomicInteger permits = new AtomicInteger();
+        GooglePhotosAPIV1LibraryImpl api = new GooglePhotosAPIV1LibraryImpl(client);
+        api.setRateLimiter(countingLimiter(permits));
+
+        Assertions.assertFalse(api.getAllAlbums().iterator().hasNext());
+        Assertions.assertEquals(2, permits.get());
+    }
+
+    @Test
+    public void testGetMediaItemTakesAPermit() {
+        PhotosLibraryClient client = mock(PhotosLibraryClient.class);
+        when(client.getMediaItem("media-1")).thenThrow(unauthenticated());
+        AtomicInteger permits = new AtomicInteger();
+        GooglePhotosAPIV1LibraryImpl api = new GooglePhotosAPIV1LibraryImpl(client);
+        api.setRateLimiter(countingLimiter(permits));
+
+        Assertions.assertThrows(RuntimeException.class, () -> api.getMediaItem("media-1"));
+        Assertions.assertEquals(1, permits.get());
+    }
+}
@@ -0,0 +1,131 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRefreshingCredentials {
+
+    static class TokenCredentials extends OAuth2Credentials {
+        final AtomicInteger refreshes = new AtomicInteger();
+
+        private final IOException refreshError;
+
+        TokenCredentials(long expiresInMillis, IOException refreshError) {
+            super(new AccessToken("token-0", new Date(System.currentTimeMillis() + expiresInMillis)));
+            this.refreshError = refreshError;
+        }
+
+        @Override
+        public AccessToken refreshAccessToken() throws IOException {
+            int refresh = refreshes.incrementAndGet();
+            if (refreshError != null) {
+                throw refreshError;
+            }
+            return new AccessToken("token-" + refresh,
+                    new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        }
+    }
+
+    static IOException invalidGrant() {
+        return new IOException("Error getting access token: 400 Bad Request {\"error\": \"invalid_grant\"}");
+    }
+
+    private static void waitFor(AtomicInteger counter) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() == 0) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "No refresh");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testTokenIsRefreshedBeforeItExpires() throws InterruptedException {
+        // Expires within the refresh margin
+        TokenCredentials token = new TokenCredentials(TimeUnit.MINUTES.toMillis(1), null);
+        RefreshingCredentials credentials = new RefreshingCredentials(token, 10);
+        try {
+            waitFor(token.refreshes);
+            Thread.sleep(100);
+
+            // The new token is far from expiring
+            Assertions.assertEquals(1, token.refreshes.get());
+            Assertions.assertEquals("token-1", token.getAccessToken().getTokenValue());
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testTokenFarFromExpiryIsNotRefreshed() {
+        TokenCredentials token = new TokenCredentials(TimeUnit.HOURS.toMillis(1), null);
+        RefreshingCredentials credentials = new RefreshingCredentials(token);
+        try {
+            credentials.refreshIfExpiring();
+            Assertions.assertEquals(0, token.refreshes.get());
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testSwappedCredentialsAreUsed() throws IOException {
+        TokenCredentials first = new TokenCredentials(TimeUnit.HOURS.toMillis(1), null);
+        TokenCredentials second = new TokenCredentials(TimeUnit.HOURS.toMillis(1), null);
+        RefreshingCredentials credentials = new RefreshingCredentials(first);
+        try {
+            credentials.swap(second);
+            credentials.refresh();
+
+            Assertions.assertEquals(0, first.refreshes.get());
+            Assertions.assertEquals(1, second.refreshes.get());
+            Assertions.assertTrue(credentials.tryRefresh());
+            Assertions.assertEquals(2, second.refreshes.get());
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testRevokedRefreshTokenStopsScheduledRefresh() throws InterruptedException {
+        TokenCredentials revoked = new TokenCredentials(TimeUnit.MINUTES.toMillis(1), invalidGrant());
+        RefreshingCredentials credentials = new RefreshingCredentials(revoked, 10);
+        try {
+            waitFor(revoked.refreshes);
+            Thread.sleep(100);
+
+            // Tried once, not every interval
+            Assertions.assertEquals(1, revoked.refreshes.get());
+            Assertions.assertFalse(credentials.isRefreshScheduled());
+
+            // A new authentication resumes it
+            credentials.swap(new TokenCredentials(TimeUnit.HOURS.toMillis(1), null));
+            Assertions.assertTrue(credentials.isRefreshScheduled());
+        } finally {
+            credentials.close();
+        }
+    }
+
+    @Test
+    public void testOtherRefreshErrorsKeepRetrying() throws InterruptedException {
+        TokenCredentials unreachable = new TokenCredentials(TimeUnit.MINUTES.toMillis(1),
+                new IOException("Connection refused"));
+        RefreshingCredentials credentials = new RefreshingCredentials(unreachable, 10);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (unreachable.refreshes.get() < 3) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "Refresh not retried");
+                Thread.sleep(5);
+            }
+            Assertions.assertTrue(credentials.isRefreshScheduled());
+        } finally {
+            credentials.close();
+        }
+    }
+}
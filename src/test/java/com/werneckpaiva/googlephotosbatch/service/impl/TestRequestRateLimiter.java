@@ -0,0 +1,51 @@
+package com.werneckpaiva.googlephotosbatch.service.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestRequestRateLimiter {
+
+    @Test
+    public void testRequestsAreSpaced() {
+        RequestRateLimiter limiter = new RequestRateLimiter(50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 6 requests at 50 per second, the first one sent right away
+        Assertions.assertTrue(seconds >= 5 / 50.0 * 0.9, "Took " + seconds + "s");
+    }
+
+    @Test
+    public void testUnlimitedDoesNotBlock() {
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            RequestRateLimiter.UNLIMITED.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assertions.assertTrue(seconds < 0.5, "Took " + seconds + "s");
+    }
+
+    @Test
+    public void testThreadsShareTheRate() throws Exception {
+        RequestRateLimiter limiter = new RequestRateLimiter(40);
+        Runnable caller = () -> {
+            for (int i = 0; i < 4; i++) {
+                limiter.acquire();
+            }
+        };
+        long start = System.nanoTime();
+        Thread first = new Thread(caller);
+        Thread second = new Thread(caller);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 8 requests at 40 per second whichever thread sends them
+        Assertions.assertTrue(seconds >= 7 / 40.0 * 0.9, "Took " + seconds + "s");
+    }
+}